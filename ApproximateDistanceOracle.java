@@ -0,0 +1,327 @@
+package org.project;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+// (1 + epsilon)-approximate distances over the decomposition tree, after the portal labels of
+// Thorup's planar oracles. Regions of at most pieceArea cells (or without a separator) are pieces.
+// For every region R above them, each cell u of R keeps two short lists of portals on S(R) with
+// its distances inside R: to them (out) and from them (in). The out list is an epsilon-cover: for
+// every separator vertex v some portal c satisfies
+//   d_R(u, c) + line(c -> v) <= (1 + epsilon) d_R(u, v)
+// where line() walks along the separator, and likewise for the in list. Walking the separator once in
+// order and keeping v whenever the portals so far miss that bound yields such a cover with about
+// log(|S|) / epsilon portals per cell, instead of all |S| separator vertices.
+//
+// A shortest path whose smallest region is R crosses S(R) at some v. The covers give c and c' with
+// d(s, c) + line(c -> c') + d(c', t) <= (1 + epsilon) d(s, t). A query minimizes that over the two
+// lists of each region, from the pieces' common region upwards, in one merge of the two sorted
+// lists. When both cells share a piece, an exact search inside the piece is added. So:
+//   d(s, t) <= distance(s, t) <= (1 + epsilon) d(s, t)
+// Labels are never changed after they are built, so one oracle serves any number of threads.
+public class ApproximateDistanceOracle {
+    private static final long UNREACHABLE = Long.MAX_VALUE / 4;
+
+    private final GridGraph gridGraph;
+    private final DecompositionTree decompositionTree;
+    private final double epsilon;
+    private final int pieceArea;
+    private final Labels[] labels;
+    private final ThreadLocal<PointToPointSearch> searches;
+    private final ThreadLocal<DijkstraEngine> engines;
+
+    // Covers of every cell of one region, by local cell (x - x1) * width + (y - y1)
+    private static final class Labels {
+        // Walking the separator by index: forward[j] - forward[i] is line(i -> j) for i < j and
+        // backward[i] - backward[j] is line(i -> j) for i > j, both defined only while the walk does
+        // not cross a missing edge, i.e. while forwardCut (backwardCut) is the same at both ends
+        long[] forward;
+        long[] backward;
+        int[] forwardCut;
+        int[] backwardCut;
+        // Rows per cell: portal separator indexes ascending, distances alongside
+        int[] outOffsets;
+        int[] outPortals;
+        int[] outDistances;
+        int[] inOffsets;
+        int[] inPortals;
+        int[] inDistances;
+
+        long getBytes() {
+            return 8L * (forward.length + backward.length) + 4L * (forwardCut.length + backwardCut.length
+                    + outOffsets.length + outPortals.length + outDistances.length
+                    + inOffsets.length + inPortals.length + inDistances.length);
+        }
+    }
+
+    public ApproximateDistanceOracle(GridGraph gridGraph, DecompositionTree decompositionTree, double epsilon, int pieceArea,
+                                     boolean parallel) {
+        this(gridGraph, decompositionTree, epsilon, pieceArea);
+        for (int region = DecompositionTree.ROOT; region < labels.length; region++) {
+            if (isAbovePieces(region)) {
+                labels[region] = buildRegion(region, parallel);
+            }
+        }
+    }
+
+    private ApproximateDistanceOracle(GridGraph gridGraph, DecompositionTree decompositionTree, double epsilon, int pieceArea) {
+        if (!(epsilon > 0)) {
+            throw new IllegalArgumentException("epsilon must be positive: " + epsilon);
+        }
+        this.gridGraph = gridGraph;
+        this.decompositionTree = decompositionTree;
+        this.epsilon = epsilon;
+        this.pieceArea = pieceArea;
+        this.labels = new Labels[decompositionTree.getSlots()];
+        this.searches = ThreadLocal.withInitial(() -> {
+            PointToPointSearch search = new PointToPointSearch(gridGraph);
+            search.setStrategy(PointToPointSearch.Strategy.ASTAR);
+            return search;
+        });
+        this.engines = ThreadLocal.withInitial(() -> new DijkstraEngine(gridGraph));
+    }
+
+    // Next version over an updated grid: regions marked affected (those containing a changed cell)
+    // are relabeled, all others share their labels with this oracle
+    public ApproximateDistanceOracle withUpdatedGrid(GridGraph updatedGrid, boolean[] affected, boolean parallel) {
+        ApproximateDistanceOracle updated = new ApproximateDistanceOracle(updatedGrid, decompositionTree, epsilon, pieceArea);
+        for (int region = DecompositionTree.ROOT; region < labels.length; region++) {
+            if (labels[region] != null) {
+                updated.labels[region] = affected[region] ? updated.buildRegion(region, parallel) : labels[region];
+            }
+        }
+        return updated;
+    }
+
+    // Guaranteed bound: d <= distance <= (1 + epsilon) d
+    public double getEpsilon() {
+        return epsilon;
+    }
+
+    public GridGraph getGridGraph() {
+        return gridGraph;
+    }
+
+    private int area(int region) {
+        return (decompositionTree.getX2(region) - decompositionTree.getX1(region) + 1)
+                * (decompositionTree.getY2(region) - decompositionTree.getY1(region) + 1);
+    }
+
+    private boolean isAbovePieces(int region) {
+        return decompositionTree.exists(region) && decompositionTree.getSeparatorAxis(region) != DecompositionTree.NO_SEPARATOR
+                && area(region) > pieceArea;
+    }
+
+    // Highest region containing the cell that is not above the pieces
+    private int piece(int x, int y) {
+        int region = decompositionTree.locate(x, y);
+        while (region > DecompositionTree.ROOT && !isAbovePieces(DecompositionTree.parent(region))) {
+            region = DecompositionTree.parent(region);
+        }
+        return region;
+    }
+
+    private int localId(int region, int x, int y) {
+        int width = decompositionTree.getY2(region) - decompositionTree.getY1(region) + 1;
+        return (x - decompositionTree.getX1(region)) * width + y - decompositionTree.getY1(region);
+    }
+
+    private Labels buildRegion(int region, boolean parallel) {
+        int n = gridGraph.getN();
+        int[] separator = decompositionTree.getSeparator(region).stream().mapToInt(cell -> cell[0] * n + cell[1]).toArray();
+        int length = separator.length;
+        // The separator is listed along increasing y (line x = c) or increasing x (line y = c)
+        boolean alongY = decompositionTree.getSeparatorAxis(region) == DecompositionTree.SEPARATOR_X;
+        int forwardDirection = alongY ? GridGraph.EAST : GridGraph.SOUTH;
+        int backwardDirection = alongY ? GridGraph.WEST : GridGraph.NORTH;
+        Labels result = new Labels();
+        result.forward = new long[length];
+        result.backward = new long[length];
+        result.forwardCut = new int[length];
+        result.backwardCut = new int[length];
+        // stepForward[i]: weight of the step from index i - 1 to i, stepBackward[i] of the one back
+        int[] stepForward = new int[length];
+        int[] stepBackward = new int[length];
+        for (int i = 1; i < length; i++) {
+            stepForward[i] = gridGraph.getEdgeWeight(separator[i - 1], forwardDirection);
+            stepBackward[i] = gridGraph.getEdgeWeight(separator[i], backwardDirection);
+            result.forward[i] = result.forward[i - 1] + stepForward[i];
+            result.backward[i] = result.backward[i - 1] + stepBackward[i];
+            result.forwardCut[i] = result.forwardCut[i - 1] + (stepForward[i] == GridGraph.NO_EDGE ? 1 : 0);
+            result.backwardCut[i] = result.backwardCut[i - 1] + (stepBackward[i] == GridGraph.NO_EDGE ? 1 : 0);
+        }
+
+        // The out cover needs d(u, v) for every cell u, i.e. a reverse search from each v, the in
+        // cover a forward one; the two are independent, so they are built side by side
+        int[][][] covers = new int[2][][];
+        IntStream sides = IntStream.range(0, 2);
+        (parallel ? sides.parallel() : sides).forEach(side -> covers[side] = cover(region, separator,
+                side == 0, side == 0 ? stepForward : stepBackward));
+        result.outOffsets = covers[0][0];
+        result.outPortals = covers[0][1];
+        result.outDistances = covers[0][2];
+        result.inOffsets = covers[1][0];
+        result.inPortals = covers[1][1];
+        result.inDistances = covers[1][2];
+        return result;
+    }
+
+    // One pass along the separator. reach[u] is the shortest known route from u through a portal kept
+    // so far and then along the line to the current v (from v back to it for the in cover); v becomes
+    // a portal of u when that exceeds (1 + epsilon) d(u, v). Returns {offsets, portals, distances}.
+    private int[][] cover(int region, int[] separator, boolean out, int[] steps) {
+        int n = gridGraph.getN();
+        int x1 = decompositionTree.getX1(region), y1 = decompositionTree.getY1(region);
+        int x2 = decompositionTree.getX2(region), y2 = decompositionTree.getY2(region);
+        int area = area(region);
+        DijkstraEngine dijkstraEngine = engines.get();
+        long[] reach = new long[area];
+        Arrays.fill(reach, UNREACHABLE);
+        int[] cells = new int[area];
+        int[] portals = new int[area];
+        int[] distances = new int[area];
+        int count = 0;
+        for (int v = 0; v < separator.length; v++) {
+            int step = steps[v];
+            // An impassable vertex is no one's portal: only the walks along the line go on
+            boolean blocked = gridGraph.isBlocked(separator[v]);
+            if (!blocked) {
+                dijkstraEngine.searchWithin(separator[v], null, x1, y1, x2, y2, out, null);
+            }
+            for (int x = x1, u = 0; x <= x2; x++) {
+                for (int y = y1; y <= y2; y++, u++) {
+                    if (v > 0) {
+                        reach[u] = step == GridGraph.NO_EDGE || reach[u] == UNREACHABLE ? UNREACHABLE : reach[u] + step;
+                    }
+                    int distance = blocked ? DijkstraEngine.INFINITY : dijkstraEngine.distance(x * n + y);
+                    if (distance == DijkstraEngine.INFINITY || reach[u] <= (1 + epsilon) * distance) {
+                        continue;
+                    }
+                    if (count == cells.length) {
+                        cells = Arrays.copyOf(cells, count * 2);
+                        portals = Arrays.copyOf(portals, count * 2);
+                        distances = Arrays.copyOf(distances, count * 2);
+                    }
+                    cells[count] = u;
+                    portals[count] = v;
+                    distances[count++] = distance;
+                    reach[u] = distance;
+                }
+            }
+        }
+        // Group by cell; entries were added in separator order, which the stable fill keeps
+        int[] offsets = new int[area + 1];
+        for (int i = 0; i < count; i++) {
+            offsets[cells[i] + 1]++;
+        }
+        for (int u = 0; u < area; u++) {
+            offsets[u + 1] += offsets[u];
+        }
+        int[] next = Arrays.copyOf(offsets, area);
+        int[] sortedPortals = new int[count];
+        int[] sortedDistances = new int[count];
+        for (int i = 0; i < count; i++) {
+            int position = next[cells[i]]++;
+            sortedPortals[position] = portals[i];
+            sortedDistances[position] = distances[i];
+        }
+        return new int[][]{offsets, sortedPortals, sortedDistances};
+    }
+
+    // Distance between linear vertex ids (x * n + y) within the bound of getEpsilon(),
+    // DijkstraEngine.INFINITY if unreachable
+    public int distance(int source, int target) {
+        if (source == target) {
+            return 0;
+        }
+        int n = gridGraph.getN();
+        int sx = source / n, sy = source % n, tx = target / n, ty = target % n;
+        int sourcePiece = piece(sx, sy), targetPiece = piece(tx, ty);
+        long best = UNREACHABLE;
+        if (sourcePiece == targetPiece) {
+            int local = searches.get().search(source, target, decompositionTree.getX1(sourcePiece), decompositionTree.getY1(sourcePiece),
+                    decompositionTree.getX2(sourcePiece), decompositionTree.getY2(sourcePiece));
+            if (local != DijkstraEngine.INFINITY) {
+                best = local;
+            }
+        }
+        for (int region = DecompositionTree.lca(sourcePiece, targetPiece); region >= DecompositionTree.ROOT;
+             region = DecompositionTree.parent(region)) {
+            if (labels[region] != null) {
+                best = Math.min(best, throughPortals(labels[region], localId(region, sx, sy), localId(region, tx, ty)));
+            }
+            // A path leaving the region is no shorter than the bound, so best is already within it
+            if (region == DecompositionTree.ROOT || best <= decompositionTree.exitLowerBound(region, sx, sy, tx, ty, gridGraph.getMinEdgeWeight())) {
+                break;
+            }
+        }
+        return best >= UNREACHABLE ? DijkstraEngine.INFINITY : (int) best;
+    }
+
+    // min over out portals c of s and in portals c' of t of d(s, c) + line(c -> c') + d(c', t). Both
+    // lists are sorted by separator index, so a sweep upwards covers c <= c' and one downwards c >= c'.
+    private static long throughPortals(Labels labels, int s, int t) {
+        int sBegin = labels.outOffsets[s], sEnd = labels.outOffsets[s + 1];
+        int tBegin = labels.inOffsets[t], tEnd = labels.inOffsets[t + 1];
+        long best = UNREACHABLE;
+        // Best d(s, c) - forward[c] over the portals c passed since the last missing edge
+        long reach = UNREACHABLE;
+        int cut = -1;
+        for (int i = sBegin, j = tBegin; j < tEnd; ) {
+            boolean fromSource = i < sEnd && labels.outPortals[i] <= labels.inPortals[j];
+            int index = fromSource ? labels.outPortals[i] : labels.inPortals[j];
+            if (labels.forwardCut[index] != cut) {
+                cut = labels.forwardCut[index];
+                reach = UNREACHABLE;
+            }
+            if (fromSource) {
+                reach = Math.min(reach, labels.outDistances[i++] - labels.forward[index]);
+            } else if (reach != UNREACHABLE) {
+                best = Math.min(best, reach + labels.forward[index] + labels.inDistances[j++]);
+            } else {
+                j++;
+            }
+        }
+        reach = UNREACHABLE;
+        cut = -1;
+        for (int i = sEnd - 1, j = tEnd - 1; j >= tBegin; ) {
+            boolean fromSource = i >= sBegin && labels.outPortals[i] >= labels.inPortals[j];
+            int index = fromSource ? labels.outPortals[i] : labels.inPortals[j];
+            if (labels.backwardCut[index] != cut) {
+                cut = labels.backwardCut[index];
+                reach = UNREACHABLE;
+            }
+            if (fromSource) {
+                reach = Math.min(reach, labels.outDistances[i--] + labels.backward[index]);
+            } else if (reach != UNREACHABLE) {
+                best = Math.min(best, reach - labels.backward[index] + labels.inDistances[j--]);
+            } else {
+                j--;
+            }
+        }
+        return best;
+    }
+
+    // Portals per cell and region, averaged over the out and in lists
+    public double getMeanCoverSize() {
+        long portals = 0, cells = 0;
+        for (Labels region : labels) {
+            if (region != null) {
+                portals += region.outPortals.length + region.inPortals.length;
+                cells += 2L * (region.outOffsets.length - 1);
+            }
+        }
+        return cells == 0 ? 0 : portals / (double) cells;
+    }
+
+    // Heap bytes of the labels
+    public long getBytes() {
+        long bytes = 0;
+        for (Labels region : labels) {
+            if (region != null) {
+                bytes += region.getBytes();
+            }
+        }
+        return bytes;
+    }
+}
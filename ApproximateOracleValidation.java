@@ -0,0 +1,115 @@
+package org.project;
+
+import java.io.PrintStream;
+import java.sql.Connection;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.logging.Level;
+
+// Checks the stretch bound of ApproximateDistanceOracle against exact Dijkstra on the seeded grids of
+// GridBenchmark, for every size, epsilon and query mix. Reports the worst and mean stretch, label size,
+// portals per label and latency, and exits with status 1 if any answer falls outside [d, (1 + epsilon) d].
+//
+// Usage: java org.project.ApproximateOracleValidation [--sizes 64,128,256] [--epsilons 0.05,0.1,0.25]
+//                                                     [--queries 500] [--seed 42] [--piece-size 16]
+public class ApproximateOracleValidation {
+    private static final PrintStream OUT = System.out;
+
+    private int[] sizes = {64, 128, 256};
+    private double[] epsilons = {0.05, 0.1, 0.25};
+    private int queries = 500;
+    private long seed = 42;
+    private int pieceSize = 16;
+
+    public static void main(String[] args) {
+        ApproximateOracleValidation validation = new ApproximateOracleValidation();
+        validation.parse(args);
+        GridBenchmark.setProjectLogLevel(Level.WARNING);
+        int violations = validation.run();
+        if (violations > 0) {
+            OUT.println(violations + " answers outside the stretch bound");
+            System.exit(1);
+        }
+    }
+
+    private void parse(String[] args) {
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--sizes":
+                    sizes = Arrays.stream(value.split(",")).mapToInt(Integer::parseInt).toArray();
+                    break;
+                case "--epsilons":
+                    epsilons = Arrays.stream(value.split(",")).mapToDouble(Double::parseDouble).toArray();
+                    break;
+                case "--queries":
+                    queries = Integer.parseInt(value);
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(value);
+                    break;
+                case "--piece-size":
+                    pieceSize = Integer.parseInt(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+    }
+
+    private int run() {
+        OUT.printf("%-8s %6s %8s %10s %12s %12s %10s %10s %10s %12s%n", "mix", "size", "epsilon", "labels MB",
+                "max stretch", "mean stretch", "portals", "approx us", "exact us", "build ms");
+        int violations = 0;
+        for (int size : sizes) {
+            GridGraph gridGraph = GridBenchmark.seededGrid(size, size, seed);
+            DijkstraEngine dijkstraEngine = new DijkstraEngine(gridGraph);
+            for (double epsilon : epsilons) {
+                long start = System.nanoTime();
+                ApproximateDistanceOracle oracle = build(gridGraph, epsilon);
+                long buildNanos = System.nanoTime() - start;
+                for (String mix : new String[]{"random", "near", "far"}) {
+                    int[][] pairs = GridBenchmark.queryMix(mix, size, queries, new Random(seed + mix.hashCode()));
+                    long approximateNanos = 0, exactNanos = 0;
+                    double worst = 1, total = 0;
+                    int counted = 0;
+                    for (int[] pair : pairs) {
+                        int source = pair[0] * size + pair[1], target = pair[2] * size + pair[3];
+                        long before = System.nanoTime();
+                        int approximate = oracle.distance(source, target);
+                        long middle = System.nanoTime();
+                        int exact = dijkstraEngine.search(source, target);
+                        exactNanos += System.nanoTime() - middle;
+                        approximateNanos += middle - before;
+                        if (approximate < exact || (exact == DijkstraEngine.INFINITY) != (approximate == DijkstraEngine.INFINITY)
+                                || (exact != DijkstraEngine.INFINITY && approximate > (1 + epsilon) * exact)) {
+                            violations++;
+                            OUT.printf("violation: %s -> %s, approximate %d, exact %d%n", Arrays.toString(new int[]{pair[0], pair[1]}),
+                                    Arrays.toString(new int[]{pair[2], pair[3]}), approximate, exact);
+                        } else if (exact > 0 && exact != DijkstraEngine.INFINITY) {
+                            double stretch = approximate / (double) exact;
+                            worst = Math.max(worst, stretch);
+                            total += stretch;
+                            counted++;
+                        }
+                    }
+                    OUT.printf("%-8s %6d %8.3f %10.1f %12.4f %12.4f %10.1f %10.1f %10.1f %12.1f%n", mix, size, epsilon,
+                            oracle.getBytes() / 1e6, worst, counted == 0 ? 1 : total / counted,
+                            oracle.getMeanCoverSize(),
+                            approximateNanos / 1e3 / pairs.length, exactNanos / 1e3 / pairs.length, buildNanos / 1e6);
+                }
+            }
+        }
+        return violations;
+    }
+
+    private ApproximateDistanceOracle build(GridGraph gridGraph, double epsilon) {
+        DistancePrecomputation distancePrecomputation = new DistancePrecomputation(gridGraph, (Connection) null);
+        distancePrecomputation.setMode(DistancePrecomputation.Mode.APPROXIMATE);
+        distancePrecomputation.setEpsilon(epsilon);
+        distancePrecomputation.setPieceSize(pieceSize);
+        GraphDecomposition decomposition = new GraphDecomposition(gridGraph, null, 1, distancePrecomputation);
+        decomposition.decompose();
+        return distancePrecomputation.getApproximateOracle();
+    }
+}
@@ -0,0 +1,240 @@
+package org.project;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+// Answers many (source, target) pairs at once. Pairs are grouped by their shared endpoint (sources,
+// or targets when fewer distinct targets are queried), and each group is answered by one
+// multi-target search confined to the lowest common region of all its vertices. Precomputed rows are
+// used where a lookup is already exact. A group's in-region distances are exact whenever they
+// do not exceed the region's exit lower bound (as in ShortestPathFinder); the others are retried
+// in the parent region, and the root region covers the whole grid. Nothing is printed.
+public class BatchShortestPathFinder {
+    // Groups are handed to the executor in chunks of at least this many queries
+    private static final int CHUNK_QUERIES = 1024;
+
+    private GridGraph gridGraph;
+    private DecompositionTree decompositionTree;
+    private DistancePrecomputation distancePrecomputation;
+    private ExecutorService executor;
+    private ThreadLocal<DijkstraEngine> dijkstraEngines;
+
+    // executor may be null to answer every batch on the calling thread
+    public BatchShortestPathFinder(DistancePrecomputation distancePrecomputation, GridGraph gridGraph, ExecutorService executor) {
+        this.distancePrecomputation = distancePrecomputation;
+        this.decompositionTree = distancePrecomputation.getDecompositionTree();
+        this.gridGraph = gridGraph;
+        this.executor = executor;
+        this.dijkstraEngines = ThreadLocal.withInitial(() -> new DijkstraEngine(gridGraph));
+    }
+
+    public int[] findDistances(int[][] sources, int[][] targets) {
+        return findDistances(sources, targets, null);
+    }
+
+    // Distance from sources[i] to targets[i] for every i (DijkstraEngine.INFINITY if unreachable). If
+    // paths is not null it is refilled with one path (list of cells) per query.
+    public int[] findDistances(int[][] sources, int[][] targets, List<List<int[]>> paths) {
+        int n = gridGraph.getN();
+        int[] sourceIds = new int[sources.length];
+        int[] targetIds = new int[targets.length];
+        for (int i = 0; i < sources.length; i++) {
+            sourceIds[i] = sources[i][0] * n + sources[i][1];
+            targetIds[i] = targets[i][0] * n + targets[i][1];
+        }
+        return findDistances(sourceIds, targetIds, paths);
+    }
+
+    // Same as above on linear vertex ids (x * n + y)
+    public int[] findDistances(int[] sources, int[] targets, List<List<int[]>> paths) {
+        if (sources.length != targets.length) {
+            throw new IllegalArgumentException("Got " + sources.length + " sources but " + targets.length + " targets");
+        }
+        int count = sources.length;
+        int[] distances = new int[count];
+        if (paths != null) {
+            paths.clear();
+            paths.addAll(Collections.nCopies(count, null));
+        }
+
+        // Sort query indexes by the endpoint they share; searching backwards from a common target
+        // answers its whole group just like a forward search from a common source
+        long[] bySource = order(sources);
+        long[] byTarget = order(targets);
+        boolean reverse = groups(byTarget) < groups(bySource);
+        long[] order = reverse ? byTarget : bySource;
+
+        List<Callable<Void>> chunks = new ArrayList<>();
+        int start = 0;
+        while (start < count) {
+            int end = Math.min(count, start + CHUNK_QUERIES);
+            // Never split a group across chunks
+            while (end < count && (order[end] >>> 32) == (order[end - 1] >>> 32)) {
+                end++;
+            }
+            int from = start, to = end;
+            chunks.add(() -> {
+                answerGroups(order, from, to, reverse, sources, targets, distances, paths);
+                return null;
+            });
+            start = end;
+        }
+        run(chunks);
+        return distances;
+    }
+
+    private void run(List<Callable<Void>> chunks) {
+        try {
+            if (executor == null || chunks.size() == 1) {
+                for (Callable<Void> chunk : chunks) {
+                    chunk.call();
+                }
+                return;
+            }
+            for (Future<Void> future : executor.invokeAll(chunks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Batch query interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Batch query failed", e.getCause());
+        } catch (Exception e) {
+            throw new IllegalStateException("Batch query failed", e);
+        }
+    }
+
+    // Query indexes packed below their grouping vertex id, sorted so each group is contiguous
+    private static long[] order(int[] vertices) {
+        long[] order = new long[vertices.length];
+        for (int i = 0; i < vertices.length; i++) {
+            order[i] = ((long) vertices[i] << 32) | i;
+        }
+        Arrays.sort(order);
+        return order;
+    }
+
+    private static int groups(long[] order) {
+        int groups = 0;
+        for (int i = 0; i < order.length; i++) {
+            if (i == 0 || (order[i] >>> 32) != (order[i - 1] >>> 32)) {
+                groups++;
+            }
+        }
+        return groups;
+    }
+
+    private void answerGroups(long[] order, int from, int to, boolean reverse, int[] sources, int[] targets,
+                              int[] distances, List<List<int[]>> paths) {
+        DijkstraEngine dijkstraEngine = dijkstraEngines.get();
+        int[] pending = new int[to - from];
+        int[] others = new int[to - from];
+        int[] found = new int[to - from];
+        long hits = 0, misses = 0;
+        int start = from;
+        while (start < to) {
+            int end = start + 1;
+            while (end < to && (order[end] >>> 32) == (order[start] >>> 32)) {
+                end++;
+            }
+            int vertex = (int) (order[start] >>> 32);
+            int pendingCount = 0;
+            for (int i = start; i < end; i++) {
+                int query = (int) order[i];
+                int other = reverse ? sources[query] : targets[query];
+                if (other == vertex) {
+                    distances[query] = 0;
+                    if (paths != null) {
+                        paths.set(query, new ArrayList<>(List.of(new int[]{dijkstraEngine.x(vertex), dijkstraEngine.y(vertex)})));
+                    }
+                } else if (paths != null) {
+                    pending[pendingCount++] = query;
+                } else if (lookUp(sources[query], targets[query], query, distances)) {
+                    hits++;
+                } else {
+                    misses++;
+                    pending[pendingCount++] = query;
+                }
+            }
+            search(dijkstraEngine, vertex, reverse, pending, pendingCount, others, found, sources, targets, distances, paths);
+            start = end;
+        }
+        if (hits + misses > 0) {
+            Metrics.global().recordLookups(hits, misses);
+        }
+    }
+
+    // Answer the query from a precomputed row if one exists in a region where it is exact
+    private boolean lookUp(int source, int target, int query, int[] distances) {
+        if (decompositionTree == null) {
+            return false;
+        }
+        int n = gridGraph.getN();
+        int sx = source / n, sy = source % n, tx = target / n, ty = target % n;
+        int region = DecompositionTree.lca(decompositionTree.locate(sx, sy), decompositionTree.locate(tx, ty));
+        for (; region >= DecompositionTree.ROOT; region = DecompositionTree.parent(region)) {
+            if (decompositionTree.getSeparatorAxis(region) == DecompositionTree.NO_SEPARATOR
+                    || (decompositionTree.side(region, sx, sy) != 0 && decompositionTree.side(region, tx, ty) != 0)) {
+                continue;  // Rows only exist between a separator vertex and a vertex of its region
+            }
+            int distance = distancePrecomputation.getLocalDistance(DistanceTable.key(source, target, decompositionTree.getLevel(region)));
+            if (distance != DistanceTable.MISSING && distance <= decompositionTree.exitLowerBound(region, sx, sy, tx, ty, gridGraph.getMinEdgeWeight())) {
+                distances[query] = distance;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // One search per region from the group's shared vertex, widening to the parent region until every
+    // pending query is exact
+    private void search(DijkstraEngine dijkstraEngine, int vertex, boolean reverse, int[] pending, int pendingCount,
+                        int[] others, int[] found, int[] sources, int[] targets, int[] distances, List<List<int[]>> paths) {
+        if (pendingCount == 0) {
+            return;
+        }
+        int n = gridGraph.getN();
+        int region = DecompositionTree.ROOT;
+        if (decompositionTree != null) {
+            region = decompositionTree.locate(vertex / n, vertex % n);
+            for (int i = 0; i < pendingCount; i++) {
+                int other = reverse ? sources[pending[i]] : targets[pending[i]];
+                region = DecompositionTree.lca(region, decompositionTree.locate(other / n, other % n));
+            }
+        }
+        while (pendingCount > 0) {
+            boolean root = decompositionTree == null || region == DecompositionTree.ROOT;
+            for (int i = 0; i < pendingCount; i++) {
+                others[i] = reverse ? sources[pending[i]] : targets[pending[i]];
+            }
+            int[] targetIds = Arrays.copyOf(others, pendingCount);
+            if (root) {
+                dijkstraEngine.searchWithin(vertex, targetIds, 0, 0, gridGraph.getM() - 1, n - 1, reverse, found);
+            } else {
+                dijkstraEngine.searchWithin(vertex, targetIds, decompositionTree.getX1(region), decompositionTree.getY1(region),
+                        decompositionTree.getX2(region), decompositionTree.getY2(region), reverse, found);
+            }
+            int remaining = 0;
+            for (int i = 0; i < pendingCount; i++) {
+                int query = pending[i];
+                int distance = found[i];
+                if (root || (distance != DijkstraEngine.INFINITY && distance <= decompositionTree.exitLowerBound(region,
+                        sources[query] / n, sources[query] % n, targets[query] / n, targets[query] % n, gridGraph.getMinEdgeWeight()))) {
+                    distances[query] = distance;
+                    if (paths != null) {
+                        List<int[]> path = new ArrayList<>();
+                        dijkstraEngine.appendPath(others[i], path);
+                        paths.set(query, path);
+                    }
+                } else {
+                    pending[remaining++] = query;
+                }
+            }
+            pendingCount = remaining;
+            region = DecompositionTree.parent(region);
+        }
+    }
+}
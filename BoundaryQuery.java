@@ -0,0 +1,188 @@
+package org.project;
+
+// Exact single-pair queries over BoundaryTables. One local search inside the source's piece gives the
+// distances to its boundary cells, one reverse search inside the target's piece the distances from
+// its boundary cells. A shortest path lies in some smallest region R; if R is a piece it is the local
+// distance, otherwise the path crosses S(R), and
+//   d(s, t) = min over v in S(R) of  min_b (d_P(s, b) + d_R(b, v))  +  min_b' (d_R(v, b') + d_P(b', t))
+// with b, b' boundary cells of the two pieces. Regions are tried from the pieces' lowest common
+// region upwards until the best distance beats any path leaving the region, so a query costs two
+// searches of at most pieceSize^2 cells plus |S(R)| * (|B(P_s)| + |B(P_t)|) lookups per region.
+// A region left without tables (see PrecomputationPlanner) is covered by an A* search confined to it,
+// which finds any shorter path inside R, so the answer stays exact.
+// Not thread-safe: use one query per thread.
+public class BoundaryQuery {
+    private BoundaryTables boundaryTables;
+    private DecompositionTree decompositionTree;
+    private GridGraph gridGraph;
+    private final DijkstraEngine dijkstraEngine;
+    private final PointToPointSearch regionSearch;
+    private int[] sourceDistances = new int[64];
+    private int[] targetDistances = new int[64];
+    // Decoded table rows when the tables are compressed
+    private int[] sourceRow = new int[64];
+    private int[] targetRow = new int[64];
+    private int via;
+
+    public BoundaryQuery(BoundaryTables boundaryTables) {
+        this.boundaryTables = boundaryTables;
+        this.decompositionTree = boundaryTables.getDecompositionTree();
+        this.gridGraph = boundaryTables.getGridGraph();
+        this.dijkstraEngine = new DijkstraEngine(gridGraph);
+        this.regionSearch = new PointToPointSearch(gridGraph);
+        regionSearch.setStrategy(PointToPointSearch.Strategy.ASTAR);
+    }
+
+    // Answer from other tables over a grid of the same dimensions from now on, keeping the search arrays
+    public void setBoundaryTables(BoundaryTables boundaryTables) {
+        dijkstraEngine.setGridGraph(boundaryTables.getGridGraph());
+        regionSearch.setGridGraph(boundaryTables.getGridGraph());
+        this.boundaryTables = boundaryTables;
+        this.decompositionTree = boundaryTables.getDecompositionTree();
+        this.gridGraph = boundaryTables.getGridGraph();
+    }
+
+    // Strategy of the searches in regions without tables
+    public PointToPointSearch getRegionSearch() {
+        return regionSearch;
+    }
+
+    // Separator vertex the last query's path goes through, -1 if it stays inside one piece
+    public int getVia() {
+        return via;
+    }
+
+    // Distance between linear vertex ids (x * n + y), DijkstraEngine.INFINITY if unreachable
+    public int distance(int source, int target) {
+        via = -1;
+        if (source == target) {
+            return 0;
+        }
+        int sourcePiece = boundaryTables.getPiece(source), targetPiece = boundaryTables.getPiece(target);
+        int best = BoundaryTables.UNREACHABLE;
+
+        searchPiece(source, sourcePiece, false);
+        int sourceBegin = boundaryTables.getRangeBegin(sourcePiece);
+        int sourceCount = boundaryTables.getRangeEnd(sourcePiece) - sourceBegin;
+        sourceDistances = fill(sourceDistances, sourceBegin, sourceCount);
+        if (sourcePiece == targetPiece && dijkstraEngine.distance(target) != DijkstraEngine.INFINITY) {
+            best = dijkstraEngine.distance(target);
+        }
+        searchPiece(target, targetPiece, true);
+        int targetBegin = boundaryTables.getRangeBegin(targetPiece);
+        int targetCount = boundaryTables.getRangeEnd(targetPiece) - targetBegin;
+        targetDistances = fill(targetDistances, targetBegin, targetCount);
+
+        int n = gridGraph.getN();
+        int sx = source / n, sy = source % n, tx = target / n, ty = target % n;
+        for (int region = DecompositionTree.lca(sourcePiece, targetPiece); region >= DecompositionTree.ROOT;
+             region = DecompositionTree.parent(region)) {
+            if (boundaryTables.hasTable(region)) {
+                best = boundaryTables.getFromSeparatorCompressed(region) != null
+                        ? throughCompressedSeparator(region, sourceBegin, sourceCount, targetBegin, targetCount, best)
+                        : throughSeparator(region, sourceBegin, sourceCount, targetBegin, targetCount, best);
+            } else if (boundaryTables.isAbovePieces(region)) {
+                best = withinRegion(region, source, target, best);
+            }
+            if (region == DecompositionTree.ROOT || best <= decompositionTree.exitLowerBound(region, sx, sy, tx, ty, gridGraph.getMinEdgeWeight())) {
+                break;
+            }
+        }
+        return best >= BoundaryTables.UNREACHABLE ? DijkstraEngine.INFINITY : best;
+    }
+
+    private void searchPiece(int vertex, int piece, boolean reverse) {
+        dijkstraEngine.searchWithin(vertex, null, decompositionTree.getX1(piece), decompositionTree.getY1(piece),
+                decompositionTree.getX2(piece), decompositionTree.getY2(piece), reverse, null);
+    }
+
+    // Distances of the last local search to the piece's boundary cells
+    private int[] fill(int[] buffer, int begin, int count) {
+        if (buffer.length < count) {
+            buffer = new int[Math.max(count, buffer.length * 2)];
+        }
+        for (int j = 0; j < count; j++) {
+            int distance = dijkstraEngine.distance(boundaryTables.getBoundaryCell(begin + j));
+            buffer[j] = distance == DijkstraEngine.INFINITY ? BoundaryTables.UNREACHABLE : distance;
+        }
+        return buffer;
+    }
+
+    private int throughSeparator(int region, int sourceBegin, int sourceCount, int targetBegin, int targetCount, int best) {
+        int[] separator = boundaryTables.getSeparator(region);
+        int[] toSeparator = boundaryTables.getToSeparator(region);
+        int[] fromSeparator = boundaryTables.getFromSeparator(region);
+        int regionBegin = boundaryTables.getRangeBegin(region);
+        int width = boundaryTables.getRangeEnd(region) - regionBegin;
+        int sourceOffset = sourceBegin - regionBegin, targetOffset = targetBegin - regionBegin;
+        for (int i = 0; i < separator.length; i++) {
+            int row = i * width;
+            int first = BoundaryTables.UNREACHABLE;
+            for (int j = 0, k = row + sourceOffset; j < sourceCount; j++, k++) {
+                first = Math.min(first, sourceDistances[j] + toSeparator[k]);
+            }
+            // A first half that is already no shorter than the best route cannot improve it
+            if (first >= best) {
+                continue;
+            }
+            int second = BoundaryTables.UNREACHABLE;
+            for (int j = 0, k = row + targetOffset; j < targetCount; j++, k++) {
+                second = Math.min(second, fromSeparator[k] + targetDistances[j]);
+            }
+            if (first + second < best) {
+                best = first + second;
+                via = separator[i];
+            }
+        }
+        return best;
+    }
+
+    // Same over compressed tables: rows are decoded in order, each continuing from the last row read
+    // of the same table and range
+    private int throughCompressedSeparator(int region, int sourceBegin, int sourceCount, int targetBegin, int targetCount, int best) {
+        int[] separator = boundaryTables.getSeparator(region);
+        CompressedDistanceMatrix toSeparator = boundaryTables.getToSeparatorCompressed(region);
+        CompressedDistanceMatrix fromSeparator = boundaryTables.getFromSeparatorCompressed(region);
+        int regionBegin = boundaryTables.getRangeBegin(region);
+        int sourceOffset = sourceBegin - regionBegin, targetOffset = targetBegin - regionBegin;
+        if (sourceRow.length < sourceCount) {
+            sourceRow = new int[Math.max(sourceCount, sourceRow.length * 2)];
+        }
+        if (targetRow.length < targetCount) {
+            targetRow = new int[Math.max(targetCount, targetRow.length * 2)];
+        }
+        int lastTargetRow = -1;
+        for (int i = 0; i < separator.length; i++) {
+            toSeparator.readRow(i, sourceOffset, sourceCount, sourceRow, i - 1);
+            int first = BoundaryTables.UNREACHABLE;
+            for (int j = 0; j < sourceCount; j++) {
+                first = Math.min(first, sourceDistances[j] + sourceRow[j]);
+            }
+            if (first >= best) {
+                continue;
+            }
+            fromSeparator.readRow(i, targetOffset, targetCount, targetRow, lastTargetRow);
+            lastTargetRow = i;
+            int second = BoundaryTables.UNREACHABLE;
+            for (int j = 0; j < targetCount; j++) {
+                second = Math.min(second, targetRow[j] + targetDistances[j]);
+            }
+            if (first + second < best) {
+                best = first + second;
+                via = separator[i];
+            }
+        }
+        return best;
+    }
+
+    // Shortest path inside the region if it beats best; the route then has no separator waypoint
+    private int withinRegion(int region, int source, int target, int best) {
+        int distance = regionSearch.search(source, target, decompositionTree.getX1(region), decompositionTree.getY1(region),
+                decompositionTree.getX2(region), decompositionTree.getY2(region), best - 1);
+        if (distance == DijkstraEngine.INFINITY || distance >= best) {
+            return best;
+        }
+        via = -1;
+        return distance;
+    }
+}
@@ -0,0 +1,310 @@
+package org.project;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+// Dense distance tables in the style of an r-division. Regions of the decomposition tree with at most
+// pieceSize^2 cells (or without a separator) are pieces; a piece's boundary cells are those with a
+// neighbor in another piece, plus any cell on an ancestor's separator. For every region R above the
+// pieces, two |S(R)| x |boundary cells in R| tables hold the distances inside R from each separator
+// vertex to each boundary cell and back.
+//
+// Pieces are numbered in tree order, so the boundary cells of any region form one contiguous range.
+// Memory is fixed by the geometry alone (see getTableBytes) and does not depend on the queries;
+// computeAll fills every table, a PrecomputationPlanner picks a subset that fits a budget.
+// Tables are written once per region and only read afterwards, so copies share them. With
+// setCompressed(true) each table is kept as a CompressedDistanceMatrix instead of an int array.
+public class BoundaryTables {
+    // Stored for unreachable pairs; four of them still add up without overflowing
+    public static final int UNREACHABLE = Integer.MAX_VALUE / 4;
+
+    private final GridGraph gridGraph;
+    private final DecompositionTree decompositionTree;
+    private final int pieceSize;
+    // Per cell: the piece containing it
+    private final int[] pieceOf;
+    private final int[] boundaryCells;
+    // Per region: its range of boundaryCells
+    private final int[] rangeBegin;
+    private final int[] rangeEnd;
+    // Per region above the pieces: separator ids and the two tables, separator-major
+    private final int[][] separators;
+    private final int[][] fromSeparator;
+    private final int[][] toSeparator;
+    private final CompressedDistanceMatrix[] fromCompressed;
+    private final CompressedDistanceMatrix[] toCompressed;
+    private boolean compressed;
+
+    public BoundaryTables(GridGraph gridGraph, DecompositionTree decompositionTree, int pieceSize) {
+        this.gridGraph = gridGraph;
+        this.decompositionTree = decompositionTree;
+        this.pieceSize = pieceSize;
+        int cells = gridGraph.getM() * gridGraph.getN();
+        int slots = decompositionTree.getSlots();
+        this.pieceOf = new int[cells];
+        this.rangeBegin = new int[slots];
+        this.rangeEnd = new int[slots];
+        this.separators = new int[slots][];
+        this.fromSeparator = new int[slots][];
+        this.toSeparator = new int[slots][];
+        this.fromCompressed = new CompressedDistanceMatrix[slots];
+        this.toCompressed = new CompressedDistanceMatrix[slots];
+
+        boolean[] onSeparator = new boolean[cells];
+        assignPieces(DecompositionTree.ROOT, onSeparator);
+        int[] order = new int[cells];
+        int count = numberBoundary(DecompositionTree.ROOT, onSeparator, order, 0);
+        this.boundaryCells = Arrays.copyOf(order, count);
+    }
+
+    // Next version over an updated grid; tables are shared until computeRegion replaces them
+    private BoundaryTables(BoundaryTables previous, GridGraph gridGraph) {
+        this.gridGraph = gridGraph;
+        this.decompositionTree = previous.decompositionTree;
+        this.pieceSize = previous.pieceSize;
+        this.pieceOf = previous.pieceOf;
+        this.boundaryCells = previous.boundaryCells;
+        this.rangeBegin = previous.rangeBegin;
+        this.rangeEnd = previous.rangeEnd;
+        this.separators = previous.separators;
+        this.fromSeparator = previous.fromSeparator.clone();
+        this.toSeparator = previous.toSeparator.clone();
+        this.fromCompressed = previous.fromCompressed.clone();
+        this.toCompressed = previous.toCompressed.clone();
+        this.compressed = previous.compressed;
+    }
+
+    public BoundaryTables copy(GridGraph updatedGrid) {
+        return new BoundaryTables(this, updatedGrid);
+    }
+
+    // Applies to tables computed or loaded afterwards
+    public void setCompressed(boolean compressed) {
+        this.compressed = compressed;
+    }
+
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    private boolean isPiece(int region) {
+        int area = (decompositionTree.getX2(region) - decompositionTree.getX1(region) + 1)
+                * (decompositionTree.getY2(region) - decompositionTree.getY1(region) + 1);
+        return area <= pieceSize * pieceSize || decompositionTree.getSeparatorAxis(region) == DecompositionTree.NO_SEPARATOR;
+    }
+
+    private void assignPieces(int region, boolean[] onSeparator) {
+        if (!decompositionTree.exists(region)) {
+            return;
+        }
+        int n = gridGraph.getN();
+        if (isPiece(region)) {
+            for (int x = decompositionTree.getX1(region); x <= decompositionTree.getX2(region); x++) {
+                for (int y = decompositionTree.getY1(region); y <= decompositionTree.getY2(region); y++) {
+                    pieceOf[x * n + y] = region;
+                }
+            }
+            return;
+        }
+        List<int[]> separator = decompositionTree.getSeparator(region);
+        int[] ids = new int[separator.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = separator.get(i)[0] * n + separator.get(i)[1];
+            onSeparator[ids[i]] = true;
+        }
+        separators[region] = ids;
+        assignPieces(DecompositionTree.child(region, 0), onSeparator);
+        assignPieces(DecompositionTree.child(region, 1), onSeparator);
+    }
+
+    // Number the boundary cells of every piece below region in tree order; returns the next free index
+    private int numberBoundary(int region, boolean[] onSeparator, int[] order, int next) {
+        if (!decompositionTree.exists(region)) {
+            return next;
+        }
+        rangeBegin[region] = next;
+        if (isPiece(region)) {
+            int m = gridGraph.getM(), n = gridGraph.getN();
+            for (int x = decompositionTree.getX1(region); x <= decompositionTree.getX2(region); x++) {
+                for (int y = decompositionTree.getY1(region); y <= decompositionTree.getY2(region); y++) {
+                    int id = x * n + y;
+                    boolean boundary = onSeparator[id]
+                            || (x > 0 && pieceOf[id - n] != region) || (x < m - 1 && pieceOf[id + n] != region)
+                            || (y > 0 && pieceOf[id - 1] != region) || (y < n - 1 && pieceOf[id + 1] != region);
+                    if (boundary) {
+                        order[next++] = id;
+                    }
+                }
+            }
+        } else {
+            next = numberBoundary(DecompositionTree.child(region, 0), onSeparator, order, next);
+            next = numberBoundary(DecompositionTree.child(region, 1), onSeparator, order, next);
+        }
+        rangeEnd[region] = next;
+        return next;
+    }
+
+    // Fill the tables of every region above the pieces
+    public void computeAll(ThreadLocal<DijkstraEngine> dijkstraEngines, boolean parallel) {
+        for (int region = DecompositionTree.ROOT; region < separators.length; region++) {
+            if (isAbovePieces(region)) {
+                computeRegion(region, dijkstraEngines, parallel);
+            }
+        }
+    }
+
+    // One forward and one reverse search inside the region per separator vertex, each stopping once
+    // every boundary cell of the region is settled; impassable vertices get rows of UNREACHABLE
+    public void computeRegion(int region, ThreadLocal<DijkstraEngine> dijkstraEngines, boolean parallel) {
+        int[] separator = separators[region];
+        int begin = rangeBegin[region], count = rangeEnd[region] - begin;
+        int[] targets = Arrays.copyOfRange(boundaryCells, begin, begin + count);
+        int[] from = new int[separator.length * count];
+        int[] to = new int[separator.length * count];
+        int x1 = decompositionTree.getX1(region), y1 = decompositionTree.getY1(region);
+        int x2 = decompositionTree.getX2(region), y2 = decompositionTree.getY2(region);
+        IntStream indexes = IntStream.range(0, separator.length);
+        (parallel ? indexes.parallel() : indexes).forEach(i -> {
+            if (gridGraph.isBlocked(separator[i])) {
+                for (int j = 0; j < count; j++) {
+                    boolean self = targets[j] == separator[i];
+                    from[i * count + j] = self ? 0 : UNREACHABLE;
+                    to[i * count + j] = self ? 0 : UNREACHABLE;
+                }
+                return;
+            }
+            DijkstraEngine dijkstraEngine = dijkstraEngines.get();
+            int[] distances = new int[count];
+            dijkstraEngine.searchWithin(separator[i], targets, x1, y1, x2, y2, false, distances);
+            store(distances, from, i * count);
+            dijkstraEngine.searchWithin(separator[i], targets, x1, y1, x2, y2, true, distances);
+            store(distances, to, i * count);
+        });
+        if (compressed) {
+            putCompressed(region, CompressedDistanceMatrix.encode(from, separator.length, count),
+                    CompressedDistanceMatrix.encode(to, separator.length, count));
+        } else {
+            fromSeparator[region] = from;
+            toSeparator[region] = to;
+        }
+    }
+
+    // Tables of one region in compressed form, e.g. read back from an OracleFile
+    public void putCompressed(int region, CompressedDistanceMatrix from, CompressedDistanceMatrix to) {
+        fromCompressed[region] = from;
+        toCompressed[region] = to;
+        fromSeparator[region] = null;
+        toSeparator[region] = null;
+    }
+
+    private static void store(int[] distances, int[] table, int offset) {
+        for (int j = 0; j < distances.length; j++) {
+            table[offset + j] = distances[j] == DijkstraEngine.INFINITY ? UNREACHABLE : distances[j];
+        }
+    }
+
+    public GridGraph getGridGraph() {
+        return gridGraph;
+    }
+
+    public DecompositionTree getDecompositionTree() {
+        return decompositionTree;
+    }
+
+    public int getPieceSize() {
+        return pieceSize;
+    }
+
+    // Regions above the pieces: every strict ancestor of a piece, the regions that can have a table
+    public boolean isAbovePieces(int region) {
+        return region < separators.length && separators[region] != null;
+    }
+
+    // Regions whose tables have been computed or loaded
+    public boolean hasTable(int region) {
+        return region < separators.length && (fromSeparator[region] != null || fromCompressed[region] != null);
+    }
+
+    public int getPiece(int vertex) {
+        return pieceOf[vertex];
+    }
+
+    public int[] getSeparator(int region) {
+        return separators[region];
+    }
+
+    public int getBoundaryCell(int index) {
+        return boundaryCells[index];
+    }
+
+    // Range of boundary cell indexes inside the region (for a piece: its own boundary cells)
+    public int getRangeBegin(int region) {
+        return rangeBegin[region];
+    }
+
+    public int getRangeEnd(int region) {
+        return rangeEnd[region];
+    }
+
+    // Distances inside the region, indexed [separator index * (rangeEnd - rangeBegin) + boundary index - rangeBegin]
+    public int[] getFromSeparator(int region) {
+        return fromSeparator[region];
+    }
+
+    public int[] getToSeparator(int region) {
+        return toSeparator[region];
+    }
+
+    // Same tables when compressed, null otherwise
+    public CompressedDistanceMatrix getFromSeparatorCompressed(int region) {
+        return fromCompressed[region];
+    }
+
+    public CompressedDistanceMatrix getToSeparatorCompressed(int region) {
+        return toCompressed[region];
+    }
+
+    // Both tables of a region in compressed form, encoding them if they are held uncompressed
+    CompressedDistanceMatrix[] compressedTables(int region) {
+        if (fromCompressed[region] != null) {
+            return new CompressedDistanceMatrix[]{fromCompressed[region], toCompressed[region]};
+        }
+        int rows = separators[region].length, cols = rangeEnd[region] - rangeBegin[region];
+        return new CompressedDistanceMatrix[]{CompressedDistanceMatrix.encode(fromSeparator[region], rows, cols),
+                CompressedDistanceMatrix.encode(toSeparator[region], rows, cols)};
+    }
+
+    public int getBoundaryCount() {
+        return boundaryCells.length;
+    }
+
+    // Bytes all tables take once computed uncompressed, known as soon as the pieces are laid out
+    public long getTableBytes() {
+        long bytes = 0;
+        for (int region = DecompositionTree.ROOT; region < separators.length; region++) {
+            if (isAbovePieces(region)) {
+                bytes += getTableBytes(region);
+            }
+        }
+        return bytes;
+    }
+
+    // Same for the two tables of one region above the pieces
+    public long getTableBytes(int region) {
+        return 2L * Integer.BYTES * separators[region].length * (rangeEnd[region] - rangeBegin[region]);
+    }
+
+    // Bytes the tables take as they are held now: compressed where compressed, else as int arrays
+    public long getHeldBytes() {
+        long bytes = 0;
+        for (int region = DecompositionTree.ROOT; region < separators.length; region++) {
+            if (fromCompressed[region] != null) {
+                bytes += fromCompressed[region].getBytes() + toCompressed[region].getBytes();
+            } else if (fromSeparator[region] != null) {
+                bytes += 4L * (fromSeparator[region].length + toSeparator[region].length);
+            }
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,269 @@
+package org.project;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+// Read-only int matrix for separator x target distance tables. Rows of adjacent separator vertices
+// differ per column by at most the edge weight between them, so every row except the first of each
+// block of BLOCK_ROWS stores its difference to the row above. Each row is bit-packed with its own
+// width over its own base (frame of reference); the few entries that would widen a row (e.g. the step
+// between a reachable and an unreachable cell) are stored at the all-ones code and kept as exceptions
+// with their absolute value. Any entry can be decoded from its block's first row, and a row range
+// read right after the previous row costs one unpack per entry.
+public final class CompressedDistanceMatrix {
+    public static final int BLOCK_ROWS = 16;
+
+    // Position (row * cols + col) and value of one exception, as charged against packing bits
+    private static final int EXCEPTION_BITS = 96;
+
+    private final int rows;
+    private final int cols;
+    private final int[] rowBase;
+    private final byte[] rowWidth;
+    private final long[] rowOffset;
+    private final long[] words;
+    private final long[] exceptionPositions;
+    private final int[] exceptionValues;
+
+    private CompressedDistanceMatrix(int rows, int cols, int[] rowBase, byte[] rowWidth, long[] rowOffset, long[] words,
+                                     long[] exceptionPositions, int[] exceptionValues) {
+        this.rows = rows;
+        this.cols = cols;
+        this.rowBase = rowBase;
+        this.rowWidth = rowWidth;
+        this.rowOffset = rowOffset;
+        this.words = words;
+        this.exceptionPositions = exceptionPositions;
+        this.exceptionValues = exceptionValues;
+    }
+
+    // values is row-major, rows * cols entries
+    public static CompressedDistanceMatrix encode(int[] values, int rows, int cols) {
+        int[] rowBase = new int[rows];
+        byte[] rowWidth = new byte[rows];
+        long[] rowOffset = new long[rows];
+        long[] entries = new long[cols];
+        long[] sorted = new long[cols];
+        long totalBits = 0;
+        // First pass picks every row's base and width, so the bit stream can be sized exactly
+        for (int row = 0; row < rows; row++) {
+            rowEntries(values, row, cols, entries);
+            System.arraycopy(entries, 0, sorted, 0, cols);
+            Arrays.sort(sorted);
+            int width = 0;
+            long base = cols == 0 ? 0 : sorted[0];
+            long bestCost = cols == 0 || sorted[0] == sorted[cols - 1] ? 0 : Long.MAX_VALUE;
+            for (int w = 1; w <= 32 && bestCost > 0; w++) {
+                // Codes 0 .. 2^w - 2 hold values, 2^w - 1 marks an exception
+                long span = (1L << w) - 2;
+                int covered = 0;
+                long start = 0;
+                for (int low = 0, high = 0; high < cols; high++) {
+                    while (sorted[high] - sorted[low] > span) {
+                        low++;
+                    }
+                    if (high - low + 1 > covered) {
+                        covered = high - low + 1;
+                        start = sorted[low];
+                    }
+                }
+                long cost = (long) cols * w + (long) (cols - covered) * EXCEPTION_BITS;
+                if (cost < bestCost) {
+                    bestCost = cost;
+                    width = w;
+                    base = start;
+                }
+            }
+            rowBase[row] = (int) base;
+            rowWidth[row] = (byte) width;
+            rowOffset[row] = totalBits;
+            totalBits += (long) cols * width;
+        }
+
+        long[] words = new long[(int) ((totalBits + 63) >>> 6)];
+        long[] exceptionPositions = new long[16];
+        int[] exceptionValues = new int[16];
+        int exceptions = 0;
+        for (int row = 0; row < rows; row++) {
+            int width = rowWidth[row];
+            if (width == 0) {
+                continue;
+            }
+            rowEntries(values, row, cols, entries);
+            long mask = (1L << width) - 1;
+            long position = rowOffset[row];
+            for (int col = 0; col < cols; col++, position += width) {
+                long code = entries[col] - rowBase[row];
+                if (code < 0 || code >= mask) {
+                    code = mask;
+                    if (exceptions == exceptionPositions.length) {
+                        exceptionPositions = Arrays.copyOf(exceptionPositions, exceptions * 2);
+                        exceptionValues = Arrays.copyOf(exceptionValues, exceptions * 2);
+                    }
+                    exceptionPositions[exceptions] = (long) row * cols + col;
+                    exceptionValues[exceptions++] = values[row * cols + col];
+                }
+                int word = (int) (position >>> 6), shift = (int) (position & 63);
+                words[word] |= code << shift;
+                if (shift + width > 64) {
+                    words[word + 1] |= code >>> (64 - shift);
+                }
+            }
+        }
+        return new CompressedDistanceMatrix(rows, cols, rowBase, rowWidth, rowOffset, words,
+                Arrays.copyOf(exceptionPositions, exceptions), Arrays.copyOf(exceptionValues, exceptions));
+    }
+
+    // Block starts hold the values, other rows the difference to the row above
+    private static void rowEntries(int[] values, int row, int cols, long[] entries) {
+        int offset = row * cols;
+        if (row % BLOCK_ROWS == 0) {
+            for (int col = 0; col < cols; col++) {
+                entries[col] = values[offset + col];
+            }
+        } else {
+            for (int col = 0; col < cols; col++) {
+                entries[col] = (long) values[offset + col] - values[offset - cols + col];
+            }
+        }
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    public int get(int row, int col) {
+        int value = 0;
+        for (int r = row - row % BLOCK_ROWS; r <= row; r++) {
+            value = apply(r, col, value);
+        }
+        return value;
+    }
+
+    // Columns [colBegin, colBegin + count) of row into values. If values already holds previousRow of
+    // the same columns and it lies in the same block above row, decoding continues from there; pass
+    // -1 otherwise.
+    public void readRow(int row, int colBegin, int count, int[] values, int previousRow) {
+        int blockStart = row - row % BLOCK_ROWS;
+        int start = previousRow >= blockStart && previousRow < row ? previousRow + 1 : blockStart;
+        for (int r = start; r <= row; r++) {
+            int width = rowWidth[r];
+            int base = rowBase[r];
+            boolean first = r == blockStart;
+            if (width == 0) {
+                if (first) {
+                    Arrays.fill(values, 0, count, base);
+                } else if (base != 0) {
+                    for (int j = 0; j < count; j++) {
+                        values[j] += base;
+                    }
+                }
+                continue;
+            }
+            long mask = (1L << width) - 1;
+            long position = rowOffset[r] + (long) colBegin * width;
+            for (int j = 0; j < count; j++, position += width) {
+                int word = (int) (position >>> 6), shift = (int) (position & 63);
+                long code = words[word] >>> shift;
+                if (shift + width > 64) {
+                    code |= words[word + 1] << (64 - shift);
+                }
+                code &= mask;
+                if (code == mask) {
+                    values[j] = exception(r, colBegin + j);
+                } else {
+                    values[j] = first ? base + (int) code : values[j] + base + (int) code;
+                }
+            }
+        }
+    }
+
+    // Entry (r, col) given the entry above it (ignored at a block start)
+    private int apply(int r, int col, int above) {
+        int width = rowWidth[r];
+        int base = rowBase[r];
+        boolean first = r % BLOCK_ROWS == 0;
+        if (width == 0) {
+            return first ? base : above + base;
+        }
+        long mask = (1L << width) - 1;
+        long position = rowOffset[r] + (long) col * width;
+        int word = (int) (position >>> 6), shift = (int) (position & 63);
+        long code = words[word] >>> shift;
+        if (shift + width > 64) {
+            code |= words[word + 1] << (64 - shift);
+        }
+        code &= mask;
+        if (code == mask) {
+            return exception(r, col);
+        }
+        return first ? base + (int) code : above + base + (int) code;
+    }
+
+    private int exception(int row, int col) {
+        return exceptionValues[Arrays.binarySearch(exceptionPositions, (long) row * cols + col)];
+    }
+
+    // Heap bytes of the encoded form
+    public long getBytes() {
+        return (long) words.length * 8 + (long) rows * (4 + 1 + 8) + (long) exceptionValues.length * 12;
+    }
+
+    // Serialized size for OracleFile
+    public int serializedBytes() {
+        return 4 * 4 + rows * (4 + 1) + words.length * 8 + exceptionValues.length * 12;
+    }
+
+    // Little-endian: rows, cols, word count, exception count, row bases, row widths, words, exception
+    // positions, exception values. Row offsets are rebuilt from the widths.
+    public ByteBuffer toBytes() {
+        ByteBuffer buffer = ByteBuffer.allocate(serializedBytes()).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(rows).putInt(cols).putInt(words.length).putInt(exceptionValues.length);
+        for (int base : rowBase) {
+            buffer.putInt(base);
+        }
+        buffer.put(rowWidth);
+        for (long word : words) {
+            buffer.putLong(word);
+        }
+        for (long position : exceptionPositions) {
+            buffer.putLong(position);
+        }
+        for (int value : exceptionValues) {
+            buffer.putInt(value);
+        }
+        return buffer.flip();
+    }
+
+    // Reads one matrix at the buffer's position (little-endian) and advances past it
+    public static CompressedDistanceMatrix fromBytes(ByteBuffer buffer) {
+        int rows = buffer.getInt(), cols = buffer.getInt(), wordCount = buffer.getInt(), exceptions = buffer.getInt();
+        int[] rowBase = new int[rows];
+        for (int i = 0; i < rows; i++) {
+            rowBase[i] = buffer.getInt();
+        }
+        byte[] rowWidth = new byte[rows];
+        buffer.get(rowWidth);
+        long[] rowOffset = new long[rows];
+        long bits = 0;
+        for (int i = 0; i < rows; i++) {
+            rowOffset[i] = bits;
+            bits += (long) cols * rowWidth[i];
+        }
+        long[] words = new long[wordCount];
+        buffer.asLongBuffer().get(words);
+        buffer.position(buffer.position() + wordCount * 8);
+        long[] exceptionPositions = new long[exceptions];
+        buffer.asLongBuffer().get(exceptionPositions);
+        buffer.position(buffer.position() + exceptions * 8);
+        int[] exceptionValues = new int[exceptions];
+        buffer.asIntBuffer().get(exceptionValues);
+        buffer.position(buffer.position() + exceptions * 4);
+        return new CompressedDistanceMatrix(rows, cols, rowBase, rowWidth, rowOffset, words, exceptionPositions, exceptionValues);
+    }
+}
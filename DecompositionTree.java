@@ -0,0 +1,176 @@
+package org.project;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Rectangular regions produced by GraphDecomposition, numbered like a binary heap: the root is 1 and
+// the two halves of region r are 2r (coordinates below the separator) and 2r + 1 (the separator
+// line and everything above it). Region r sits at level floor(log2(r)).
+public class DecompositionTree {
+    public static final int ROOT = 1;
+    public static final int NO_SEPARATOR = 0;
+    // Separator is the line x = coordinate
+    public static final int SEPARATOR_X = 1;
+    // Separator is the line y = coordinate
+    public static final int SEPARATOR_Y = 2;
+
+    private final int maxLevel;
+    private final int[] levels;
+    private final int[] bounds;
+    private final int[] separatorAxis;
+    private final int[] separatorCoordinate;
+
+    public DecompositionTree(int maxLevel) {
+        this.maxLevel = maxLevel;
+        int slots = 2 << maxLevel;
+        this.levels = new int[slots];
+        this.bounds = new int[slots * 4];
+        this.separatorAxis = new int[slots];
+        this.separatorCoordinate = new int[slots];
+        Arrays.fill(levels, -1);
+    }
+
+    public static int child(int region, int side) {
+        return 2 * region + side;
+    }
+
+    public static int parent(int region) {
+        return region >>> 1;
+    }
+
+    public int getMaxLevel() {
+        return maxLevel;
+    }
+
+    // Number of region slots (the largest possible region id + 1)
+    public int getSlots() {
+        return levels.length;
+    }
+
+    // Each slot is written by exactly one decomposition task, so parallel builds need no locking
+    public void addRegion(int region, int level, int x1, int y1, int x2, int y2, int axis, int coordinate) {
+        levels[region] = level;
+        bounds[4 * region] = x1;
+        bounds[4 * region + 1] = y1;
+        bounds[4 * region + 2] = x2;
+        bounds[4 * region + 3] = y2;
+        separatorAxis[region] = axis;
+        separatorCoordinate[region] = coordinate;
+    }
+
+    public boolean exists(int region) {
+        return region > 0 && region < levels.length && levels[region] >= 0;
+    }
+
+    public int getLevel(int region) {
+        return levels[region];
+    }
+
+    // {x1, y1, x2, y2}, inclusive
+    public int[] getBounds(int region) {
+        return Arrays.copyOfRange(bounds, 4 * region, 4 * region + 4);
+    }
+
+    public int getX1(int region) {
+        return bounds[4 * region];
+    }
+
+    public int getY1(int region) {
+        return bounds[4 * region + 1];
+    }
+
+    public int getX2(int region) {
+        return bounds[4 * region + 2];
+    }
+
+    public int getY2(int region) {
+        return bounds[4 * region + 3];
+    }
+
+    public int getSeparatorAxis(int region) {
+        return separatorAxis[region];
+    }
+
+    public int getSeparatorCoordinate(int region) {
+        return separatorCoordinate[region];
+    }
+
+    // Leaf region containing (x, y), found by walking the separators down from the root
+    public int locate(int x, int y) {
+        int region = ROOT;
+        while (separatorAxis[region] != NO_SEPARATOR) {
+            int child = child(region, side(region, x, y) < 0 ? 0 : 1);
+            if (!exists(child)) {
+                break;
+            }
+            region = child;
+        }
+        return region;
+    }
+
+    // Lowest common ancestor in O(1): ids are root-to-node bit paths, so after lifting the deeper
+    // region to the same depth the answer is their longest common prefix
+    public static int lca(int region1, int region2) {
+        int depth1 = depth(region1), depth2 = depth(region2);
+        if (depth1 > depth2) {
+            region1 >>>= depth1 - depth2;
+        } else {
+            region2 >>>= depth2 - depth1;
+        }
+        int diff = region1 ^ region2;
+        return diff == 0 ? region1 : region1 >>> (32 - Integer.numberOfLeadingZeros(diff));
+    }
+
+    public static int ancestorAtLevel(int region, int level) {
+        return region >>> (depth(region) - level);
+    }
+
+    // Depth of a region id, equal to its decomposition level
+    public static int depth(int region) {
+        return 31 - Integer.numberOfLeadingZeros(region);
+    }
+
+    // Fewest edges a path from (x, y) needs to leave the region, Integer.MAX_VALUE if the region is the
+    // whole grid (the root region's bounds)
+    public int stepsToLeave(int region, int x, int y) {
+        int steps = Integer.MAX_VALUE;
+        if (getX1(region) > getX1(ROOT)) steps = Math.min(steps, x - getX1(region) + 1);
+        if (getX2(region) < getX2(ROOT)) steps = Math.min(steps, getX2(region) - x + 1);
+        if (getY1(region) > getY1(ROOT)) steps = Math.min(steps, y - getY1(region) + 1);
+        if (getY2(region) < getY2(ROOT)) steps = Math.min(steps, getY2(region) - y + 1);
+        return steps;
+    }
+
+    // Lower bound on any path from (sx, sy) to (tx, ty) that leaves the region: it has to walk out of
+    // the region from the source and back in to the target, and every edge costs at least
+    // minEdgeWeight. Long.MAX_VALUE if the region is the whole grid.
+    public long exitLowerBound(int region, int sx, int sy, int tx, int ty, int minEdgeWeight) {
+        int steps1 = stepsToLeave(region, sx, sy);
+        int steps2 = stepsToLeave(region, tx, ty);
+        if (steps1 == Integer.MAX_VALUE || steps2 == Integer.MAX_VALUE) {
+            return Long.MAX_VALUE;
+        }
+        return ((long) steps1 + steps2) * minEdgeWeight;
+    }
+
+    // -1 below the region's separator (first half), 0 on it, 1 above it
+    public int side(int region, int x, int y) {
+        int coordinate = separatorAxis[region] == SEPARATOR_X ? x : y;
+        return Integer.compare(coordinate, separatorCoordinate[region]);
+    }
+
+    public List<int[]> getSeparator(int region) {
+        List<int[]> separator = new ArrayList<>();
+        if (separatorAxis[region] == SEPARATOR_X) {
+            for (int y = getY1(region); y <= getY2(region); y++) {
+                separator.add(new int[]{separatorCoordinate[region], y});
+            }
+        } else if (separatorAxis[region] == SEPARATOR_Y) {
+            for (int x = getX1(region); x <= getX2(region); x++) {
+                separator.add(new int[]{x, separatorCoordinate[region]});
+            }
+        }
+        return separator;
+    }
+}
@@ -0,0 +1,210 @@
+package org.project;
+
+import java.util.Arrays;
+import java.util.List;
+
+// Reusable Dijkstra search over linear vertex ids (x * n + y). Distances and parents live in
+// int arrays sized once per grid and are invalidated with a search stamp instead of being
+// cleared, so steady-state searches allocate nothing. Not thread-safe: use one engine per thread.
+public class DijkstraEngine {
+    public static final int INFINITY = Integer.MAX_VALUE;
+    private static final Metrics METRICS = Metrics.global();
+
+    private GridGraph gridGraph;
+    private final int n;
+    private final int[] dist;
+    private final int[] parent;
+    private final int[] stamp;
+    private final IndexedMinHeap heap;
+    private final int[] neighborIds = new int[GridGraph.DIRECTIONS];
+    private final int[] neighborWeights = new int[GridGraph.DIRECTIONS];
+    private int currentStamp;
+    private int[] targetStamp;
+    private boolean reverse;
+
+    public DijkstraEngine(GridGraph gridGraph) {
+        this.gridGraph = gridGraph;
+        this.n = gridGraph.getN();
+        int size = gridGraph.getM() * n;
+        this.dist = new int[size];
+        this.parent = new int[size];
+        this.stamp = new int[size];
+        this.heap = new IndexedMinHeap(size);
+    }
+
+    // Search another grid of the same dimensions from now on (e.g. a later version of this one),
+    // keeping the arrays
+    public void setGridGraph(GridGraph gridGraph) {
+        if (gridGraph.getN() != n || (long) gridGraph.getM() * n != dist.length) {
+            throw new IllegalArgumentException("Engine sized for " + dist.length / n + "x" + n + " cannot search a "
+                    + gridGraph.getM() + "x" + gridGraph.getN() + " grid");
+        }
+        this.gridGraph = gridGraph;
+    }
+
+    public int id(int x, int y) {
+        return x * n + y;
+    }
+
+    public int id(int[] vertex) {
+        return vertex[0] * n + vertex[1];
+    }
+
+    public int x(int id) {
+        return id / n;
+    }
+
+    public int y(int id) {
+        return id % n;
+    }
+
+    // Run a search from source until target is settled; returns INFINITY if it is unreachable
+    public int search(int source, int target) {
+        start(source);
+        int settled = 0;
+        while (!heap.isEmpty()) {
+            int u = heap.poll();
+            settled++;
+            if (u == target) {
+                heap.clear();
+                METRICS.addSettled(settled);
+                return dist[u];
+            }
+            relax(u);
+        }
+        METRICS.addSettled(settled);
+        return INFINITY;
+    }
+
+    // One search from source confined to the rectangle [x1, x2] x [y1, y2] that settles every vertex in
+    // targets (or the whole rectangle when targets is null) and writes distances[i] for targets[i].
+    // A reverse search follows edges backwards, so it yields the distances from each target to source.
+    public void searchWithin(int source, int[] targets, int x1, int y1, int x2, int y2, boolean reverse, int[] distances) {
+        start(source);
+        this.reverse = reverse;
+        int remaining = 0;
+        if (targets != null) {
+            if (targetStamp == null) {
+                targetStamp = new int[stamp.length];
+            }
+            for (int target : targets) {
+                if (targetStamp[target] != currentStamp) {
+                    targetStamp[target] = currentStamp;
+                    remaining++;
+                }
+            }
+        }
+        int settled = 0;
+        while (!heap.isEmpty()) {
+            int u = heap.poll();
+            settled++;
+            if (targets != null && targetStamp[u] == currentStamp && --remaining == 0) {
+                heap.clear();
+                break;
+            }
+            relaxWithin(u, x1, y1, x2, y2);
+        }
+        METRICS.addSettled(settled);
+        if (targets != null) {
+            for (int i = 0; i < targets.length; i++) {
+                distances[i] = distance(targets[i]);
+            }
+        }
+    }
+
+    // Distance found by the last search, or INFINITY if the vertex was not reached
+    public int distance(int vertex) {
+        return stamp[vertex] == currentStamp ? dist[vertex] : INFINITY;
+    }
+
+    // Ids of the last search's path from its source to target (from target to the source after a
+    // reverse search), empty if target was not reached
+    public int[] pathIds(int target) {
+        if (distance(target) == INFINITY) {
+            return new int[0];
+        }
+        int length = 0;
+        for (int v = target; v != -1; v = parent[v]) {
+            length++;
+        }
+        int[] ids = new int[length];
+        for (int v = target, i = length - 1; v != -1; v = parent[v], i--) {
+            ids[reverse ? length - 1 - i : i] = v;
+        }
+        return ids;
+    }
+
+    // Append the cells of the last search's path from its source to target (from target to the
+    // source after a reverse search)
+    public void appendPath(int target, List<int[]> path) {
+        if (distance(target) == INFINITY) {
+            return;
+        }
+        int start = path.size();
+        for (int v = target; v != -1; v = parent[v]) {
+            path.add(new int[]{x(v), y(v)});
+        }
+        if (reverse) {
+            return;
+        }
+        // Path was collected target-first; reverse only the appended segment
+        for (int i = start, j = path.size() - 1; i < j; i++, j--) {
+            int[] tmp = path.get(i);
+            path.set(i, path.get(j));
+            path.set(j, tmp);
+        }
+    }
+
+    private void start(int source) {
+        heap.clear();
+        if (++currentStamp == 0) {
+            // Stamp wrapped around; forget every stale entry and target mark once
+            Arrays.fill(stamp, 0);
+            if (targetStamp != null) {
+                Arrays.fill(targetStamp, 0);
+            }
+            currentStamp = 1;
+        }
+        reverse = false;
+        stamp[source] = currentStamp;
+        dist[source] = 0;
+        parent[source] = -1;
+        heap.insertOrDecrease(source, 0);
+    }
+
+    private void relax(int u) {
+        int du = dist[u];
+        int count = gridGraph.neighbors(u, neighborIds, neighborWeights);
+        for (int i = 0; i < count; i++) {
+            relaxEdge(u, neighborIds[i], du + neighborWeights[i]);
+        }
+    }
+
+    private void relaxWithin(int u, int x1, int y1, int x2, int y2) {
+        int ux = u / n, uy = u - ux * n;
+        int du = dist[u];
+        if (uy < y2) relaxWithin(u, u + 1, reverse ? gridGraph.getEdgeWeight(u + 1, GridGraph.WEST) : gridGraph.getEdgeWeight(u, GridGraph.EAST), du);
+        if (ux < x2) relaxWithin(u, u + n, reverse ? gridGraph.getEdgeWeight(u + n, GridGraph.NORTH) : gridGraph.getEdgeWeight(u, GridGraph.SOUTH), du);
+        if (uy > y1) relaxWithin(u, u - 1, reverse ? gridGraph.getEdgeWeight(u - 1, GridGraph.EAST) : gridGraph.getEdgeWeight(u, GridGraph.WEST), du);
+        if (ux > x1) relaxWithin(u, u - n, reverse ? gridGraph.getEdgeWeight(u - n, GridGraph.SOUTH) : gridGraph.getEdgeWeight(u, GridGraph.NORTH), du);
+    }
+
+    private void relaxWithin(int u, int v, int weight, int du) {
+        if (weight != GridGraph.NO_EDGE) {
+            relaxEdge(u, v, du + weight);
+        }
+    }
+
+    private void relaxEdge(int u, int v, int newDistance) {
+        if (stamp[v] != currentStamp) {
+            stamp[v] = currentStamp;
+            dist[v] = newDistance;
+            parent[v] = u;
+            heap.insertOrDecrease(v, newDistance);
+        } else if (newDistance < dist[v]) {
+            dist[v] = newDistance;
+            parent[v] = u;
+            heap.insertOrDecrease(v, newDistance);
+        }
+    }
+}
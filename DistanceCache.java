@@ -0,0 +1,191 @@
+package org.project;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// Bounded cache of distances keyed by packed DistanceTable keys. Entries live in open-addressing
+// primitive tables split into independently locked segments; when a segment is full a CLOCK hand
+// evicts an entry that has not been read since the hand last passed it. Keys known to be absent
+// can be cached too, so repeated misses stop reaching the database.
+public class DistanceCache {
+    // get() results that are not distances
+    public static final int NOT_CACHED = Integer.MIN_VALUE;
+    public static final int ABSENT = Integer.MIN_VALUE + 1;
+
+    public static final long DEFAULT_BUDGET_BYTES = 64L << 20;
+    // key + value + slot state
+    public static final int BYTES_PER_SLOT = 8 + 4 + 1;
+
+    private static final int SEGMENTS = 16;
+    private static final byte EMPTY = 0;
+    private static final byte OCCUPIED = 1;
+    private static final byte REFERENCED = 2;
+
+    private final Segment[] segments;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder negativeHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public DistanceCache() {
+        this(DEFAULT_BUDGET_BYTES);
+    }
+
+    public DistanceCache(long budgetBytes) {
+        long slotsPerSegment = Math.max(16, budgetBytes / BYTES_PER_SLOT / SEGMENTS);
+        int capacity = Integer.highestOneBit((int) Math.min(1 << 30, slotsPerSegment));
+        segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(capacity);
+        }
+    }
+
+    // The cached distance, ABSENT if the key is cached as missing, or NOT_CACHED
+    public int get(long key) {
+        long hash = hash(key);
+        int value = segment(hash).get(key, hash);
+        if (value == NOT_CACHED) {
+            misses.increment();
+        } else if (value == ABSENT) {
+            negativeHits.increment();
+        } else {
+            hits.increment();
+        }
+        return value;
+    }
+
+    public void put(long key, int distance) {
+        long hash = hash(key);
+        segment(hash).put(key, hash, distance);
+    }
+
+    // Remember that the key has no stored distance
+    public void putAbsent(long key) {
+        put(key, ABSENT);
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getNegativeHits() {
+        return negativeHits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public long getSize() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    public long getCapacityBytes() {
+        return (long) segments.length * segments[0].keys.length * BYTES_PER_SLOT;
+    }
+
+    private Segment segment(long hash) {
+        return segments[(int) (hash >>> 60) & (SEGMENTS - 1)];
+    }
+
+    private static long hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 29);
+    }
+
+    private final class Segment {
+        private final long[] keys;
+        private final int[] values;
+        private final byte[] states;
+        private final int mask;
+        private final int maxSize;
+        private int size;
+        private int hand;
+
+        Segment(int capacity) {
+            keys = new long[capacity];
+            values = new int[capacity];
+            states = new byte[capacity];
+            mask = capacity - 1;
+            maxSize = capacity - (capacity >>> 2);
+        }
+
+        synchronized int get(long key, long hash) {
+            int slot = find(key, hash);
+            if (states[slot] == EMPTY) {
+                return NOT_CACHED;
+            }
+            states[slot] = REFERENCED;
+            return values[slot];
+        }
+
+        synchronized void put(long key, long hash, int value) {
+            int slot = find(key, hash);
+            if (states[slot] != EMPTY) {
+                values[slot] = value;
+                return;
+            }
+            if (size >= maxSize) {
+                evict();
+                slot = find(key, hash);
+            }
+            keys[slot] = key;
+            values[slot] = value;
+            states[slot] = OCCUPIED;
+            size++;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        private int find(long key, long hash) {
+            int slot = (int) hash & mask;
+            while (states[slot] != EMPTY && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        // CLOCK sweep: referenced entries get a second chance, the first unreferenced one is removed
+        private void evict() {
+            while (true) {
+                byte state = states[hand];
+                if (state == REFERENCED) {
+                    states[hand] = OCCUPIED;
+                } else if (state == OCCUPIED) {
+                    remove(hand);
+                    evictions.increment();
+                    return;
+                }
+                hand = (hand + 1) & mask;
+            }
+        }
+
+        // Backward-shift deletion keeps every remaining key reachable from its home slot
+        private void remove(int slot) {
+            int hole = slot;
+            int next = (hole + 1) & mask;
+            while (states[next] != EMPTY) {
+                int home = (int) hash(keys[next]) & mask;
+                // Move the entry back only if its home slot does not lie between the hole and its position
+                if (((next - home) & mask) >= ((next - hole) & mask)) {
+                    keys[hole] = keys[next];
+                    values[hole] = values[next];
+                    states[hole] = states[next];
+                    hole = next;
+                }
+                next = (next + 1) & mask;
+            }
+            states[hole] = EMPTY;
+            size--;
+        }
+    }
+}
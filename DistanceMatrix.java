@@ -0,0 +1,207 @@
+package org.project;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+// Many-to-many distances that share work between pairs instead of running one search per pair.
+// With BoundaryTables, each source is searched once inside its piece and turned into one vector per
+// region above it: a_s[v] = d(s, v) for every v on S(R), the way BoundaryQuery does it for one pair.
+// Each target gets the same vectors from the separators, c_t[v] = d(v, t). The distance of a pair is
+// then the minimum, over the regions containing both pieces, of the min-plus product
+//   min over v in S(R) of a_s[v] + c_t[v]
+// together with the search inside the piece when both share one. That inner loop is a plain
+// reduction over two int arrays, which the JIT vectorizes.
+// Without tables every source runs one search over the grid that stops once all targets are settled;
+// so do sources with targets whose common regions lack a table (see PrecomputationPlanner), for
+// just those targets.
+public class DistanceMatrix {
+    private final GridGraph gridGraph;
+    private final BoundaryTables boundaryTables;
+    private final ThreadLocal<DijkstraEngine> dijkstraEngines;
+    // Per region: every region above the pieces from here to the root has its tables
+    private final boolean[] complete;
+    private boolean parallel;
+
+    // boundaryTables may be null
+    public DistanceMatrix(GridGraph gridGraph, BoundaryTables boundaryTables) {
+        this.gridGraph = gridGraph;
+        this.boundaryTables = boundaryTables;
+        this.dijkstraEngines = ThreadLocal.withInitial(() -> new DijkstraEngine(gridGraph));
+        if (boundaryTables != null) {
+            complete = new boolean[boundaryTables.getDecompositionTree().getSlots()];
+            for (int region = DecompositionTree.ROOT; region < complete.length; region++) {
+                boolean covered = !boundaryTables.isAbovePieces(region) || boundaryTables.hasTable(region);
+                complete[region] = covered && (region == DecompositionTree.ROOT || complete[DecompositionTree.parent(region)]);
+            }
+        } else {
+            complete = null;
+        }
+    }
+
+    // Spread sources and targets over the common pool
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    // Distances from every source to every target (linear ids x * n + y), row-major:
+    // entry i * targets.length + j is sources[i] -> targets[j], DijkstraEngine.INFINITY if unreachable
+    public int[] compute(int[] sources, int[] targets) {
+        long entries = (long) sources.length * targets.length;
+        if (entries > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException(sources.length + " sources by " + targets.length
+                    + " targets do not fit in one matrix, split the sources into smaller batches");
+        }
+        int[] matrix = new int[(int) entries];
+        if (boundaryTables == null) {
+            range(sources.length).forEach(i -> searchGrid(sources[i], targets, matrix, i * targets.length));
+            return matrix;
+        }
+        Arrays.fill(matrix, BoundaryTables.UNREACHABLE);
+
+        int[] sourcePieces = Arrays.stream(sources).map(boundaryTables::getPiece).toArray();
+        int[] targetPieces = Arrays.stream(targets).map(boundaryTables::getPiece).toArray();
+        // Targets ordered by piece, so a source finds those sharing its piece in one range
+        Integer[] byPiece = IntStream.range(0, targets.length).boxed().toArray(Integer[]::new);
+        Arrays.sort(byPiece, (a, b) -> Integer.compare(targetPieces[a], targetPieces[b]));
+        int[] targetOrder = Arrays.stream(byPiece).mapToInt(Integer::intValue).toArray();
+
+        int[][][] sourceVectors = new int[sources.length][][];
+        int[][][] targetVectors = new int[targets.length][][];
+        range(sources.length).forEach(i -> sourceVectors[i] = vectors(sources[i], sourcePieces[i], false,
+                matrix, i * targets.length, targets, targetPieces, targetOrder));
+        range(targets.length).forEach(j -> targetVectors[j] = vectors(targets[j], targetPieces[j], true,
+                null, 0, null, null, null));
+
+        range(sources.length).forEach(i -> {
+            int rowBegin = i * targets.length;
+            int[] uncovered = null;
+            int uncoveredCount = 0;
+            for (int j = 0; j < targets.length; j++) {
+                int region = DecompositionTree.lca(sourcePieces[i], targetPieces[j]);
+                int best = matrix[rowBegin + j];
+                if (sources[i] == targets[j]) {
+                    best = 0;
+                } else if (!complete[region]) {
+                    if (uncovered == null) {
+                        uncovered = new int[targets.length];
+                    }
+                    uncovered[uncoveredCount++] = j;
+                    continue;
+                } else {
+                    for (; region >= DecompositionTree.ROOT; region = DecompositionTree.parent(region)) {
+                        if (boundaryTables.hasTable(region)) {
+                            int depth = DecompositionTree.depth(region);
+                            best = Math.min(best, minPlus(sourceVectors[i][depth], targetVectors[j][depth]));
+                        }
+                    }
+                }
+                matrix[rowBegin + j] = best >= BoundaryTables.UNREACHABLE ? DijkstraEngine.INFINITY : best;
+            }
+            if (uncovered != null) {
+                int[] missing = new int[uncoveredCount];
+                for (int k = 0; k < uncoveredCount; k++) {
+                    missing[k] = targets[uncovered[k]];
+                }
+                int[] row = new int[uncoveredCount];
+                searchGrid(sources[i], missing, row, 0);
+                for (int k = 0; k < uncoveredCount; k++) {
+                    matrix[rowBegin + uncovered[k]] = row[k];
+                }
+            }
+        });
+        return matrix;
+    }
+
+    // One search from source until every target is settled, distances written from row[rowBegin]
+    private void searchGrid(int source, int[] targets, int[] row, int rowBegin) {
+        int[] distances = new int[targets.length];
+        dijkstraEngines.get().searchWithin(source, targets, 0, 0, gridGraph.getM() - 1, gridGraph.getN() - 1, false, distances);
+        System.arraycopy(distances, 0, row, rowBegin, targets.length);
+    }
+
+    private IntStream range(int count) {
+        IntStream range = IntStream.range(0, count);
+        return parallel ? range.parallel() : range;
+    }
+
+    // Separator vectors of one endpoint for every region above its piece, indexed by region depth.
+    // For a source (reverse false) the local search also fills the row entries of targets in its piece.
+    private int[][] vectors(int vertex, int piece, boolean reverse, int[] matrix, int rowBegin,
+                            int[] targets, int[] targetPieces, int[] targetOrder) {
+        DecompositionTree decompositionTree = boundaryTables.getDecompositionTree();
+        DijkstraEngine dijkstraEngine = dijkstraEngines.get();
+        dijkstraEngine.searchWithin(vertex, null, decompositionTree.getX1(piece), decompositionTree.getY1(piece),
+                decompositionTree.getX2(piece), decompositionTree.getY2(piece), reverse, null);
+        if (matrix != null) {
+            for (int k = firstOfPiece(targetOrder, targetPieces, piece); k < targetOrder.length
+                    && targetPieces[targetOrder[k]] == piece; k++) {
+                int distance = dijkstraEngine.distance(targets[targetOrder[k]]);
+                if (distance != DijkstraEngine.INFINITY) {
+                    matrix[rowBegin + targetOrder[k]] = distance;
+                }
+            }
+        }
+        int begin = boundaryTables.getRangeBegin(piece);
+        int count = boundaryTables.getRangeEnd(piece) - begin;
+        int[] distances = new int[count];
+        for (int j = 0; j < count; j++) {
+            int distance = dijkstraEngine.distance(boundaryTables.getBoundaryCell(begin + j));
+            distances[j] = distance == DijkstraEngine.INFINITY ? BoundaryTables.UNREACHABLE : distance;
+        }
+
+        int[][] vectors = new int[DecompositionTree.depth(piece)][];
+        int[] row = new int[count];
+        for (int region = DecompositionTree.parent(piece); region >= DecompositionTree.ROOT; region = DecompositionTree.parent(region)) {
+            if (!boundaryTables.hasTable(region)) {
+                continue;
+            }
+            int separatorLength = boundaryTables.getSeparator(region).length;
+            int regionBegin = boundaryTables.getRangeBegin(region);
+            int width = boundaryTables.getRangeEnd(region) - regionBegin;
+            int offset = begin - regionBegin;
+            // A source reaches the separator through toSeparator, a target is reached through fromSeparator
+            int[] table = reverse ? boundaryTables.getFromSeparator(region) : boundaryTables.getToSeparator(region);
+            CompressedDistanceMatrix compressed = reverse ? boundaryTables.getFromSeparatorCompressed(region)
+                    : boundaryTables.getToSeparatorCompressed(region);
+            int[] vector = new int[separatorLength];
+            for (int v = 0; v < separatorLength; v++) {
+                int best = BoundaryTables.UNREACHABLE;
+                if (compressed != null) {
+                    compressed.readRow(v, offset, count, row, v - 1);
+                    for (int j = 0; j < count; j++) {
+                        best = Math.min(best, distances[j] + row[j]);
+                    }
+                } else {
+                    for (int j = 0, k = v * width + offset; j < count; j++, k++) {
+                        best = Math.min(best, distances[j] + table[k]);
+                    }
+                }
+                vector[v] = Math.min(best, BoundaryTables.UNREACHABLE);
+            }
+            vectors[DecompositionTree.depth(region)] = vector;
+        }
+        return vectors;
+    }
+
+    private static int firstOfPiece(int[] targetOrder, int[] targetPieces, int piece) {
+        int low = 0, high = targetOrder.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (targetPieces[targetOrder[middle]] < piece) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // Entries are at most UNREACHABLE, so sums cannot overflow
+    private static int minPlus(int[] first, int[] second) {
+        int best = BoundaryTables.UNREACHABLE;
+        for (int v = 0; v < first.length; v++) {
+            best = Math.min(best, first[v] + second[v]);
+        }
+        return best;
+    }
+}
@@ -0,0 +1,100 @@
+package org.project;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Concurrent query front end. The current OracleSnapshot is published through a volatile field;
+// each query borrows a ShortestPathFinder from a lock-free pool and returns it afterwards, so any
+// number of threads can query without locks and a new snapshot can be published at any time without
+// disturbing queries already running. The finders' search arrays cover the whole grid, so the pool
+// outlives snapshots: a borrowed finder is moved to the current snapshot if its grid has the same
+// dimensions and dropped otherwise, and at most maxIdleFinders are kept between queries.
+public class DistanceOracle {
+    private volatile OracleSnapshot current;
+    private final ConcurrentLinkedQueue<ShortestPathFinder> finders = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger idleFinders = new AtomicInteger();
+    private final int maxIdleFinders;
+
+    public DistanceOracle(OracleSnapshot snapshot) {
+        this(snapshot, Runtime.getRuntime().availableProcessors());
+    }
+
+    // Keep at most maxIdleFinders finders between queries; more threads can still query at once,
+    // the surplus finders are dropped when returned
+    public DistanceOracle(OracleSnapshot snapshot, int maxIdleFinders) {
+        if (maxIdleFinders < 0) {
+            throw new IllegalArgumentException("maxIdleFinders must not be negative, got " + maxIdleFinders);
+        }
+        this.maxIdleFinders = maxIdleFinders;
+        publish(snapshot);
+    }
+
+    public void publish(OracleSnapshot snapshot) {
+        current = snapshot;
+    }
+
+    public OracleSnapshot getSnapshot() {
+        return current;
+    }
+
+    // The snapshot is read once, so the ids are computed with the width of the grid that answers
+    public int findDistance(int[] source, int[] target) {
+        OracleSnapshot snapshot = current;
+        int n = snapshot.getGridGraph().getN();
+        return findDistance(snapshot, source[0] * n + source[1], target[0] * n + target[1]);
+    }
+
+    // Distance between linear vertex ids (x * n + y) on the current snapshot
+    public int findDistance(int source, int target) {
+        return findDistance(current, source, target);
+    }
+
+    private int findDistance(OracleSnapshot snapshot, int source, int target) {
+        ShortestPathFinder finder = acquire(snapshot);
+        try {
+            return finder.findDistance(source, target);
+        } finally {
+            release(finder);
+        }
+    }
+
+    // Cells of a shortest path on the current snapshot, unpacked before the finder is returned
+    public List<int[]> findPath(int[] source, int[] target) {
+        ShortestPathFinder finder = acquire(current);
+        try {
+            List<int[]> path = new ArrayList<>();
+            for (int[] cell : finder.findPath(source, target)) {
+                path.add(cell);
+            }
+            return path;
+        } finally {
+            release(finder);
+        }
+    }
+
+    // An idle finder moved to snapshot, or a new one once no idle finder fits its grid; idle finders
+    // sized for another grid are dropped on the way
+    private ShortestPathFinder acquire(OracleSnapshot snapshot) {
+        GridGraph gridGraph = snapshot.getGridGraph();
+        ShortestPathFinder finder;
+        while ((finder = finders.poll()) != null) {
+            idleFinders.decrementAndGet();
+            GridGraph finderGrid = finder.getGridGraph();
+            if (finderGrid.getM() == gridGraph.getM() && finderGrid.getN() == gridGraph.getN()) {
+                finder.setSnapshot(snapshot);
+                return finder;
+            }
+        }
+        return new ShortestPathFinder(snapshot);
+    }
+
+    private void release(ShortestPathFinder finder) {
+        if (idleFinders.incrementAndGet() <= maxIdleFinders) {
+            finders.offer(finder);
+        } else {
+            idleFinders.decrementAndGet();
+        }
+    }
+}
@@ -2,37 +2,208 @@ package org.project;
 
 import java.sql.*;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public class DistancePrecomputation implements PrecomputedDistances, AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(DistancePrecomputation.class.getName());
+
+    // How distances from separator vertices to the important vertices of a subgraph are computed
+    public enum Mode {
+        // One unrestricted search per (separator vertex, important vertex) pair, separator -> vertex only
+        PAIRWISE,
+        // Per separator vertex, one forward and one reverse search confined to the subgraph, each
+        // settling every important vertex: O(|S|) searches
+        SINGLE_SOURCE,
+        // Per important vertex, one forward and one reverse search confined to the subgraph, each
+        // settling the whole separator at once: O(|T|) searches independent of the separator length
+        MULTI_SOURCE,
+        // No per-vertex rows: once the tree is complete, dense BoundaryTables between every separator
+        // vertex and every piece boundary cell of each region above the pieces (see setPieceSize)
+        BOUNDARY_TABLES,
+        // No per-vertex rows: once the tree is complete, an ApproximateDistanceOracle answering within
+        // a factor 1 + epsilon (see setEpsilon) from portal labels of the regions above the pieces
+        APPROXIMATE
+    }
 
-public class DistancePrecomputation {
     private GridGraph gridGraph;
     private static final String URL = "jdbc:postgresql://localhost:5432/gridgraph";
     private static final String USER = "postgres";
     private static final String PASSWORD = "1234";
+    // Where the read connection is reopened from; null when the caller opened it
+    private String url;
+    private String user;
+    private String password;
     private Connection connection;
-    private Map<Integer, Set<int[]>> levelSeparators;
-    private Map<String, Integer> distanceCache;
-
+    // Whether local misses fall back to precomputed_distances. The table holds one row per key, written
+    // by every version, so only a version with neither a predecessor nor a successor may read it.
+    private volatile boolean readsDatabase = true;
+    // Allocated by the first database lookup, see getDistanceCache
+    private volatile DistanceCache distanceCache;
+    private long cacheBudget = DistanceCache.DEFAULT_BUDGET_BYTES;
+    private DistanceTable distanceTable;
+    private DecompositionTree decompositionTree;
+    private OracleFile oracleFile;
+    private ThreadLocal<DijkstraEngine> dijkstraEngines;
+    private DistanceWriter distanceWriter;
+    private boolean parallel;
+    private Mode mode = Mode.PAIRWISE;
+    private int landmarkCount;
+    private Landmarks landmarks;
+    private int pieceSize = 16;
+    private boolean compressTables;
+    private BoundaryTables boundaryTables;
+    private int[] workloadSources;
+    private int[] workloadTargets;
+    private long memoryBudget;
+    private PrecomputationPlanner.Plan plan;
+    private double epsilon = 0.1;
+    private ApproximateDistanceOracle approximateOracle;
+
+    // Connect to the default database, or keep distances in memory only when it cannot be reached
     public DistancePrecomputation(GridGraph gridGraph) {
+        this(gridGraph, (Connection) null);
+        try {
+            connect(URL, USER, PASSWORD);
+        } catch (SQLException e) {
+            LOGGER.log(Level.WARNING, "Cannot connect to " + URL + ", keeping distances in memory only", e);
+        }
+    }
+
+    // Reads and writes through two connections to url: lookups must not see the writer's batches
+    // half committed, nor have it commit or roll back under them
+    public DistancePrecomputation(GridGraph gridGraph, String url, String user, String password) throws SQLException {
+        this(gridGraph, (Connection) null);
+        connect(url, user, password);
+    }
+
+    // Use an already opened connection (e.g. an embedded database) for lookups only: distances are
+    // kept in memory and not written to it. null keeps distances in memory only.
+    public DistancePrecomputation(GridGraph gridGraph, Connection connection) {
+        this(gridGraph, connection, null);
+    }
+
+    // Look up through connection and persist through writerConnection, a different connection to the
+    // same database that the distance writer takes over and closes in close()
+    public DistancePrecomputation(GridGraph gridGraph, Connection connection, Connection writerConnection) {
+        DistanceTable.checkGridSize(gridGraph.getM(), gridGraph.getN());
         this.gridGraph = gridGraph;
-        this.levelSeparators = new HashMap<>();
-        this.distanceCache = new ConcurrentHashMap<>();
+        this.dijkstraEngines = ThreadLocal.withInitial(() -> new DijkstraEngine(gridGraph));
+        this.distanceTable = new DistanceTable();
+        if (connection != null) {
+            try {
+                attach(connection, writerConnection);
+            } catch (SQLException e) {
+                throw new IllegalStateException("Cannot set up precomputed_distances", e);
+            }
+        }
+    }
+
+    // Start from a mapped oracle file: no database and no precomputation, lookups read the file
+    public DistancePrecomputation(OracleFile oracleFile) {
+        this(oracleFile.getGridGraph(), (Connection) null);
+        this.oracleFile = oracleFile;
+        this.boundaryTables = oracleFile.getBoundaryTables();
+        setDecompositionTree(oracleFile.getDecompositionTree());
+    }
+
+    // Next version of prev over an updated grid: shares the connection, writer and decomposition tree,
+    // and reads the rows it does not recompute from the previous distance table
+    private DistancePrecomputation(DistancePrecomputation previous, GridGraph gridGraph) {
+        this.gridGraph = gridGraph;
+        this.dijkstraEngines = ThreadLocal.withInitial(() -> new DijkstraEngine(gridGraph));
+        // Rows of the previous version may since have been overwritten, so only the budget carries over
+        this.cacheBudget = previous.cacheBudget;
+        // Stored rows may predate the update; rows this version writes would mislead the previous one
+        this.readsDatabase = false;
+        this.distanceTable = previous.distanceTable.nextVersion();
+        this.decompositionTree = previous.decompositionTree;
+        this.oracleFile = previous.oracleFile;
+        this.url = previous.url;
+        this.user = previous.user;
+        this.password = previous.password;
+        this.connection = previous.connection;
+        this.distanceWriter = previous.distanceWriter;
+        this.parallel = previous.parallel;
+        this.mode = previous.mode;
+        this.landmarkCount = previous.landmarkCount;
+        this.pieceSize = previous.pieceSize;
+        this.compressTables = previous.compressTables;
+        this.plan = previous.plan;
+        this.epsilon = previous.epsilon;
+        if (previous.boundaryTables != null) {
+            this.boundaryTables = previous.boundaryTables.copy(gridGraph);
+        }
+    }
+
+    // Open the read and the write connection to url; whatever was opened is closed again if a later
+    // step fails, so a failed connect leaves this memory only
+    private void connect(String url, String user, String password) throws SQLException {
+        Connection reader = DriverManager.getConnection(url, user, password);
+        Connection writer = null;
         try {
-            connection = DriverManager.getConnection(URL, USER, PASSWORD);
-            System.out.println("Connected to PostgreSQL database.");
-            createTableIfNotExists();
+            writer = DriverManager.getConnection(url, user, password);
+            attach(reader, writer);
+        } catch (SQLException | RuntimeException e) {
+            connection = null;
+            closeAfterFailure(writer, e);
+            closeAfterFailure(reader, e);
+            throw e;
+        }
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        LOGGER.info("Connected to " + reader.getMetaData().getDatabaseProductName() + " database.");
+    }
+
+    private void attach(Connection connection, Connection writerConnection) throws SQLException {
+        this.connection = connection;
+        createTableIfNotExists();
+        if (writerConnection != null) {
+            distanceWriter = new DistanceWriter(writerConnection);
+        }
+    }
+
+    private static void closeAfterFailure(Connection connection, Exception failure) {
+        if (connection == null) {
+            return;
+        }
+        try {
+            connection.close();
         } catch (SQLException e) {
-            e.printStackTrace();
+            failure.addSuppressed(e);
         }
     }
 
-    public Connection getConnection() throws SQLException {
-        if (connection == null || connection.isClosed()) {
-            connection = DriverManager.getConnection(URL, USER, PASSWORD);
+    // Synchronized so concurrent callers never reopen the shared connection twice
+    public synchronized Connection getConnection() throws SQLException {
+        if ((connection == null || connection.isClosed()) && url != null) {
+            connection = DriverManager.getConnection(url, user, password);
         }
         return connection;
     }
 
+    // Commit the queued distances, then close the writer and the read connection. Shared with every
+    // later version made by withUpdatedGrid, so close the last one only.
+    @Override
+    public synchronized void close() {
+        try {
+            if (distanceWriter != null) {
+                distanceWriter.close();
+            }
+        } catch (SQLException e) {
+            LOGGER.log(Level.WARNING, "Closing the distance writer failed", e);
+        }
+        try {
+            if (connection != null) {
+                connection.close();
+            }
+        } catch (SQLException e) {
+            LOGGER.log(Level.WARNING, "Closing the database connection failed", e);
+        }
+    }
+
     private void createTableIfNotExists() throws SQLException {
         String createTableSQL = "CREATE TABLE IF NOT EXISTS precomputed_distances (" +
                 "separator_vertex VARCHAR(50), " +
@@ -45,32 +216,367 @@ public class DistancePrecomputation {
         }
     }
 
+    public GridGraph getGridGraph() {
+        return gridGraph;
+    }
+
+    public OracleFile getOracleFile() {
+        return oracleFile;
+    }
+
+    // False once weights were updated, in the version before the update as well as after it
+    public boolean readsDatabase() {
+        return readsDatabase;
+    }
+
+    // Separator vertices per level, listed from the decomposition tree on each call. Deep levels
+    // separate almost every cell, so they are not kept for the whole build.
     public Map<Integer, Set<int[]>> getLevelSeparators() {
+        Map<Integer, Set<int[]>> levelSeparators = new HashMap<>();
+        if (decompositionTree == null) {
+            return levelSeparators;
+        }
+        for (int region = DecompositionTree.ROOT; region < decompositionTree.getSlots(); region++) {
+            if (decompositionTree.exists(region) && decompositionTree.getSeparatorAxis(region) != DecompositionTree.NO_SEPARATOR) {
+                levelSeparators.computeIfAbsent(decompositionTree.getLevel(region), k -> new HashSet<>())
+                        .addAll(decompositionTree.getSeparator(region));
+            }
+        }
         return levelSeparators;
     }
 
-    public void precomputeDistances(int level, List<int[]> separator, Set<int[]> subgraph) {
-        levelSeparators.computeIfAbsent(level, k -> new HashSet<>()).addAll(separator);
+    // Replace the cache of database lookups with an empty one holding at most budgetBytes
+    public synchronized void setCacheBudget(long budgetBytes) {
+        this.cacheBudget = budgetBytes;
+        this.distanceCache = null;
+    }
+
+    // Created on first use, so versions that never reach the database do not allocate the budget
+    public DistanceCache getDistanceCache() {
+        DistanceCache cache = distanceCache;
+        if (cache == null) {
+            synchronized (this) {
+                cache = distanceCache;
+                if (cache == null) {
+                    cache = new DistanceCache(cacheBudget);
+                    distanceCache = cache;
+                }
+            }
+        }
+        return cache;
+    }
+
+    public DistanceTable getDistanceTable() {
+        return distanceTable;
+    }
+
+    public DecompositionTree getDecompositionTree() {
+        return decompositionTree;
+    }
+
+    public void setDecompositionTree(DecompositionTree decompositionTree) {
+        this.decompositionTree = decompositionTree;
+    }
+
+    // When enabled, the searches from the separator vertices of one subgraph run concurrently. Called
+    // from a ForkJoinPool worker they share that pool, otherwise they use the common pool.
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    public void setMode(Mode mode) {
+        this.mode = mode;
+    }
+
+    // Side of the largest square piece for Mode.BOUNDARY_TABLES: larger pieces mean smaller tables but
+    // longer local searches per query
+    public void setPieceSize(int pieceSize) {
+        this.pieceSize = pieceSize;
+    }
 
-        int threshold = calculatePrecomputationThreshold(level, subgraph);
+    // Keep boundary tables as CompressedDistanceMatrix (several times smaller, decoded per query row)
+    public void setCompressTables(boolean compressTables) {
+        this.compressTables = compressTables;
+    }
+
+    // Stretch bound of Mode.APPROXIMATE: answers lie within [d, (1 + epsilon) d]
+    public void setEpsilon(double epsilon) {
+        this.epsilon = epsilon;
+    }
 
-        if (level <= threshold && isPrecomputationBeneficial(level, subgraph)) {
-            Set<int[]> importantVertices = getImportantVertices(subgraph);
-            for (int[] s : separator) {
-                for (int[] v : importantVertices) {
-                    int distance = dijkstra(s, v);
-                    storeDistance(s, v, distance, level);
+    // Oracle of Mode.APPROXIMATE, null in the other modes or before precomputeApproximateOracle()
+    public ApproximateDistanceOracle getApproximateOracle() {
+        return approximateOracle;
+    }
+
+    // Label the finished decomposition tree for approximate queries; does nothing unless the mode is
+    // APPROXIMATE
+    public void precomputeApproximateOracle() {
+        if (mode != Mode.APPROXIMATE || decompositionTree == null) {
+            return;
+        }
+        approximateOracle = new ApproximateDistanceOracle(gridGraph, decompositionTree, epsilon, pieceSize * pieceSize, parallel);
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("Built approximate oracle: " + String.format("%.1f", approximateOracle.getMeanCoverSize()) + " portals per label, "
+                    + approximateOracle.getBytes() + " bytes of labels");
+        }
+    }
+
+    // Compute only the boundary tables a PrecomputationPlanner picks for this sample of queries
+    // (sources[i] -> targets[i], linear ids) within budgetBytes, instead of every table
+    public void setWorkload(int[] sources, int[] targets, long budgetBytes) {
+        this.workloadSources = sources;
+        this.workloadTargets = targets;
+        this.memoryBudget = budgetBytes;
+    }
+
+    // Plan the boundary tables were computed by, null without a workload
+    public PrecomputationPlanner.Plan getPlan() {
+        return plan;
+    }
+
+    // Tables of Mode.BOUNDARY_TABLES, null in the other modes or before precomputeBoundaryTables()
+    @Override
+    public BoundaryTables getBoundaryTables() {
+        return boundaryTables;
+    }
+
+    // Lay out the pieces of the finished decomposition tree and fill their tables (all of them, or the
+    // planned ones when a workload is set); does nothing unless the mode is BOUNDARY_TABLES
+    public void precomputeBoundaryTables() {
+        if (mode != Mode.BOUNDARY_TABLES || decompositionTree == null) {
+            return;
+        }
+        boundaryTables = new BoundaryTables(gridGraph, decompositionTree, pieceSize);
+        boundaryTables.setCompressed(compressTables);
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("Computing boundary tables: " + boundaryTables.getBoundaryCount() + " boundary cells, "
+                    + boundaryTables.getTableBytes() + " bytes");
+        }
+        if (workloadSources == null) {
+            boundaryTables.computeAll(dijkstraEngines, parallel);
+            return;
+        }
+        plan = new PrecomputationPlanner(boundaryTables).plan(workloadSources, workloadTargets, memoryBudget);
+        for (int region = DecompositionTree.ROOT; region < decompositionTree.getSlots(); region++) {
+            if (plan.isSelected(region)) {
+                boundaryTables.computeRegion(region, dijkstraEngines, parallel);
+            }
+        }
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("Computed " + plan.getRegionCount() + " planned boundary tables, " + plan.getBytes() + " bytes");
+        }
+    }
+
+    // Number of ALT landmarks (at most 7) to compute with the root separator's precomputation, 0 for none
+    public void setLandmarkCount(int landmarkCount) {
+        this.landmarkCount = landmarkCount;
+    }
+
+    // Landmarks for PointToPointSearch.Strategy.ALT, null until the root separator has been processed
+    public Landmarks getLandmarks() {
+        return landmarks;
+    }
+
+    // Subgraph given as the rectangle {x1, y1, x2, y2} it fills
+    public void precomputeDistances(int level, List<int[]> separator, int[] bounds) {
+        if (level == 0 && landmarkCount > 0) {
+            precomputeLandmarks(separator);
+        }
+        precompute(level, separator, bounds, (bounds[2] - bounds[0] + 1) * (bounds[3] - bounds[1] + 1), null);
+    }
+
+    // Same for a subgraph given cell by cell; only its bounding rectangle is used
+    public void precomputeDistances(int level, List<int[]> separator, Set<int[]> subgraph) {
+        precomputeDistances(level, separator, findSubgraphBounds(subgraph));
+    }
+
+    // Copy-on-write update after changedCells ({x, y}) got new weights in updatedGrid. Region searches
+    // never leave their rectangle, so only the regions containing a changed cell (each cell's chain
+    // of ancestors) need their tables recomputed. PAIRWISE rows are unrestricted distances, so every
+    // region is visited, but only the rows a changed cell may lie on are recomputed (see
+    // isUnchanged). Returns the new version; this one keeps answering from the old weights.
+    public DistancePrecomputation withUpdatedGrid(GridGraph updatedGrid, int[][] changedCells) {
+        readsDatabase = false;
+        DistancePrecomputation updated = new DistancePrecomputation(this, updatedGrid);
+        if (decompositionTree == null) {
+            return updated;
+        }
+        boolean[] affected = new boolean[decompositionTree.getSlots()];
+        UnchangedRows unchanged = null;
+        if (mode == Mode.PAIRWISE) {
+            Arrays.fill(affected, true);
+            long minWeight = Math.min(gridGraph.getMinEdgeWeight(), updatedGrid.getMinEdgeWeight());
+            unchanged = (s, v, level) -> isUnchanged(s, v, level, changedCells, minWeight);
+        } else {
+            for (int[] cell : changedCells) {
+                for (int region = decompositionTree.locate(cell[0], cell[1]); region >= DecompositionTree.ROOT; region = DecompositionTree.parent(region)) {
+                    affected[region] = true;
                 }
             }
-            System.out.println("Precomputed distances for level " + level + " with " + importantVertices.size() + " important vertices");
+        }
+        int recomputed = 0;
+        for (int region = DecompositionTree.ROOT; region < affected.length; region++) {
+            if (affected[region] && decompositionTree.exists(region)
+                    && decompositionTree.getSeparatorAxis(region) != DecompositionTree.NO_SEPARATOR) {
+                int[] bounds = decompositionTree.getBounds(region);
+                int area = (bounds[2] - bounds[0] + 1) * (bounds[3] - bounds[1] + 1);
+                updated.precompute(decompositionTree.getLevel(region), decompositionTree.getSeparator(region), bounds, area, unchanged);
+                if (updated.boundaryTables != null && updated.boundaryTables.hasTable(region)) {
+                    updated.boundaryTables.computeRegion(region, updated.dijkstraEngines, parallel);
+                }
+                recomputed++;
+            }
+        }
+        if (approximateOracle != null) {
+            updated.approximateOracle = approximateOracle.withUpdatedGrid(updatedGrid, affected, parallel);
+        }
+        if (landmarkCount > 0 && decompositionTree.exists(DecompositionTree.ROOT)) {
+            updated.precomputeLandmarks(decompositionTree.getSeparator(DecompositionTree.ROOT));
+        }
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("Recomputed " + recomputed + " region tables for " + changedCells.length + " changed cells");
+        }
+        return updated;
+    }
+
+    // Rows of the previous version that still hold after an update
+    private interface UnchangedRows {
+        boolean test(int[] from, int[] to, int level);
+    }
+
+    // True if the row s -> v of this version keeps its distance D after changedCells got new weights.
+    // A path through a changed cell c has at least |s c| + |c v| edges, each weighing at least
+    // minWeight (the smallest weight before or after the update). If that bound exceeds D for every c,
+    // the old shortest path avoids the changed cells and is still there, and no new path through
+    // them is shorter.
+    private boolean isUnchanged(int[] s, int[] v, int level, int[][] changedCells, long minWeight) {
+        int distance = distanceTable.get(DistanceTable.key(id(s), id(v), level));
+        if (distance == DistanceTable.MISSING || distance >= DijkstraEngine.INFINITY) {
+            return false;
+        }
+        for (int[] cell : changedCells) {
+            long edges = Math.abs(s[0] - cell[0]) + Math.abs(s[1] - cell[1]) + Math.abs(cell[0] - v[0]) + Math.abs(cell[1] - v[1]);
+            if (edges * minWeight <= distance) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // unchanged (null to compute every row) skips PAIRWISE rows that an update left intact
+    private void precompute(int level, List<int[]> separatorCells, int[] bounds, int subgraphSize, UnchangedRows unchanged) {
+        if (mode == Mode.BOUNDARY_TABLES || mode == Mode.APPROXIMATE) {
+            return;
+        }
+        // Impassable cells lie on no path, and ShortestPathFinder skips them on separators
+        List<int[]> separator = new ArrayList<>(separatorCells.size());
+        for (int[] cell : separatorCells) {
+            if (!gridGraph.isBlocked(id(cell))) {
+                separator.add(cell);
+            }
+        }
+        int threshold = calculatePrecomputationThreshold(level, subgraphSize);
+
+        if (level <= threshold && isPrecomputationBeneficial(separator, subgraphSize)) {
+            List<int[]> importantVertices = new ArrayList<>(getImportantVertices(subgraphSize, bounds));
+            switch (mode) {
+                case SINGLE_SOURCE:
+                    forEach(separator, s -> precomputeFromSeparatorVertex(s, importantVertices, bounds, level));
+                    break;
+                case MULTI_SOURCE:
+                    forEach(importantVertices, v -> precomputeToImportantVertex(v, separator, bounds, level));
+                    break;
+                default:
+                    forEach(separator, s -> precomputePairs(s, importantVertices, level, unchanged));
+            }
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.fine("Precomputed distances for level " + level + " with " + importantVertices.size() + " important vertices");
+            }
+        } else if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("Skipped precomputation for level " + level + " (threshold: " + threshold + ")");
+        }
+    }
+
+    private void forEach(List<int[]> vertices, Consumer<int[]> work) {
+        if (parallel) {
+            vertices.parallelStream().forEach(work);
         } else {
-            System.out.println("Skipped precomputation for level " + level + " (threshold: " + threshold + ")");
+            vertices.forEach(work);
+        }
+    }
+
+    private void precomputePairs(int[] s, List<int[]> importantVertices, int level, UnchangedRows unchanged) {
+        for (int[] v : importantVertices) {
+            if (unchanged != null && unchanged.test(s, v, level)) {
+                continue;
+            }
+            int distance = dijkstra(s, v);
+            storeDistance(s, v, distance, level);
         }
     }
 
-    private int calculatePrecomputationThreshold(int level, Set<int[]> subgraph) {
-        int graphSize = gridGraph.getM() * gridGraph.getN();
-        int subgraphSize = subgraph.size();
+    // Two searches from s inside the subgraph give s -> v and v -> s for every important vertex v
+    private void precomputeFromSeparatorVertex(int[] s, List<int[]> importantVertices, int[] bounds, int level) {
+        DijkstraEngine dijkstraEngine = dijkstraEngines.get();
+        int[] targets = toIds(dijkstraEngine, importantVertices);
+        int[] distances = new int[targets.length];
+        dijkstraEngine.searchWithin(dijkstraEngine.id(s), targets, bounds[0], bounds[1], bounds[2], bounds[3], false, distances);
+        for (int i = 0; i < targets.length; i++) {
+            storeDistance(s, importantVertices.get(i), distances[i], level);
+        }
+        dijkstraEngine.searchWithin(dijkstraEngine.id(s), targets, bounds[0], bounds[1], bounds[2], bounds[3], true, distances);
+        for (int i = 0; i < targets.length; i++) {
+            storeDistance(importantVertices.get(i), s, distances[i], level);
+        }
+    }
+
+    // A reverse search from v settles s -> v for the whole separator, a forward one settles v -> s
+    private void precomputeToImportantVertex(int[] v, List<int[]> separator, int[] bounds, int level) {
+        DijkstraEngine dijkstraEngine = dijkstraEngines.get();
+        int[] targets = toIds(dijkstraEngine, separator);
+        int[] distances = new int[targets.length];
+        dijkstraEngine.searchWithin(dijkstraEngine.id(v), targets, bounds[0], bounds[1], bounds[2], bounds[3], true, distances);
+        for (int i = 0; i < targets.length; i++) {
+            storeDistance(separator.get(i), v, distances[i], level);
+        }
+        dijkstraEngine.searchWithin(dijkstraEngine.id(v), targets, bounds[0], bounds[1], bounds[2], bounds[3], false, distances);
+        for (int i = 0; i < targets.length; i++) {
+            storeDistance(v, separator.get(i), distances[i], level);
+        }
+    }
+
+    // Grid corners first, then the ends and middle of the root separator: spread-out landmarks give
+    // the tightest bounds
+    private void precomputeLandmarks(List<int[]> separator) {
+        int m = gridGraph.getM(), n = gridGraph.getN();
+        int[][] candidates = {{0, 0}, {m - 1, n - 1}, {0, n - 1}, {m - 1, 0},
+                separator.get(0), separator.get(separator.size() - 1), separator.get(separator.size() / 2)};
+        Set<Integer> vertices = new LinkedHashSet<>();
+        for (int i = 0; i < candidates.length && vertices.size() < landmarkCount; i++) {
+            vertices.add(id(candidates[i]));
+        }
+        int[] landmarkIds = vertices.stream().mapToInt(Integer::intValue).toArray();
+        landmarks = Landmarks.compute(gridGraph, landmarkIds, dijkstraEngines.get());
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("Computed " + landmarkIds.length + " ALT landmarks");
+        }
+    }
+
+    private static int[] toIds(DijkstraEngine dijkstraEngine, List<int[]> vertices) {
+        int[] ids = new int[vertices.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = dijkstraEngine.id(vertices.get(i));
+        }
+        return ids;
+    }
+
+    // Fixed heuristics of the row modes; Mode.BOUNDARY_TABLES with a workload is planned from the
+    // sampled queries and the memory budget instead (see setWorkload). The planner does not cover the
+    // row modes: their rows are read for a few important vertices per region only, so a region's
+    // benefit cannot be measured from sampled queries the way a table's can.
+    private int calculatePrecomputationThreshold(int level, int subgraphSize) {
+        long graphSize = (long) gridGraph.getM() * gridGraph.getN();
 
         // Base threshold based on graph size
         int baseThreshold = (int) Math.log(graphSize);
@@ -82,34 +588,34 @@ public class DistancePrecomputation {
         return Math.max(0, Math.min(adjustedThreshold, 5));
     }
 
-    private boolean isPrecomputationBeneficial(int level, Set<int[]> subgraph) {
-        int subgraphSize = subgraph.size();
-        int separatorSize = levelSeparators.get(level).size();
+    private boolean isPrecomputationBeneficial(List<int[]> separator, int subgraphSize) {
+        int separatorSize = separator.size();
 
-        // Estimate the cost of precomputation
-        int precomputationCost = subgraphSize * separatorSize;
+        // Estimate the cost of precomputation; in long, as subgraphSize^2 overflows an int above 46340 cells
+        long precomputationCost = (long) subgraphSize * separatorSize;
 
         // Estimate the benefit of precomputation (e.g., number of potential queries saved)
-        int potentialQueries = subgraphSize * subgraphSize;
+        long potentialQueries = (long) subgraphSize * subgraphSize;
 
         // Precompute if the benefit outweighs the cost
         return potentialQueries > precomputationCost * 2; // Adjust this factor as needed
     }
 
-    private Set<int[]> getImportantVertices(Set<int[]> subgraph) {
+    private Set<int[]> getImportantVertices(int subgraphSize, int[] bounds) {
         Set<int[]> importantVertices = new HashSet<>();
-        int[] bounds = findSubgraphBounds(subgraph);
         importantVertices.add(new int[]{bounds[0], bounds[1]}); // Bottom-left corner
         importantVertices.add(new int[]{bounds[2], bounds[1]}); // Bottom-right corner
         importantVertices.add(new int[]{bounds[0], bounds[3]}); // Top-left corner
         importantVertices.add(new int[]{bounds[2], bounds[3]}); // Top-right corner
 
-        // Add some random vertices from the subgraph
-        List<int[]> subgraphList = new ArrayList<>(subgraph);
-        Random random = new Random();
-        int additionalVertices = Math.min(5, subgraph.size() / 10); // Add up to 5 additional vertices or 10% of subgraph size
+        // Add some random vertices from the subgraph. Subgraphs are full rectangles, so vertices are drawn
+        // by coordinate with a seed derived from the bounds; every build (sequential or parallel) picks the same ones
+        Random random = new Random(Arrays.hashCode(bounds));
+        int width = bounds[2] - bounds[0] + 1;
+        int height = bounds[3] - bounds[1] + 1;
+        int additionalVertices = Math.min(5, subgraphSize / 10); // Add up to 5 additional vertices or 10% of subgraph size
         for (int i = 0; i < additionalVertices; i++) {
-            importantVertices.add(subgraphList.get(random.nextInt(subgraphList.size())));
+            importantVertices.add(new int[]{bounds[0] + random.nextInt(width), bounds[1] + random.nextInt(height)});
         }
 
         return importantVertices;
@@ -128,122 +634,139 @@ public class DistancePrecomputation {
     }
 
     public int dijkstra(int[] source, int[] target) {
-        PriorityQueue<Node> pq = new PriorityQueue<>(Comparator.comparingInt(n -> n.distance));
-        Map<String, Integer> distances = new HashMap<>();
-
-        pq.offer(new Node(source, 0));
-        distances.put(Arrays.toString(source), 0);
-
-        while (!pq.isEmpty()) {
-            Node current = pq.poll();
-            int[] currentPoint = current.point;
-
-            if (Arrays.equals(currentPoint, target)) {
-                return current.distance;
-            }
+        DijkstraEngine dijkstraEngine = dijkstraEngines.get();
+        return dijkstraEngine.search(dijkstraEngine.id(source), dijkstraEngine.id(target));
+    }
 
-            for (int[] neighbor : getNeighbors(currentPoint)) {
-                int edgeWeight = gridGraph.getEdgeWeight(currentPoint[0], currentPoint[1], neighbor[0], neighbor[1]);
-                int newDistance = current.distance + edgeWeight;
-                String neighborKey = Arrays.toString(neighbor);
+    // Distances from every source to every target (linear ids), row-major; see DistanceMatrix.
+    // Shares the boundary tables when there are any, else runs one search per source.
+    public int[] distanceMatrix(int[] sources, int[] targets) {
+        DistanceMatrix distanceMatrix = new DistanceMatrix(gridGraph, boundaryTables);
+        distanceMatrix.setParallel(parallel);
+        return distanceMatrix.compute(sources, targets);
+    }
 
-                if (newDistance < distances.getOrDefault(neighborKey, Integer.MAX_VALUE)) {
-                    distances.put(neighborKey, newDistance);
-                    pq.offer(new Node(neighbor, newDistance));
-                }
+    // Rows are directed: distance is measured from the first vertex to the second
+    private void storeDistance(int[] separator, int[] vertex, int distance, int level) {
+        distanceTable.put(DistanceTable.key(id(separator), id(vertex), level), distance);
+
+        // Rows are persisted asynchronously in batches; see flushDistances()
+        if (distanceWriter != null) {
+            try {
+                distanceWriter.write(Arrays.toString(separator), Arrays.toString(vertex), distance, level);
+            } catch (SQLException e) {
+                // Stop the precomputation rather than leave the database behind the memory table
+                throw new IllegalStateException("Distance writer failed", e);
             }
         }
+    }
 
-        return Integer.MAX_VALUE; // No path found
+    private int id(int[] vertex) {
+        return vertex[0] * gridGraph.getN() + vertex[1];
     }
 
-    private List<int[]> getNeighbors(int[] point) {
-        return gridGraph.getNeighbors(point[0], point[1]);
+    // Distance held in memory or in the mapped oracle file, DistanceTable.MISSING otherwise. Never
+    // reaches the database, so batch queries can call it for every pair.
+    public int getLocalDistance(long key) {
+        int distance = distanceTable.get(key);
+        if (distance == DistanceTable.MISSING && oracleFile != null) {
+            distance = oracleFile.getDistance(key);
+        }
+        return distance;
     }
 
-    private void storeDistance(int[] separator, int[] vertex, int distance, int level) {
-        String separatorKey = Arrays.toString(separator);
-        String vertexKey = Arrays.toString(vertex);
-        String cacheKey = separatorKey + "-" + vertexKey + "-" + level;
-        distanceCache.put(cacheKey, distance);
-
-        String insertSQL = "INSERT INTO precomputed_distances (separator_vertex, subgraph_vertex, distance, level) " +
-                "VALUES (?, ?, ?, ?) ON CONFLICT (separator_vertex, subgraph_vertex, level) DO UPDATE SET distance = ?";
-        try (PreparedStatement preparedStatement = connection.prepareStatement(insertSQL)) {
-            preparedStatement.setString(1, separatorKey);
-            preparedStatement.setString(2, vertexKey);
-            preparedStatement.setInt(3, distance);
-            preparedStatement.setInt(4, level);
-            preparedStatement.setInt(5, distance);
-            preparedStatement.executeUpdate();
+    // Block until every stored distance has been committed to the database
+    public void flushDistances() {
+        if (distanceWriter == null) {
+            return;
+        }
+        try {
+            distanceWriter.flush();
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.fine("Distance writer: " + distanceWriter.reportThroughput());
+            }
         } catch (SQLException e) {
-            e.printStackTrace();
+            LOGGER.log(Level.SEVERE, "Precomputed distances were not all committed", e);
         }
     }
 
+    // Precomputed distance from vertex1 to vertex2. Edge weights are per direction, so the reverse row
+    // is a different distance and is never used in its place.
     public Integer getPrecomputedDistance(int[] vertex1, int[] vertex2, int level) {
-        String key1 = Arrays.toString(vertex1) + "-" + Arrays.toString(vertex2) + "-" + level;
-        String key2 = Arrays.toString(vertex2) + "-" + Arrays.toString(vertex1) + "-" + level;
+        int distance = getPrecomputedDistance(id(vertex1), id(vertex2), level);
+        return distance == DistanceTable.MISSING ? null : distance;
+    }
 
-        Integer distance = distanceCache.get(key1);
-        if (distance != null) {
-            return distance;
+    // Same lookup on linear vertex ids; DistanceTable.MISSING if no distance is stored
+    @Override
+    public int getPrecomputedDistance(int vertex1, int vertex2, int level) {
+        long key = DistanceTable.key(vertex1, vertex2, level);
+        int localDistance = getLocalDistance(key);
+        if (localDistance != DistanceTable.MISSING) {
+            return localDistance;
         }
 
-        distance = distanceCache.get(key2);
-        if (distance != null) {
-            return distance;
+        // If not in cache, try to fetch from database
+        if (connection == null || !readsDatabase) {
+            return DistanceTable.MISSING;
+        }
+        DistanceCache distanceCache = getDistanceCache();
+        int cached = distanceCache.get(key);
+        if (cached == DistanceCache.ABSENT) {
+            return DistanceTable.MISSING;
+        } else if (cached != DistanceCache.NOT_CACHED) {
+            return cached;
         }
 
-        // If not in cache, try to fetch from database
         String query = "SELECT distance FROM precomputed_distances " +
-                "WHERE (separator_vertex = ? AND subgraph_vertex = ?) OR (separator_vertex = ? AND subgraph_vertex = ?) " +
-                "AND level = ?";
+                "WHERE separator_vertex = ? AND subgraph_vertex = ? AND level = ?";
 
         try (PreparedStatement pstmt = getConnection().prepareStatement(query)) {
-            pstmt.setString(1, Arrays.toString(vertex1));
-            pstmt.setString(2, Arrays.toString(vertex2));
-            pstmt.setString(3, Arrays.toString(vertex2));
-            pstmt.setString(4, Arrays.toString(vertex1));
-            pstmt.setInt(5, level);
+            int n = gridGraph.getN();
+            pstmt.setString(1, Arrays.toString(new int[]{vertex1 / n, vertex1 % n}));
+            pstmt.setString(2, Arrays.toString(new int[]{vertex2 / n, vertex2 % n}));
+            pstmt.setInt(3, level);
 
+            Metrics.global().addDatabaseRoundTrip();
             try (ResultSet rs = pstmt.executeQuery()) {
                 if (rs.next()) {
-                    distance = rs.getInt("distance");
+                    int distance = rs.getInt("distance");
                     // Store in cache for future use
-                    distanceCache.put(key1, distance);
+                    distanceCache.put(key, distance);
                     return distance;
                 }
+                // Remember the miss so the same lookup does not reach the database again
+                distanceCache.putAbsent(key);
             }
         } catch (SQLException e) {
-            e.printStackTrace();
+            LOGGER.log(Level.WARNING, "Looking up a precomputed distance failed", e);
         }
 
-        return null; // Return null if no precomputed distance is found
+        return DistanceTable.MISSING; // No precomputed distance is found
     }
 
     public void checkStoredDistances() {
+        if (connection == null) {
+            return;
+        }
         try (Statement statement = connection.createStatement()) {
             ResultSet rs = statement.executeQuery("SELECT * FROM precomputed_distances");
+            Metrics.global().addDatabaseRoundTrip();
+            boolean logRows = LOGGER.isLoggable(Level.FINE);
+            int rows = 0;
             while (rs.next()) {
-                String separator = rs.getString("separator_vertex");
-                String subgraph = rs.getString("subgraph_vertex");
-                int distance = rs.getInt("distance");
-                int level = rs.getInt("level");
-                System.out.println("Separator: " + separator + ", Subgraph: " + subgraph + ", Distance: " + distance + ", Level: " + level);
+                rows++;
+                if (logRows) {
+                    String separator = rs.getString("separator_vertex");
+                    String subgraph = rs.getString("subgraph_vertex");
+                    int distance = rs.getInt("distance");
+                    int level = rs.getInt("level");
+                    LOGGER.fine("Separator: " + separator + ", Subgraph: " + subgraph + ", Distance: " + distance + ", Level: " + level);
+                }
             }
+            LOGGER.info(rows + " precomputed distances stored");
         } catch (SQLException e) {
-            e.printStackTrace();
-        }
-    }
-
-    private static class Node {
-        int[] point;
-        int distance;
-
-        Node(int[] point, int distance) {
-            this.point = point;
-            this.distance = distance;
+            LOGGER.log(Level.WARNING, "Reading the stored distances failed", e);
         }
     }
 }
\ No newline at end of file
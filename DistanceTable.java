@@ -0,0 +1,172 @@
+package org.project;
+
+import java.util.Arrays;
+
+// Precomputed distances keyed by a packed (from, to, level) long, stored in an open-addressing
+// table of primitive arrays. Writers are serialized; reads are only safe once the build that fills
+// the table has finished. A table made by nextVersion() holds only the rows put into it and reads
+// the others from a shared base table.
+public class DistanceTable {
+    // Vertex ids take 29 bits each and the level 6 bits, so one key fits in a long
+    public static final int VERTEX_BITS = 29;
+    public static final int LEVEL_BITS = 6;
+    public static final int MAX_VERTICES = 1 << VERTEX_BITS;
+    public static final int MISSING = Integer.MIN_VALUE;
+
+    private long[] keys;
+    private int[] values;
+    // Rows in keys and values
+    private int ownSize;
+    // Rows visible through this table, counting those of base that are not overridden
+    private int size;
+    // Rows not put into this table; null for a table holding all of its rows
+    private DistanceTable base;
+
+    public DistanceTable() {
+        this(1024);
+    }
+
+    public DistanceTable(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, expectedSize * 2 - 1)) << 1;
+        keys = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(values, MISSING);
+    }
+
+    // Ids outside 0..MAX_VERTICES - 1 or levels outside 0..63 would collide with other keys
+    public static long key(int from, int to, int level) {
+        if (((from | to) >>> VERTEX_BITS | level >>> LEVEL_BITS) != 0) {
+            throw new IllegalArgumentException("Key out of range: from " + from + ", to " + to + ", level " + level);
+        }
+        return ((long) from << (VERTEX_BITS + LEVEL_BITS)) | ((long) to << LEVEL_BITS) | level;
+    }
+
+    public static int from(long key) {
+        return (int) (key >>> (VERTEX_BITS + LEVEL_BITS));
+    }
+
+    // Grids with more cells have ids that do not fit in a key
+    public static void checkGridSize(int m, int n) {
+        if ((long) m * n > MAX_VERTICES) {
+            throw new IllegalArgumentException("Grid of " + m + " x " + n + " cells has more than the "
+                    + MAX_VERTICES + " vertex ids a distance key holds");
+        }
+    }
+
+    public static int to(long key) {
+        return (int) (key >>> LEVEL_BITS) & (MAX_VERTICES - 1);
+    }
+
+    public static int level(long key) {
+        return (int) key & ((1 << LEVEL_BITS) - 1);
+    }
+
+    public synchronized void put(long key, int distance) {
+        if (2 * (ownSize + 1) > keys.length) {
+            resize(keys.length << 1);
+        }
+        int slot = slot(keys, values, key);
+        if (values[slot] == MISSING) {
+            ownSize++;
+            if (base == null || base.get(key) == MISSING) {
+                size++;
+            }
+        }
+        keys[slot] = key;
+        values[slot] = distance;
+    }
+
+    // Stored distance, or MISSING
+    public int get(long key) {
+        int distance = values[slot(keys, values, key)];
+        return distance == MISSING && base != null ? base.get(key) : distance;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Independent copy, e.g. to update distances while readers keep using this table
+    public synchronized DistanceTable copy() {
+        DistanceTable copy = new DistanceTable(0);
+        if (base != null) {
+            for (long key : sortedKeys()) {
+                copy.put(key, get(key));
+            }
+            return copy;
+        }
+        copy.keys = keys.clone();
+        copy.values = values.clone();
+        copy.ownSize = ownSize;
+        copy.size = size;
+        return copy;
+    }
+
+    // Table for the next version of the distances while readers keep using this one, which must not
+    // be written afterwards. Costs the rows put since the last full copy rather than the whole table:
+    // it shares this table's base (or this table) and copies only the rows on top of it, and becomes
+    // a full copy once those reach a quarter of the base.
+    public synchronized DistanceTable nextVersion() {
+        if (base == null) {
+            DistanceTable next = new DistanceTable(0);
+            next.base = this;
+            next.size = size;
+            return next;
+        }
+        if (ownSize > base.size / 4) {
+            return copy();
+        }
+        DistanceTable next = new DistanceTable(0);
+        next.keys = keys.clone();
+        next.values = values.clone();
+        next.ownSize = ownSize;
+        next.size = size;
+        next.base = base;
+        return next;
+    }
+
+    // All stored keys in ascending order
+    public synchronized long[] sortedKeys() {
+        long[] sorted = new long[size];
+        int count = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (values[i] != MISSING) {
+                sorted[count++] = keys[i];
+            }
+        }
+        if (base != null) {
+            for (long key : base.sortedKeys()) {
+                if (values[slot(keys, values, key)] == MISSING) {
+                    sorted[count++] = key;
+                }
+            }
+        }
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(values, MISSING);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != MISSING) {
+                int slot = slot(keys, values, oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    // Slot holding key, or the empty slot where it would go (linear probing)
+    private static int slot(long[] keys, int[] values, long key) {
+        int mask = keys.length - 1;
+        int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+        while (values[slot] != MISSING && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+}
@@ -0,0 +1,241 @@
+package org.project;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Write-behind stage for precomputed distances. Producers enqueue rows into a bounded queue
+// (blocking when it is full, which throttles the Dijkstra runs), and a single background thread
+// sends them as JDBC batches and commits every commitSize rows. The writer owns its connection:
+// it turns off auto-commit on it and closes it in close(), so readers must use another one.
+public class DistanceWriter implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(DistanceWriter.class.getName());
+
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+    public static final int DEFAULT_COMMIT_SIZE = 10000;
+    public static final int DEFAULT_QUEUE_CAPACITY = 50000;
+
+    // PostgreSQL before 15 has no MERGE
+    private static final String POSTGRESQL_UPSERT_SQL = "INSERT INTO precomputed_distances (separator_vertex, subgraph_vertex, distance, level) " +
+            "VALUES (?, ?, ?, ?) ON CONFLICT (separator_vertex, subgraph_vertex, level) DO UPDATE SET distance = EXCLUDED.distance";
+    // Standard SQL, for H2, HSQLDB and the others
+    private static final String MERGE_SQL = "MERGE INTO precomputed_distances t USING (VALUES (CAST(? AS VARCHAR(50)), " +
+            "CAST(? AS VARCHAR(50)), CAST(? AS INT), CAST(? AS INT))) AS s (separator_vertex, subgraph_vertex, distance, level) " +
+            "ON t.separator_vertex = s.separator_vertex AND t.subgraph_vertex = s.subgraph_vertex AND t.level = s.level " +
+            "WHEN MATCHED THEN UPDATE SET distance = s.distance " +
+            "WHEN NOT MATCHED THEN INSERT (separator_vertex, subgraph_vertex, distance, level) " +
+            "VALUES (s.separator_vertex, s.subgraph_vertex, s.distance, s.level)";
+
+    private final Connection connection;
+    private final String upsertSql;
+    private final int batchSize;
+    private final int commitSize;
+    private final BlockingQueue<Row> queue;
+    private final Thread worker;
+    private final Object progress = new Object();
+    private volatile boolean running = true;
+    private volatile SQLException failure;
+
+    // Guarded by progress
+    private long enqueuedRows;
+    private long writtenRows;
+    private long enqueueNanos;
+    private long writeNanos;
+
+    public DistanceWriter(Connection connection) throws SQLException {
+        this(connection, DEFAULT_BATCH_SIZE, DEFAULT_COMMIT_SIZE, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    public DistanceWriter(Connection connection, int batchSize, int commitSize, int queueCapacity) throws SQLException {
+        this.connection = connection;
+        this.batchSize = batchSize;
+        this.commitSize = Math.max(batchSize, commitSize);
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.upsertSql = upsertSql(connection.getMetaData());
+        connection.setAutoCommit(false);
+        this.worker = new Thread(this::drain, "distance-writer");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    static String upsertSql(DatabaseMetaData metaData) throws SQLException {
+        return "PostgreSQL".equals(metaData.getDatabaseProductName()) ? POSTGRESQL_UPSERT_SQL : MERGE_SQL;
+    }
+
+    // Queue one row; blocks while the writer is behind by a full queue, and throws the writer's
+    // failure instead of waiting once the background thread has stopped
+    public void write(String separatorKey, String vertexKey, int distance, int level) throws SQLException {
+        long start = System.nanoTime();
+        Row row = new Row(separatorKey, vertexKey, distance, level);
+        checkRunning();
+        try {
+            while (!queue.offer(row, 100, TimeUnit.MILLISECONDS)) {
+                checkRunning();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while queueing a distance row", e);
+        }
+        synchronized (progress) {
+            enqueuedRows++;
+            enqueueNanos += System.nanoTime() - start;
+        }
+    }
+
+    // Wait until every row queued so far has been committed; throws rather than return with rows
+    // still uncommitted
+    public void flush() throws SQLException {
+        synchronized (progress) {
+            while (writtenRows < enqueuedRows && failure == null && worker.isAlive()) {
+                try {
+                    progress.wait(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SQLException("Interrupted with " + (enqueuedRows - writtenRows) + " distance rows not committed", e);
+                }
+            }
+        }
+        checkRunning();
+    }
+
+    private void checkRunning() throws SQLException {
+        if (failure != null) {
+            throw failure;
+        }
+        if (!running || !worker.isAlive()) {
+            throw new SQLException("Distance writer is closed");
+        }
+    }
+
+    // Rows/s seen by producers (time spent enqueueing, including backpressure waits) and by the database
+    public String reportThroughput() {
+        synchronized (progress) {
+            return String.format("queued %d rows at %.0f rows/s, wrote %d rows at %.0f rows/s",
+                    enqueuedRows, rate(enqueuedRows, enqueueNanos), writtenRows, rate(writtenRows, writeNanos));
+        }
+    }
+
+    @Override
+    public void close() throws SQLException {
+        if (!running) {
+            return;
+        }
+        try {
+            flush();
+        } finally {
+            running = false;
+            worker.interrupt();
+            try {
+                worker.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            connection.close();
+        }
+    }
+
+    private void drain() {
+        List<Row> batch = new ArrayList<>(batchSize);
+        long uncommitted = 0;
+        try (PreparedStatement preparedStatement = connection.prepareStatement(upsertSql)) {
+            while (running || !queue.isEmpty()) {
+                Row first;
+                try {
+                    first = queue.poll(50, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    if (!running) {
+                        first = queue.poll();
+                    } else {
+                        continue;
+                    }
+                }
+                if (first == null) {
+                    // Queue went idle: commit whatever is pending so flush() can return
+                    if (uncommitted > 0) {
+                        long start = System.nanoTime();
+                        connection.commit();
+                        Metrics.global().addDatabaseRoundTrip();
+                        markWritten(uncommitted, System.nanoTime() - start);
+                        uncommitted = 0;
+                    }
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+
+                long start = System.nanoTime();
+                for (Row row : batch) {
+                    preparedStatement.setString(1, row.separatorKey);
+                    preparedStatement.setString(2, row.vertexKey);
+                    preparedStatement.setInt(3, row.distance);
+                    preparedStatement.setInt(4, row.level);
+                    preparedStatement.addBatch();
+                }
+                preparedStatement.executeBatch();
+                Metrics.global().addDatabaseRoundTrip();
+                uncommitted += batch.size();
+                batch.clear();
+                if (uncommitted >= commitSize) {
+                    connection.commit();
+                    Metrics.global().addDatabaseRoundTrip();
+                    markWritten(uncommitted, System.nanoTime() - start);
+                    uncommitted = 0;
+                } else {
+                    addWriteTime(System.nanoTime() - start);
+                }
+            }
+        } catch (SQLException e) {
+            failure = e;
+            LOGGER.log(Level.SEVERE, "Distance writer stopped; producers get this failure from now on", e);
+            try {
+                connection.rollback();
+            } catch (SQLException rollbackFailure) {
+                e.addSuppressed(rollbackFailure);
+            }
+        } finally {
+            synchronized (progress) {
+                progress.notifyAll();
+            }
+        }
+    }
+
+    private void markWritten(long rows, long nanos) {
+        synchronized (progress) {
+            writtenRows += rows;
+            writeNanos += nanos;
+            progress.notifyAll();
+        }
+    }
+
+    private void addWriteTime(long nanos) {
+        synchronized (progress) {
+            writeNanos += nanos;
+        }
+    }
+
+    private static double rate(long rows, long nanos) {
+        return nanos == 0 ? 0 : rows * 1e9 / nanos;
+    }
+
+    private static final class Row {
+        final String separatorKey;
+        final String vertexKey;
+        final int distance;
+        final int level;
+
+        Row(String separatorKey, String vertexKey, int distance, int level) {
+            this.separatorKey = separatorKey;
+            this.vertexKey = vertexKey;
+            this.distance = distance;
+            this.level = level;
+        }
+    }
+}
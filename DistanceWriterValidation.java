@@ -0,0 +1,216 @@
+package org.project;
+
+import java.io.PrintStream;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+
+// Checks DistanceWriter against a real database: its upsert statement, that a decomposition persists
+// exactly the rows of its memory table, and that producers fail instead of blocking once the writer
+// thread has died. The checks need precomputed_distances to start empty: they refuse a table holding
+// rows unless --clean true is given, and remove what they wrote when done. Needs the JDBC driver on
+// the class path; an embedded database is enough, e.g.
+//
+// Usage: java -cp .:h2.jar org.project.DistanceWriterValidation --url "jdbc:h2:mem:check;DB_CLOSE_DELAY=-1" --user sa
+//        java -cp .:hsqldb.jar org.project.DistanceWriterValidation --url jdbc:hsqldb:mem:check --user SA
+//                                                                  [--password ""] [--size 32] [--seed 42] [--clean true]
+public class DistanceWriterValidation {
+    private static final PrintStream OUT = System.out;
+
+    private String url = "jdbc:h2:mem:check;DB_CLOSE_DELAY=-1";
+    private String user = "sa";
+    private String password = "";
+    private int size = 32;
+    private long seed = 42;
+    private boolean clean;
+
+    public static void main(String[] args) throws Exception {
+        DistanceWriterValidation validation = new DistanceWriterValidation();
+        validation.parse(args);
+        GridBenchmark.setProjectLogLevel(Level.WARNING);
+        boolean existed = validation.prepareTable();
+        int failures;
+        try {
+            failures = validation.checkPrecomputation() + validation.checkUpsert() + validation.checkFailFast();
+        } finally {
+            validation.cleanUp(existed);
+        }
+        if (failures > 0) {
+            OUT.println(failures + " checks failed");
+            System.exit(1);
+        }
+        OUT.println("all checks passed");
+    }
+
+    private void parse(String[] args) {
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--url":
+                    url = value;
+                    break;
+                case "--user":
+                    user = value;
+                    break;
+                case "--password":
+                    password = value;
+                    break;
+                case "--size":
+                    size = Integer.parseInt(value);
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(value);
+                    break;
+                case "--clean":
+                    clean = Boolean.parseBoolean(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+    }
+
+    // Whether precomputed_distances already exists. Refuses a table holding rows, which the row
+    // comparison would count against the memory table, unless --clean true allows deleting them first.
+    private boolean prepareTable() throws SQLException {
+        try (Connection connection = DriverManager.getConnection(url, user, password);
+             Statement statement = connection.createStatement()) {
+            int rows;
+            try (ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM precomputed_distances")) {
+                rs.next();
+                rows = rs.getInt(1);
+            } catch (SQLException e) {
+                return false;
+            }
+            if (rows > 0) {
+                if (!clean) {
+                    throw new IllegalStateException("precomputed_distances at " + url + " holds " + rows
+                            + " rows; use an empty database or pass --clean true to delete them");
+                }
+                statement.executeUpdate("DELETE FROM precomputed_distances");
+            }
+            return true;
+        }
+    }
+
+    // Remove the rows the checks wrote, and the table too if they created it
+    private void cleanUp(boolean existed) throws SQLException {
+        try (Connection connection = DriverManager.getConnection(url, user, password);
+             Statement statement = connection.createStatement()) {
+            statement.executeUpdate(existed ? "DELETE FROM precomputed_distances" : "DROP TABLE IF EXISTS precomputed_distances");
+        }
+    }
+
+    // Every row of the memory table, and nothing else, reaches the database
+    private int checkPrecomputation() throws SQLException {
+        GridGraph gridGraph = GridBenchmark.seededGrid(size, size, seed);
+        DistancePrecomputation distancePrecomputation = new DistancePrecomputation(gridGraph, url, user, password);
+        distancePrecomputation.setMode(DistancePrecomputation.Mode.MULTI_SOURCE);
+        GraphDecomposition decomposition = new GraphDecomposition(gridGraph, null, 1, distancePrecomputation);
+        long start = System.nanoTime();
+        decomposition.decompose();
+        decomposition.shutdown();
+        long nanos = System.nanoTime() - start;
+
+        DistanceTable distanceTable = distancePrecomputation.getDistanceTable();
+        int rows = 0, mismatches = 0;
+        try (Connection connection = DriverManager.getConnection(url, user, password);
+             Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT separator_vertex, subgraph_vertex, distance, level FROM precomputed_distances")) {
+            while (rs.next()) {
+                rows++;
+                long key = DistanceTable.key(id(rs.getString(1)), id(rs.getString(2)), rs.getInt(4));
+                if (distanceTable.get(key) != rs.getInt(3)) {
+                    mismatches++;
+                }
+            }
+        }
+        boolean passed = rows == distanceTable.size() && mismatches == 0;
+        OUT.printf("precomputation: %d rows in memory, %d in the database, %d mismatches, %.1f ms: %s%n",
+                distanceTable.size(), rows, mismatches, nanos / 1e6, passed ? "ok" : "FAILED");
+        return passed ? 0 : 1;
+    }
+
+    // Writing a key twice keeps one row holding the last distance
+    private int checkUpsert() throws SQLException {
+        try (Connection connection = DriverManager.getConnection(url, user, password)) {
+            try (DistanceWriter distanceWriter = new DistanceWriter(DriverManager.getConnection(url, user, password), 2, 2, 4)) {
+                for (int distance = 1; distance <= 5; distance++) {
+                    distanceWriter.write("[-1, 0]", "[-1, 1]", distance, 0);
+                    distanceWriter.write("[-1, 0]", "[-1, 2]", 10 * distance, 0);
+                }
+            }
+            int rows = 0;
+            boolean passed = true;
+            try (PreparedStatement pstmt = connection.prepareStatement(
+                    "SELECT subgraph_vertex, distance FROM precomputed_distances WHERE separator_vertex = ?")) {
+                pstmt.setString(1, "[-1, 0]");
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        rows++;
+                        passed &= rs.getInt(2) == ("[-1, 1]".equals(rs.getString(1)) ? 5 : 50);
+                    }
+                }
+            }
+            passed &= rows == 2;
+            OUT.printf("upsert (%s): %d rows: %s%n",
+                    DistanceWriter.upsertSql(connection.getMetaData()).startsWith("MERGE") ? "MERGE" : "ON CONFLICT", rows, passed ? "ok" : "FAILED");
+            return passed ? 0 : 1;
+        }
+    }
+
+    // Once the writer's connection is lost mid-stream, write() throws the stored failure instead of
+    // filling the queue and blocking for good
+    private int checkFailFast() throws Exception {
+        // The writer logs the failure it is about to hit
+        Level level = GridBenchmark.setProjectLogLevel(Level.OFF);
+        Connection writerConnection = DriverManager.getConnection(url, user, password);
+        DistanceWriter distanceWriter = new DistanceWriter(writerConnection, 4, 4, 16);
+        for (int i = 0; i < 8; i++) {
+            distanceWriter.write("[-2, 0]", "[-3, " + i + "]", i, 0);
+        }
+        distanceWriter.flush();
+        writerConnection.close();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<SQLException> producer = executor.submit(() -> {
+            try {
+                for (int i = 0; i < 100000; i++) {
+                    distanceWriter.write("[-2, 0]", "[-2, " + i + "]", i, 0);
+                }
+                return null;
+            } catch (SQLException e) {
+                return e;
+            }
+        });
+        boolean passed;
+        String outcome;
+        try {
+            SQLException failure = producer.get(30, TimeUnit.SECONDS);
+            passed = failure != null;
+            outcome = passed ? "threw " + failure.getClass().getSimpleName() : "wrote every row to a closed connection";
+        } catch (TimeoutException e) {
+            passed = false;
+            outcome = "producer still blocked after 30 s";
+        } finally {
+            GridBenchmark.setProjectLogLevel(level);
+            executor.shutdownNow();
+        }
+        OUT.printf("fail fast: %s: %s%n", outcome, passed ? "ok" : "FAILED");
+        return passed ? 0 : 1;
+    }
+
+    // Vertex id of a "[x, y]" key
+    private int id(String vertex) {
+        String[] parts = vertex.substring(1, vertex.length() - 1).split(", ");
+        return Integer.parseInt(parts[0]) * size + Integer.parseInt(parts[1]);
+    }
+}
@@ -0,0 +1,340 @@
+package org.project;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+// Flat primitive storage for per-direction edge weights. The element width (1, 2 or 4 bytes)
+// is picked from the largest weight the grid has to hold, and the values can live either in a
+// heap array or in direct ByteBuffers outside the Java heap. A stored 0 means "no edge".
+public abstract class EdgeWeights {
+    private static final int CHUNK_SHIFT = 30;
+
+    public static EdgeWeights allocate(long size, int maxWeight, boolean offHeap) {
+        if (maxWeight <= 0) {
+            throw new IllegalArgumentException("maxWeight must be positive: " + maxWeight);
+        }
+        int width = widthFor(maxWeight);
+        if (offHeap) {
+            return new BufferWeights(size, width);
+        }
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Grid too large for heap storage, use off-heap weights");
+        }
+        switch (width) {
+            case 1:
+                return new ByteWeights((int) size);
+            case 2:
+                return new ShortWeights((int) size);
+            default:
+                return new IntWeights((int) size);
+        }
+    }
+
+    // Bytes per stored weight needed for weights up to maxWeight
+    public static int widthFor(int maxWeight) {
+        return maxWeight <= 0xFF ? 1 : maxWeight <= 0xFFFF ? 2 : 4;
+    }
+
+    // View existing buffers (e.g. sections of a memory-mapped file) as weights of the given width.
+    // Every chunk but the last must hold exactly 1 GB.
+    public static EdgeWeights wrap(ByteBuffer[] chunks, long size, int width) {
+        return new BufferWeights(chunks, size, width);
+    }
+
+    // Bytes per chunk of off-heap or mapped storage
+    public static long chunkBytes() {
+        return 1L << CHUNK_SHIFT;
+    }
+
+    public abstract int get(long index);
+
+    public abstract void set(long index, int weight);
+
+    public abstract long size();
+
+    // Bytes per stored weight
+    public abstract int width();
+
+    // Independent copy that can hold weights up to maxWeight (and at least this storage's own range),
+    // kept on or off the heap like this one
+    public EdgeWeights copy(int maxWeight) {
+        EdgeWeights copy = allocate(size(), Math.max(maxWeight, maxWeight()), this instanceof BufferWeights);
+        for (long i = 0; i < size(); i++) {
+            copy.set(i, get(i));
+        }
+        return copy;
+    }
+
+    // Copy for a batch of updates that costs one reference per page of PagedWeights rather than the
+    // whole storage: writes go to pages copied on first write, everything else is read from this
+    // storage, which must not be written afterwards
+    public EdgeWeights copyOnWrite(int maxWeight) {
+        return new PagedWeights(this, maxWeight);
+    }
+
+    public int maxWeight() {
+        return width() == 4 ? Integer.MAX_VALUE : (1 << (8 * width())) - 1;
+    }
+
+    protected void checkWeight(int weight) {
+        if (weight < 0 || weight > maxWeight()) {
+            throw new IllegalArgumentException("Weight " + weight + " does not fit in " + width() + " byte(s)");
+        }
+    }
+
+    private static final class ByteWeights extends EdgeWeights {
+        private final byte[] weights;
+
+        ByteWeights(int size) {
+            this.weights = new byte[size];
+        }
+
+        ByteWeights(byte[] weights) {
+            this.weights = weights;
+        }
+
+        @Override
+        public EdgeWeights copy(int maxWeight) {
+            return maxWeight <= maxWeight() ? new ByteWeights(weights.clone()) : super.copy(maxWeight);
+        }
+
+        @Override
+        public int get(long index) {
+            return weights[(int) index] & 0xFF;
+        }
+
+        @Override
+        public void set(long index, int weight) {
+            checkWeight(weight);
+            weights[(int) index] = (byte) weight;
+        }
+
+        @Override
+        public long size() {
+            return weights.length;
+        }
+
+        @Override
+        public int width() {
+            return 1;
+        }
+    }
+
+    private static final class ShortWeights extends EdgeWeights {
+        private final char[] weights;
+
+        ShortWeights(int size) {
+            this.weights = new char[size];
+        }
+
+        ShortWeights(char[] weights) {
+            this.weights = weights;
+        }
+
+        @Override
+        public EdgeWeights copy(int maxWeight) {
+            return maxWeight <= maxWeight() ? new ShortWeights(weights.clone()) : super.copy(maxWeight);
+        }
+
+        @Override
+        public int get(long index) {
+            return weights[(int) index];
+        }
+
+        @Override
+        public void set(long index, int weight) {
+            checkWeight(weight);
+            weights[(int) index] = (char) weight;
+        }
+
+        @Override
+        public long size() {
+            return weights.length;
+        }
+
+        @Override
+        public int width() {
+            return 2;
+        }
+    }
+
+    private static final class IntWeights extends EdgeWeights {
+        private final int[] weights;
+
+        IntWeights(int size) {
+            this.weights = new int[size];
+        }
+
+        IntWeights(int[] weights) {
+            this.weights = weights;
+        }
+
+        @Override
+        public EdgeWeights copy(int maxWeight) {
+            return new IntWeights(weights.clone());
+        }
+
+        @Override
+        public int get(long index) {
+            return weights[(int) index];
+        }
+
+        @Override
+        public void set(long index, int weight) {
+            checkWeight(weight);
+            weights[(int) index] = weight;
+        }
+
+        @Override
+        public long size() {
+            return weights.length;
+        }
+
+        @Override
+        public int width() {
+            return 4;
+        }
+    }
+
+    // Copy-on-write overlay: pages of 2^14 weights replace the base storage where they have been
+    // written. A copy shares the base and every page, and clones a shared page before its first write
+    // to it, so the base is never written and versions never see each other's writes. One writer at
+    // a time; any number of readers.
+    private static final class PagedWeights extends EdgeWeights {
+        private static final int PAGE_SHIFT = 14;
+        private static final int PAGE_MASK = (1 << PAGE_SHIFT) - 1;
+
+        private final EdgeWeights base;
+        private final int[][] pages;
+        // Pages this copy may write in place; the others are shared with the copy it was made from
+        private final boolean[] owned;
+        private final int maxWeight;
+
+        PagedWeights(EdgeWeights base, int maxWeight) {
+            this(base, new int[(int) ((base.size() + PAGE_MASK) >>> PAGE_SHIFT)][], maxWeight);
+        }
+
+        private PagedWeights(EdgeWeights base, int[][] pages, int maxWeight) {
+            this.base = base;
+            this.pages = pages;
+            this.owned = new boolean[pages.length];
+            this.maxWeight = Math.max(maxWeight, base.maxWeight());
+        }
+
+        @Override
+        public EdgeWeights copyOnWrite(int maxWeight) {
+            return new PagedWeights(base, pages.clone(), Math.max(maxWeight, this.maxWeight));
+        }
+
+        @Override
+        public int get(long index) {
+            int[] page = pages[(int) (index >>> PAGE_SHIFT)];
+            return page == null ? base.get(index) : page[(int) index & PAGE_MASK];
+        }
+
+        @Override
+        public void set(long index, int weight) {
+            checkWeight(weight);
+            int p = (int) (index >>> PAGE_SHIFT);
+            if (!owned[p]) {
+                int[] page = pages[p];
+                if (page == null) {
+                    long first = (long) p << PAGE_SHIFT;
+                    page = new int[(int) Math.min(PAGE_MASK + 1, base.size() - first)];
+                    for (int i = 0; i < page.length; i++) {
+                        page[i] = base.get(first + i);
+                    }
+                } else {
+                    page = page.clone();
+                }
+                pages[p] = page;
+                owned[p] = true;
+            }
+            pages[p][(int) index & PAGE_MASK] = weight;
+        }
+
+        @Override
+        public long size() {
+            return base.size();
+        }
+
+        @Override
+        public int width() {
+            return widthFor(maxWeight);
+        }
+
+        @Override
+        public int maxWeight() {
+            return maxWeight;
+        }
+    }
+
+    // Direct buffers are capped at 2 GB each, so large grids are split into 1 GB chunks.
+    // Widths are powers of two, so no element ever straddles two chunks.
+    private static final class BufferWeights extends EdgeWeights {
+        private final ByteBuffer[] chunks;
+        private final long size;
+        private final int width;
+
+        BufferWeights(long size, int width) {
+            this.size = size;
+            this.width = width;
+            long bytes = size * width;
+            int chunkCount = (int) ((bytes + (1L << CHUNK_SHIFT) - 1) >>> CHUNK_SHIFT);
+            this.chunks = new ByteBuffer[Math.max(1, chunkCount)];
+            for (int i = 0; i < chunks.length; i++) {
+                long chunkBytes = Math.min(1L << CHUNK_SHIFT, bytes - ((long) i << CHUNK_SHIFT));
+                chunks[i] = ByteBuffer.allocateDirect((int) chunkBytes).order(ByteOrder.nativeOrder());
+            }
+        }
+
+        BufferWeights(ByteBuffer[] chunks, long size, int width) {
+            this.chunks = chunks;
+            this.size = size;
+            this.width = width;
+        }
+
+        @Override
+        public int get(long index) {
+            long offset = index * width;
+            ByteBuffer chunk = chunks[(int) (offset >>> CHUNK_SHIFT)];
+            int position = (int) (offset & ((1L << CHUNK_SHIFT) - 1));
+            switch (width) {
+                case 1:
+                    return chunk.get(position) & 0xFF;
+                case 2:
+                    return chunk.getChar(position);
+                default:
+                    return chunk.getInt(position);
+            }
+        }
+
+        @Override
+        public void set(long index, int weight) {
+            checkWeight(weight);
+            long offset = index * width;
+            ByteBuffer chunk = chunks[(int) (offset >>> CHUNK_SHIFT)];
+            int position = (int) (offset & ((1L << CHUNK_SHIFT) - 1));
+            switch (width) {
+                case 1:
+                    chunk.put(position, (byte) weight);
+                    break;
+                case 2:
+                    chunk.putChar(position, (char) weight);
+                    break;
+                default:
+                    chunk.putInt(position, weight);
+            }
+        }
+
+        @Override
+        public long size() {
+            return size;
+        }
+
+        @Override
+        public int width() {
+            return width;
+        }
+    }
+}
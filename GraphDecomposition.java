@@ -1,30 +1,146 @@
 package org.project;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 public class GraphDecomposition {
-    private GridGraph gridGraph;
+    private static final Logger LOGGER = Logger.getLogger(GraphDecomposition.class.getName());
+
+    // Replaced as a whole on every weight update, so readers never see the grid of one version with
+    // the distances of another; see updateCellWeights
+    private volatile Version current;
     private GridPanel gridPanel;
-    private DistancePrecomputation distancePrecomputation;
     private int maxLevel;
+    private DecompositionTree decompositionTree;
+    private ForkJoinPool pool;
 
     public GraphDecomposition(GridGraph gridGraph, GridPanel gridPanel) {
-        this.gridGraph = gridGraph;
+        this(gridGraph, gridPanel, 1);
+    }
+
+    // parallelism > 1 decomposes the two halves of every subgraph as fork-join tasks and runs the
+    // per-separator precomputation in the same pool; 1 keeps the sequential build
+    public GraphDecomposition(GridGraph gridGraph, GridPanel gridPanel, int parallelism) {
+        this(gridGraph, gridPanel, parallelism, new DistancePrecomputation(gridGraph));
+    }
+
+    // Decompose into a caller-configured precomputation (e.g. one without a database connection)
+    public GraphDecomposition(GridGraph gridGraph, GridPanel gridPanel, int parallelism, DistancePrecomputation distancePrecomputation) {
+        if (distancePrecomputation.getGridGraph() != gridGraph) {
+            throw new IllegalArgumentException("The precomputation was made for a different grid");
+        }
+        this.current = new Version(distancePrecomputation, 0);
         this.gridPanel = gridPanel;
         this.maxLevel = calculateMaxLevel();
-        this.distancePrecomputation = new DistancePrecomputation(gridGraph);
-        gridGraph.printGrid();
+        this.decompositionTree = new DecompositionTree(maxLevel);
+        distancePrecomputation.setDecompositionTree(decompositionTree);
+        if (parallelism > 1) {
+            this.pool = new ForkJoinPool(parallelism);
+            distancePrecomputation.setParallel(true);
+        }
+    }
+
+    // Current version of the precomputed distances; its getGridGraph() holds the matching weights
+    public DistancePrecomputation getDistancePrecomputation() {
+        return current.distancePrecomputation;
+    }
+
+    public GridGraph getGridGraph() {
+        return current.distancePrecomputation.getGridGraph();
+    }
+
+    // Immutable view of the current version for concurrent queries (see DistanceOracle); call again
+    // and publish the result after every weight update
+    public OracleSnapshot snapshot() {
+        return snapshot(null);
+    }
+
+    // Same, falling back to persisted distances through a read-only connection pool. The snapshot
+    // shares the pool but caches what it reads on its own, and stops reading the database once weights
+    // are updated (see DistancePrecomputation.readsDatabase).
+    public synchronized OracleSnapshot snapshot(ReadOnlyDistanceStore distanceStore) {
+        Version version = current;
+        DistancePrecomputation distances = version.distancePrecomputation;
+        ReadOnlyDistanceStore store = distanceStore == null ? null : distanceStore.withOwnCache(distances::readsDatabase);
+        return new OracleSnapshot(distances.getGridGraph(), decompositionTree, distances.getDistanceTable(), distances.getOracleFile(),
+                distances.getLandmarks(), store, distances.getBoundaryTables(), maxLevel, version.number);
+    }
+
+    // Number of weight updates applied since the decomposition was built
+    public int getVersion() {
+        return current.number;
+    }
+
+    // Apply a batch of cell weight changes without rebuilding: the new weights go into a copy of the
+    // grid and only the tables of regions containing a changed cell are recomputed, into a copy of
+    // the distance table. The new version is published when it is complete, so finders created from
+    // the previous getDistancePrecomputation() keep answering consistently from the old one.
+    public synchronized void updateCellWeights(int[][] cells, int[] weights) {
+        Version previous = current;
+        GridGraph updatedGrid = previous.distancePrecomputation.getGridGraph().withCellWeights(cells, weights);
+        DistancePrecomputation updated = previous.distancePrecomputation.withUpdatedGrid(updatedGrid, cells);
+        updated.flushDistances();
+        current = new Version(updated, previous.number + 1);
+    }
+
+    public DecompositionTree getDecompositionTree() {
+        return decompositionTree;
+    }
+
+    // Stop the pool and close the current version's database connections, committing queued distances
+    public synchronized void shutdown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+        current.distancePrecomputation.close();
+    }
+
+    public int getMaxLevel() {
+        return maxLevel;
+    }
+
+    // Persist the decomposed oracle so later processes can map it instead of rebuilding
+    public void writeOracle(Path path) throws IOException {
+        DistancePrecomputation distancePrecomputation = current.distancePrecomputation;
+        OracleFile.write(path, distancePrecomputation.getGridGraph(), decompositionTree, distancePrecomputation.getDistanceTable(),
+                distancePrecomputation.getBoundaryTables());
     }
 
     private int calculateMaxLevel() {
+        GridGraph gridGraph = getGridGraph();
         int n = Math.max(gridGraph.getM(), gridGraph.getN());
         return (int) (Math.log(n) / Math.log(2));
     }
 
+    // Build the decomposition tree and precomputed distances without running any query
+    public void decompose() {
+        GridGraph gridGraph = getGridGraph();
+        DistancePrecomputation distancePrecomputation = getDistancePrecomputation();
+        int[] entireGraph = {0, 0, gridGraph.getM() - 1, gridGraph.getN() - 1};
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("Starting decomposition with max level: " + maxLevel);
+        }
+        if (pool != null) {
+            pool.invoke(new DecomposeTask(entireGraph, 0, DecompositionTree.ROOT));
+        } else {
+            decomposeGraph(entireGraph, 0, DecompositionTree.ROOT);
+        }
+        distancePrecomputation.precomputeBoundaryTables();
+        distancePrecomputation.precomputeApproximateOracle();
+        distancePrecomputation.flushDistances();
+    }
+
     public void decomposeEntireGrid() {
-        Set<int[]> entireGraph = getSubgraphVertices(0, 0, gridGraph.getM() - 1, gridGraph.getN() - 1);
-        System.out.println("Starting decomposition with max level: " + maxLevel);
-        decomposeGraph(entireGraph, 0);
+        GridGraph gridGraph = getGridGraph();
+        DistancePrecomputation distancePrecomputation = getDistancePrecomputation();
+        gridGraph.printGrid();
+        decompose();
         //distancePrecomputation.checkStoredDistances();
         ShortestPathFinder shortestPathFinder = new ShortestPathFinder(distancePrecomputation, maxLevel,gridGraph);
 
@@ -33,104 +149,116 @@ public class GraphDecomposition {
         int[] vertex2 = new int[]{7, 7};
 
         int result = shortestPathFinder.findShortestPath(vertex1, vertex2);
-        System.out.println("Shortest distance from (0, 0) to (7, 7): " + result);
+        LOGGER.info("Shortest distance from (0, 0) to (7, 7): " + result);
 
         int dijkstraDistance = distancePrecomputation.dijkstra(vertex1, vertex2);
-        System.out.println("Dijkstra's distance from (0,0) to (7,7): " + dijkstraDistance);
+        LOGGER.info("Dijkstra's distance from (0,0) to (7,7): " + dijkstraDistance);
 
     }
 
-    private void decomposeGraph(Set<int[]> subgraph, int level) {
-        System.out.println("Decomposing at level " + level + " with subgraph size " + subgraph.size());
+    // Subgraphs are always full rectangles, so only their bounds {x1, y1, x2, y2} are passed down;
+    // the cells themselves are never materialized
+    private void decomposeGraph(int[] bounds, int level, int region) {
+        int subgraphSize = (bounds[2] - bounds[0] + 1) * (bounds[3] - bounds[1] + 1);
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("Decomposing at level " + level + " with subgraph size " + subgraphSize);
+        }
 
-        if (subgraph.size() <= 2 || level >= maxLevel) {
-            System.out.println("Reached base case at level " + level);
+        long start = System.nanoTime();
+        if (subgraphSize <= 2 || level >= maxLevel) {
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.fine("Reached base case at level " + level);
+            }
+            decompositionTree.addRegion(region, level, bounds[0], bounds[1], bounds[2], bounds[3], DecompositionTree.NO_SEPARATOR, 0);
+            Metrics.global().recordRegion(level, System.nanoTime() - start);
             return;
         }
 
         // Find the separator for the current subgraph
-        List<int[]> separator = findSeparator(subgraph);
-        Set<int[]> part1 = new HashSet<>();
-        Set<int[]> part2 = new HashSet<>();
+        List<int[]> separator = findSeparator(bounds, region, level);
 
         // Divide the subgraph based on the separator
-        divideSubgraph(subgraph, separator, part1, part2);
+        int[] part1 = divideSubgraph(region, 0);
+        int[] part2 = divideSubgraph(region, 1);
 
         // Precompute distances only for representative vertices in the subgraph
-        distancePrecomputation.precomputeDistances(level, separator, subgraph);
+        getDistancePrecomputation().precomputeDistances(level, separator, bounds);
+        // Children are timed at their own levels
+        Metrics.global().recordRegion(level, System.nanoTime() - start);
 
 //        for (int[] sep : separator) {
 //            gridPanel.markSeparator(sep[0], sep[1]);
 //        }
 
-        // Recursively decompose the subgraph further
-        decomposeGraph(part1, level + 1);
-        decomposeGraph(part2, level + 1);
+        // Recursively decompose the subgraph further; a part is null when the separator lies on the
+        // region's lower edge and leaves nothing below it
+        if (pool != null && part1 != null) {
+            ForkJoinTask.invokeAll(new DecomposeTask(part1, level + 1, DecompositionTree.child(region, 0)),
+                    new DecomposeTask(part2, level + 1, DecompositionTree.child(region, 1)));
+        } else {
+            if (part1 != null) {
+                decomposeGraph(part1, level + 1, DecompositionTree.child(region, 0));
+            }
+            decomposeGraph(part2, level + 1, DecompositionTree.child(region, 1));
+        }
     }
 
-    // Method to find a separator for the current subgraph (e.g., vertical or horizontal split)
-    private List<int[]> findSeparator(Set<int[]> subgraph) {
-        int[] bounds = findSubgraphBounds(subgraph);
+    // Method to find a separator for the current subgraph (e.g., vertical or horizontal split) and record its region
+    private List<int[]> findSeparator(int[] bounds, int region, int level) {
         int x1 = bounds[0], y1 = bounds[1], x2 = bounds[2], y2 = bounds[3];
 
-        List<int[]> separator = new ArrayList<>();
         if (x2 - x1 > y2 - y1) { // Vertical separator
-            int midX = (x1 + x2) / 2;
-            for (int y = y1; y <= y2; y++) {
-                separator.add(new int[]{midX, y});
-            }
+            decompositionTree.addRegion(region, level, x1, y1, x2, y2, DecompositionTree.SEPARATOR_X, (x1 + x2) / 2);
         } else { // Horizontal separator
-            int midY = (y1 + y2) / 2;
-            for (int x = x1; x <= x2; x++) {
-                separator.add(new int[]{x, midY});
-            }
+            decompositionTree.addRegion(region, level, x1, y1, x2, y2, DecompositionTree.SEPARATOR_Y, (y1 + y2) / 2);
         }
-        return separator;
+        return decompositionTree.getSeparator(region);
     }
 
-    // Method to divide the subgraph into two parts based on the separator
-    private void divideSubgraph(Set<int[]> subgraph, List<int[]> separator, Set<int[]> part1, Set<int[]> part2) {
-        for (int[] vertex : subgraph) {
-            if (isLeftOrAboveSeparator(vertex, separator)) {
-                part1.add(vertex);
-            } else {
-                part2.add(vertex);
+    // Bounds of one part of a region split by its separator: side 0 holds the cells below the
+    // separator line, side 1 the line and everything above it. Null if the part is empty.
+    private int[] divideSubgraph(int region, int side) {
+        int[] bounds = decompositionTree.getBounds(region);
+        int axis = decompositionTree.getSeparatorAxis(region) == DecompositionTree.SEPARATOR_X ? 0 : 1;
+        int coordinate = decompositionTree.getSeparatorCoordinate(region);
+        if (side == 0) {
+            if (coordinate == bounds[axis]) {
+                return null;
             }
+            bounds[axis + 2] = coordinate - 1;
+        } else {
+            bounds[axis] = coordinate;
         }
+        return bounds;
     }
 
-    // Method to find the bounds of the current subgraph
-    private int[] findSubgraphBounds(Set<int[]> subgraph) {
-        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
-        int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
-        for (int[] vertex : subgraph) {
-            minX = Math.min(minX, vertex[0]);
-            minY = Math.min(minY, vertex[1]);
-            maxX = Math.max(maxX, vertex[0]);
-            maxY = Math.max(maxY, vertex[1]);
+    private class DecomposeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] bounds;
+        private final int level;
+        private final int region;
+
+        DecomposeTask(int[] bounds, int level, int region) {
+            this.bounds = bounds;
+            this.level = level;
+            this.region = region;
         }
-        return new int[]{minX, minY, maxX, maxY};
-    }
 
-    // Check if a vertex is on the left or above the separator
-    private boolean isLeftOrAboveSeparator(int[] vertex, List<int[]> separator) {
-        int[] sepVertex = separator.get(0);
-        if (separator.get(0)[0] == separator.get(1)[0]) { // Vertical separator
-            return vertex[0] < sepVertex[0];
-        } else { // Horizontal separator
-            return vertex[1] < sepVertex[1];
+        @Override
+        protected void compute() {
+            decomposeGraph(bounds, level, region);
         }
     }
 
-    // Get all vertices in a subgraph between the given bounds
-    private Set<int[]> getSubgraphVertices(int x1, int y1, int x2, int y2) {
-        Set<int[]> vertices = new HashSet<>();
-        for (int x = x1; x <= x2; x++) {
-            for (int y = y1; y <= y2; y++) {
-                vertices.add(new int[]{x, y});
-            }
+    // One published version: the precomputed distances and, through them, the grid they were computed on
+    private static final class Version {
+        final DistancePrecomputation distancePrecomputation;
+        final int number;
+
+        Version(DistancePrecomputation distancePrecomputation, int number) {
+            this.distancePrecomputation = distancePrecomputation;
+            this.number = number;
         }
-        return vertices;
     }
-
 }
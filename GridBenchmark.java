@@ -0,0 +1,535 @@
+package org.project;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Self-contained benchmark for the build and query phases: grid construction, decomposition,
+// precomputation of the root separator, and hierarchical queries against plain Dijkstra on
+// seeded grids with random, near and far query mixes. Reports throughput, latency percentiles,
+// bytes allocated per operation on the measuring thread, and the collections and GC time during
+// each benchmark. Results of the measured calls go to a sink the JIT cannot discard.
+//
+// Usage: java org.project.GridBenchmark [--sizes 64,256,1024,4096] [--queries 200] [--warmup 50]
+//                                       [--seed 42] [--mode MULTI_SOURCE] [--parallelism 1] [--memo QUERY]
+//                                       [--fallback DIJKSTRA] [--landmarks 4] [--stress 8]
+//                                       [--metrics false] [--log-level WARNING] [--piece-size 16]
+//                                       [--compress false] [--budget-mb 8] [--query-log queries.txt]
+//                                       [--matrix 50x500] [--obstacles 0.2] [--forks 0]
+//
+// --stress N adds a concurrent run of DistanceOracle.findDistance on 1, 2, 4, ... N threads.
+// --metrics true registers the Metrics MBean and prints every metric after each size.
+// --budget-mb plans the BOUNDARY_TABLES within that budget for the queries of --query-log ("x1 y1 x2 y2"
+// lines) or, without one, --queries random pairs, and prints the predicted and measured latency.
+// --matrix SxT times DistancePrecomputation.distanceMatrix for S random sources and T random targets,
+// and the same matrix from one grid search per source.
+// --obstacles makes about that share of the cells impassable (see GridGenerator).
+// --forks N runs the whole benchmark in N fresh JVMs one after the other, so JIT decisions and heap
+// state of one run do not carry over into the next; 0 measures in this JVM.
+public class GridBenchmark {
+    private static final PrintStream OUT = System.out;
+    private static final PrintStream ERR = System.err;
+    private static final PrintStream NULL = new PrintStream(OutputStream.nullOutputStream());
+    // Parent of every logger in the project. Held here so the level set through setProjectLogLevel is not
+    // lost when the logger would otherwise be collected.
+    private static final Logger PROJECT_LOGGER = Logger.getLogger("org.project");
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private int[] sizes = {64, 256, 1024, 4096};
+    private int queries = 200;
+    private int warmup = 50;
+    private long seed = 42;
+    private DistancePrecomputation.Mode mode = DistancePrecomputation.Mode.MULTI_SOURCE;
+    private int parallelism = 1;
+    private ShortestPathFinder.MemoScope memoScope = ShortestPathFinder.MemoScope.QUERY;
+    private PointToPointSearch.Strategy fallback = PointToPointSearch.Strategy.DIJKSTRA;
+    private int landmarks = 4;
+    private int stressThreads;
+    private boolean metrics;
+    private int pieceSize = 16;
+    private boolean compress;
+    private double budgetMegabytes = -1;
+    private Path queryLog;
+    private int matrixSources;
+    private double obstacles;
+    private int matrixTargets;
+    private int forks;
+    // Receives every measured result, so the JIT cannot drop the calls as dead code
+    private static int sink;
+    // Anything chattier would time the log messages instead of the queries
+    private Level logLevel = Level.WARNING;
+
+    public static void main(String[] args) {
+        GridBenchmark benchmark = new GridBenchmark();
+        benchmark.parse(args);
+        setProjectLogLevel(benchmark.logLevel);
+        if (benchmark.forks > 0) {
+            benchmark.fork(args);
+        } else {
+            benchmark.run();
+        }
+    }
+
+    // Rerun with the same options in child JVMs, which measure in process
+    private void fork(String[] args) {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(GridBenchmark.class.getName());
+        command.addAll(Arrays.asList(args));
+        command.add("--forks");
+        command.add("0");
+        for (int fork = 1; fork <= forks; fork++) {
+            OUT.println("# fork " + fork + " of " + forks);
+            try {
+                int status = new ProcessBuilder(command).inheritIO().start().waitFor();
+                if (status != 0) {
+                    throw new IllegalStateException("Fork " + fork + " exited with status " + status);
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot start fork " + fork, e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void parse(String[] args) {
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--sizes":
+                    sizes = Arrays.stream(value.split(",")).mapToInt(Integer::parseInt).toArray();
+                    break;
+                case "--queries":
+                    queries = Integer.parseInt(value);
+                    break;
+                case "--warmup":
+                    warmup = Integer.parseInt(value);
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(value);
+                    break;
+                case "--mode":
+                    mode = DistancePrecomputation.Mode.valueOf(value);
+                    break;
+                case "--parallelism":
+                    parallelism = Integer.parseInt(value);
+                    break;
+                case "--memo":
+                    memoScope = ShortestPathFinder.MemoScope.valueOf(value);
+                    break;
+                case "--fallback":
+                    fallback = PointToPointSearch.Strategy.valueOf(value);
+                    break;
+                case "--landmarks":
+                    landmarks = Integer.parseInt(value);
+                    break;
+                case "--stress":
+                    stressThreads = Integer.parseInt(value);
+                    break;
+                case "--metrics":
+                    metrics = Boolean.parseBoolean(value);
+                    break;
+                case "--log-level":
+                    logLevel = Level.parse(value);
+                    break;
+                case "--piece-size":
+                    pieceSize = Integer.parseInt(value);
+                    break;
+                case "--compress":
+                    compress = Boolean.parseBoolean(value);
+                    break;
+                case "--budget-mb":
+                    budgetMegabytes = Double.parseDouble(value);
+                    break;
+                case "--query-log":
+                    queryLog = Paths.get(value);
+                    break;
+                case "--obstacles":
+                    obstacles = Double.parseDouble(value);
+                    break;
+                case "--forks":
+                    forks = Integer.parseInt(value);
+                    break;
+                case "--matrix":
+                    String[] shape = value.split("x");
+                    matrixSources = Integer.parseInt(shape[0]);
+                    matrixTargets = Integer.parseInt(shape[1]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+    }
+
+    private void run() {
+        OUT.printf("%-28s %6s %8s %12s %10s %10s %10s %10s %12s %6s %8s%n",
+                "benchmark", "size", "ops", "ops/s", "p50 us", "p90 us", "p99 us", "max us", "alloc B/op", "gc", "gc ms");
+        if (metrics) {
+            Metrics.global().registerMBean();
+        }
+        for (int size : sizes) {
+            Metrics.global().reset();
+            benchmarkConstruction(size);
+            GridGraph gridGraph = seededGrid(size, size, seed, obstacles);
+            benchmarkPrecomputation(gridGraph);
+            int[][] workload = workload(size);
+            GraphDecomposition decomposition = benchmarkDecomposition(gridGraph, workload);
+            ShortestPathFinder finder = new ShortestPathFinder(decomposition.getDistancePrecomputation(),
+                    decomposition.getMaxLevel(), gridGraph);
+            finder.setMemoScope(memoScope);
+            finder.setFallbackStrategy(fallback);
+            PrecomputationPlanner.Plan plan = decomposition.getDistancePrecomputation().getPlan();
+            if (plan != null) {
+                OUT.printf("%-28s %6d %s%n", "  plan", size,
+                        plan.report(PrecomputationPlanner.measure(finder, workload[0], workload[1])));
+            }
+            DijkstraEngine dijkstraEngine = new DijkstraEngine(gridGraph);
+            ExecutorService executor = parallelism > 1 ? Executors.newFixedThreadPool(parallelism) : null;
+            BatchShortestPathFinder batchFinder = new BatchShortestPathFinder(decomposition.getDistancePrecomputation(),
+                    gridGraph, executor);
+            for (String mix : new String[]{"random", "near", "far"}) {
+                int[][] pairs = queryMix(mix, size, queries + warmup, new Random(seed + mix.hashCode()));
+                finder.resetCounters();
+                measure("query-hierarchical-" + mix, size, pairs, (s, t) -> finder.findShortestPath(s, t));
+                OUT.printf("%-28s %6d sub-queries/op %.1f, memo hits/op %.1f, fallbacks/op %.1f, settled/op %.1f%n",
+                        "  " + memoScope + "/" + fallback, size,
+                        finder.getSubQueryCount() / (double) pairs.length, finder.getMemoHits() / (double) pairs.length,
+                        finder.getDijkstraSearches() / (double) pairs.length, finder.getSettledCount() / (double) pairs.length);
+                measure("query-distance-" + mix, size, pairs, (s, t) -> finder.findDistance(s, t));
+                measure("query-dijkstra-" + mix, size, pairs,
+                        (s, t) -> dijkstraEngine.search(dijkstraEngine.id(s), dijkstraEngine.id(t)));
+                measureBatch("query-batch-" + mix, size, pairs, batchFinder);
+            }
+            if (executor != null) {
+                executor.shutdown();
+            }
+            if (matrixSources > 0) {
+                benchmarkMatrix(size, decomposition.getDistancePrecomputation());
+            }
+            if (stressThreads > 0) {
+                stress(new DistanceOracle(decomposition.snapshot()), size);
+            }
+            if (metrics) {
+                Metrics.global().export(values -> values.forEach((name, value) ->
+                        OUT.printf("%-28s %6d %s %d%n", "  metric", size, name, value)));
+            }
+        }
+        long[] collections = collections();
+        OUT.println("GC: " + collections[0] + " collections, " + collections[1] + " ms total");
+        // Printed so the sink stays live
+        OUT.println("checksum: " + sink);
+    }
+
+    // Level of every logger in org.project for benchmarks and validations, which run at WARNING so
+    // per-region progress stays out of their reports; returns the previous level
+    static Level setProjectLogLevel(Level level) {
+        Level previous = PROJECT_LOGGER.getLevel();
+        PROJECT_LOGGER.setLevel(level);
+        return previous;
+    }
+
+    // Grid weights drawn from a seeded generator, so every run and release sees the same grid
+    static GridGraph seededGrid(int m, int n, long seed) {
+        return seededGrid(m, n, seed, 0);
+    }
+
+    // Same with about obstacleShare of the cells impassable
+    static GridGraph seededGrid(int m, int n, long seed, double obstacleShare) {
+        GridGenerator generator = new GridGenerator(seed);
+        generator.setObstacleShare(obstacleShare);
+        return generator.generate(m, n);
+    }
+
+    private void benchmarkConstruction(int size) {
+        int runs = Math.max(1, (1 << 22) / (size * size));
+        long[] nanos = new long[runs];
+        long[] collections = collections();
+        long allocated = allocatedBytes();
+        for (int i = 0; i < runs; i++) {
+            long start = System.nanoTime();
+            sink ^= seededGrid(size, size, seed + i, obstacles).getN();
+            nanos[i] = System.nanoTime() - start;
+        }
+        report("grid-construction", size, nanos, allocatedBytes() - allocated, collections);
+    }
+
+    private void benchmarkPrecomputation(GridGraph gridGraph) {
+        int m = gridGraph.getM(), n = gridGraph.getN();
+        DistancePrecomputation distancePrecomputation = new DistancePrecomputation(gridGraph, (Connection) null);
+        distancePrecomputation.setMode(mode);
+        int[] subgraph = {0, 0, m - 1, n - 1};
+        List<int[]> separator = new ArrayList<>();
+        for (int x = 0; x < m; x++) {
+            separator.add(new int[]{x, (n - 1) / 2});
+        }
+        long[] collections = collections();
+        long allocated = allocatedBytes();
+        long start = System.nanoTime();
+        quietly(() -> distancePrecomputation.precomputeDistances(0, separator, subgraph));
+        report("precompute-root", m, new long[]{System.nanoTime() - start}, allocatedBytes() - allocated, collections);
+    }
+
+    // Sampled queries {sources, targets} for the planner, null without --budget-mb
+    private int[][] workload(int size) {
+        if (budgetMegabytes < 0) {
+            return null;
+        }
+        if (queryLog != null) {
+            try {
+                return PrecomputationPlanner.readQueries(queryLog, size);
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot read query log " + queryLog, e);
+            }
+        }
+        int[][] pairs = queryMix("random", size, queries, new Random(seed + 1));
+        int[][] workload = new int[2][pairs.length];
+        for (int i = 0; i < pairs.length; i++) {
+            workload[0][i] = pairs[i][0] * size + pairs[i][1];
+            workload[1][i] = pairs[i][2] * size + pairs[i][3];
+        }
+        return workload;
+    }
+
+    private GraphDecomposition benchmarkDecomposition(GridGraph gridGraph, int[][] workload) {
+        DistancePrecomputation distancePrecomputation = new DistancePrecomputation(gridGraph, (Connection) null);
+        distancePrecomputation.setMode(mode);
+        distancePrecomputation.setPieceSize(pieceSize);
+        distancePrecomputation.setCompressTables(compress);
+        if (workload != null) {
+            distancePrecomputation.setWorkload(workload[0], workload[1], (long) (budgetMegabytes * 1e6));
+        }
+        if (fallback == PointToPointSearch.Strategy.ALT) {
+            distancePrecomputation.setLandmarkCount(landmarks);
+        }
+        GraphDecomposition decomposition = new GraphDecomposition(gridGraph, null, parallelism, distancePrecomputation);
+        long[] collections = collections();
+        long allocated = allocatedBytes();
+        long start = System.nanoTime();
+        quietly(decomposition::decompose);
+        report("decompose", gridGraph.getM(), new long[]{System.nanoTime() - start}, allocatedBytes() - allocated, collections);
+        BoundaryTables boundaryTables = distancePrecomputation.getBoundaryTables();
+        if (boundaryTables != null) {
+            OUT.printf("%-28s %6d pieces of side <= %d, %d boundary cells, %.1f MB of tables, %.1f MB held%n", "  boundary-tables",
+                    gridGraph.getM(), pieceSize, boundaryTables.getBoundaryCount(), boundaryTables.getTableBytes() / 1e6,
+                    boundaryTables.getHeldBytes() / 1e6);
+        }
+        return decomposition;
+    }
+
+    private interface Query {
+        int run(int[] source, int[] target);
+    }
+
+    private void measure(String name, int size, int[][] pairs, Query query) {
+        for (int i = 0; i < warmup; i++) {
+            int[] pair = pairs[i];
+            quietly(() -> query.run(new int[]{pair[0], pair[1]}, new int[]{pair[2], pair[3]}));
+        }
+        long[] nanos = new long[queries];
+        int[][] sources = new int[queries][];
+        int[][] targets = new int[queries][];
+        for (int i = 0; i < queries; i++) {
+            int[] pair = pairs[warmup + i];
+            sources[i] = new int[]{pair[0], pair[1]};
+            targets[i] = new int[]{pair[2], pair[3]};
+        }
+        System.setOut(NULL);
+        long[] collections = collections();
+        long allocated = allocatedBytes();
+        try {
+            for (int i = 0; i < queries; i++) {
+                long start = System.nanoTime();
+                sink ^= query.run(sources[i], targets[i]);
+                nanos[i] = System.nanoTime() - start;
+            }
+        } finally {
+            System.setOut(OUT);
+        }
+        report(name, size, nanos, allocatedBytes() - allocated, collections);
+    }
+
+    // Each sample is one whole batch, reported as the time per query within it
+    private void measureBatch(String name, int size, int[][] pairs, BatchShortestPathFinder batchFinder) {
+        int[] sources = new int[pairs.length];
+        int[] targets = new int[pairs.length];
+        for (int i = 0; i < pairs.length; i++) {
+            sources[i] = pairs[i][0] * size + pairs[i][1];
+            targets[i] = pairs[i][2] * size + pairs[i][3];
+        }
+        batchFinder.findDistances(sources, targets, null);
+        int runs = 5;
+        long[] nanos = new long[runs];
+        long[] collections = collections();
+        long allocated = allocatedBytes();
+        for (int i = 0; i < runs; i++) {
+            long start = System.nanoTime();
+            sink ^= batchFinder.findDistances(sources, targets, null)[0];
+            nanos[i] = (System.nanoTime() - start) / pairs.length;
+        }
+        allocated = allocatedBytes() - allocated;
+        long[] perQuery = new long[runs * pairs.length];
+        for (int i = 0; i < perQuery.length; i++) {
+            perQuery[i] = nanos[i / pairs.length];
+        }
+        report(name, size, perQuery, allocated, collections);
+    }
+
+    private void benchmarkMatrix(int size, DistancePrecomputation distancePrecomputation) {
+        Random random = new Random(seed);
+        int[] sources = random.ints(matrixSources, 0, size * size).toArray();
+        int[] targets = random.ints(matrixTargets, 0, size * size).toArray();
+        DistanceMatrix gridSearches = new DistanceMatrix(distancePrecomputation.getGridGraph(), null);
+        measureMatrix("matrix-" + matrixSources + "x" + matrixTargets, size, sources.length * targets.length,
+                () -> distancePrecomputation.distanceMatrix(sources, targets));
+        measureMatrix("matrix-grid-searches", size, sources.length * targets.length,
+                () -> gridSearches.compute(sources, targets));
+    }
+
+    // Each sample is one whole matrix, reported as the time per entry within it
+    private void measureMatrix(String name, int size, int entries, Supplier<int[]> matrix) {
+        matrix.get();
+        int runs = 3;
+        long[] nanos = new long[runs];
+        long[] collections = collections();
+        long allocated = allocatedBytes();
+        for (int i = 0; i < runs; i++) {
+            long start = System.nanoTime();
+            sink ^= matrix.get()[0];
+            nanos[i] = (System.nanoTime() - start) / entries;
+        }
+        allocated = allocatedBytes() - allocated;
+        long[] perEntry = new long[runs * entries];
+        for (int i = 0; i < perEntry.length; i++) {
+            perEntry[i] = nanos[i / entries];
+        }
+        report(name, size, perEntry, allocated, collections);
+    }
+
+    // Every thread answers the same number of random queries against one shared oracle; with linear
+    // scaling the throughput grows with the thread count up to the number of cores
+    private void stress(DistanceOracle oracle, int size) {
+        int[][] pairs = queryMix("random", size, queries, new Random(seed));
+        for (int threads = 1; threads <= stressThreads; threads *= 2) {
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            List<Callable<Void>> workers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int offset = t;
+                workers.add(() -> {
+                    for (int i = 0; i < pairs.length; i++) {
+                        int[] pair = pairs[(i + offset) % pairs.length];
+                        oracle.findDistance(pair[0] * size + pair[1], pair[2] * size + pair[3]);
+                    }
+                    return null;
+                });
+            }
+            long start = System.nanoTime();
+            try {
+                for (Future<Void> future : pool.invokeAll(workers)) {
+                    future.get();
+                }
+            } catch (InterruptedException | ExecutionException e) {
+                throw new IllegalStateException("Stress run failed", e);
+            } finally {
+                pool.shutdown();
+            }
+            long nanos = System.nanoTime() - start;
+            long ops = (long) threads * pairs.length;
+            OUT.printf("%-28s %6d %8d %12.1f%n", "stress-" + threads + "-threads", size, ops, ops * 1e9 / nanos);
+        }
+    }
+
+    // random: uniform pairs; near: target within 8 cells of source; far: opposite corner quadrants
+    static int[][] queryMix(String mix, int size, int count, Random random) {
+        int[][] pairs = new int[count][];
+        int quarter = Math.max(1, size / 4);
+        for (int i = 0; i < count; i++) {
+            int sx, sy, tx, ty;
+            switch (mix) {
+                case "near":
+                    sx = random.nextInt(size);
+                    sy = random.nextInt(size);
+                    tx = Math.max(0, Math.min(size - 1, sx + random.nextInt(17) - 8));
+                    ty = Math.max(0, Math.min(size - 1, sy + random.nextInt(17) - 8));
+                    break;
+                case "far":
+                    sx = random.nextInt(quarter);
+                    sy = random.nextInt(quarter);
+                    tx = size - 1 - random.nextInt(quarter);
+                    ty = size - 1 - random.nextInt(quarter);
+                    break;
+                default:
+                    sx = random.nextInt(size);
+                    sy = random.nextInt(size);
+                    tx = random.nextInt(size);
+                    ty = random.nextInt(size);
+            }
+            pairs[i] = new int[]{sx, sy, tx, ty};
+        }
+        return pairs;
+    }
+
+    private static void quietly(Runnable work) {
+        System.setOut(NULL);
+        System.setErr(NULL);
+        try {
+            work.run();
+        } finally {
+            System.setOut(OUT);
+            System.setErr(ERR);
+        }
+    }
+
+    // {collections, milliseconds collecting} of every collector so far
+    private static long[] collections() {
+        long[] collections = new long[2];
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            collections[0] += collector.getCollectionCount();
+            collections[1] += collector.getCollectionTime();
+        }
+        return collections;
+    }
+
+    private static long allocatedBytes() {
+        return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static void report(String name, int size, long[] nanos, long allocatedBytes, long[] collectionsBefore) {
+        long[] collections = collections();
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        long total = 0;
+        for (long nano : sorted) {
+            total += nano;
+        }
+        OUT.printf("%-28s %6d %8d %12.1f %10.1f %10.1f %10.1f %10.1f %12d %6d %8d%n",
+                name, size, sorted.length, sorted.length * 1e9 / Math.max(1, total),
+                percentile(sorted, 0.50), percentile(sorted, 0.90), percentile(sorted, 0.99),
+                sorted[sorted.length - 1] / 1e3, allocatedBytes / sorted.length,
+                collections[0] - collectionsBefore[0], collections[1] - collectionsBefore[1]);
+    }
+
+    private static double percentile(long[] sorted, double fraction) {
+        int index = (int) Math.ceil(fraction * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))] / 1e3;
+    }
+}
@@ -0,0 +1,81 @@
+package org.project;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Grid weights in a file of their own that is mapped rather than read, so grids larger than the heap
+// can be built and decomposed. The weights stay in the page cache. Since the decomposition passes only
+// rectangle bounds down, each region's searches fault in just the rows of its own rectangle while it
+// is processed, and the kernel evicts them again under memory pressure.
+//
+// Only the weights leave the heap. Grids are still limited to DistanceTable.MAX_VERTICES (2^29) cells,
+// about 23000 x 23000, and every DijkstraEngine or PointToPointSearch holds int arrays the size of the
+// whole grid (about 24 bytes per cell for a DijkstraEngine), one set per searching thread. A 50000 x
+// 50000 grid does not fit.
+//
+// Layout (little-endian): header (64 bytes): magic, version, m, n, weight width; then the
+// m * n * 4 per-direction edge weights in the order GridGraph stores them.
+public class GridFile {
+    public static final int MAGIC = 0x44524747; // "GGRD"
+    public static final int VERSION = 1;
+
+    private static final int HEADER_BYTES = 64;
+
+    // New file for an m x n grid with every edge missing, mapped read-write: weights set on the
+    // returned grid (e.g. tile by tile from a generator) are written straight into the file
+    public static GridGraph create(Path path, int m, int n, int maxWeight) throws IOException {
+        int width = EdgeWeights.widthFor(maxWeight);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(m).putInt(n).putInt(width).position(HEADER_BYTES).flip();
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            return new GridGraph(m, n, mapWeights(channel, FileChannel.MapMode.READ_WRITE, HEADER_BYTES, m, n, width));
+        }
+    }
+
+    // Copy of an existing grid into a new file, mapped read-write like create
+    public static GridGraph write(Path path, GridGraph gridGraph) throws IOException {
+        EdgeWeights weights = gridGraph.getEdgeWeights();
+        GridGraph copy = create(path, gridGraph.getM(), gridGraph.getN(), weights.maxWeight());
+        EdgeWeights target = copy.getEdgeWeights();
+        for (long i = 0; i < weights.size(); i++) {
+            target.set(i, weights.get(i));
+        }
+        return copy;
+    }
+
+    // Map an existing file read-only
+    public static GridGraph open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt(0) != MAGIC) {
+                throw new IOException("Not a grid file: " + path);
+            }
+            if (header.getInt(4) != VERSION) {
+                throw new IOException("Unsupported grid file version " + header.getInt(4) + " in " + path);
+            }
+            int m = header.getInt(8), n = header.getInt(12), width = header.getInt(16);
+            return new GridGraph(m, n, mapWeights(channel, FileChannel.MapMode.READ_ONLY, HEADER_BYTES, m, n, width));
+        }
+    }
+
+    // Weights section at offset, mapped in 1 GB windows so grids beyond 2 GB of weights still load
+    static EdgeWeights mapWeights(FileChannel channel, FileChannel.MapMode mode, long offset, int m, int n, int width) throws IOException {
+        long weightCount = (long) m * n * GridGraph.DIRECTIONS;
+        long weightBytes = weightCount * width;
+        long chunkBytes = EdgeWeights.chunkBytes();
+        ByteBuffer[] chunks = new ByteBuffer[(int) Math.max(1, (weightBytes + chunkBytes - 1) / chunkBytes)];
+        for (int i = 0; i < chunks.length; i++) {
+            long start = i * chunkBytes;
+            chunks[i] = channel.map(mode, offset + start, Math.min(chunkBytes, weightBytes - start)).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        return EdgeWeights.wrap(chunks, weightCount, width);
+    }
+}
@@ -0,0 +1,97 @@
+package org.project;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.function.IntUnaryOperator;
+
+// Seeded synthetic cost maps for benchmarks. Every cell gets a weight in 1..maxWeight drawn from a
+// hash of (seed, x, y); with an obstacle share above zero, smooth blobs of impassable cells covering
+// about that share of the grid are laid over it: cells where value noise on a lattice of
+// obstacleScale cells falls below the share's quantile, estimated from a sample of cells.
+// Cells depend only on their coordinates, so rows are generated in parallel stripes like
+// GridLoader's and the same seed always gives the same grid.
+public class GridGenerator {
+    private final long seed;
+    private int maxWeight = 2;
+    private double obstacleShare;
+    private int obstacleScale = 16;
+    private boolean offHeap;
+
+    public GridGenerator(long seed) {
+        this.seed = seed;
+    }
+
+    public void setMaxWeight(int maxWeight) {
+        this.maxWeight = maxWeight;
+    }
+
+    // Fraction (0..1) of cells to block, approximately
+    public void setObstacleShare(double obstacleShare) {
+        this.obstacleShare = obstacleShare;
+    }
+
+    // Typical obstacle diameter in cells
+    public void setObstacleScale(int obstacleScale) {
+        this.obstacleScale = obstacleScale;
+    }
+
+    public void setOffHeap(boolean offHeap) {
+        this.offHeap = offHeap;
+    }
+
+    public GridGraph generate(int m, int n) {
+        double threshold = obstacleThreshold(m, n);
+        try {
+            return GridLoader.build(m, n, maxWeight, offHeap, IntUnaryOperator.identity(), (x, values) -> {
+                for (int y = 0; y < n; y++) {
+                    values[y] = obstacleShare > 0 && noise(x, y) < threshold
+                            ? GridGraph.NO_EDGE
+                            : 1 + (int) ((hash(seed, x, y) >>> 1) % maxWeight);
+                }
+            });
+        } catch (IOException e) {
+            // Generated rows are never read from a file
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Noise value below which obstacleShare of a fixed sample of cells lies; -1 without obstacles
+    private double obstacleThreshold(int m, int n) {
+        if (obstacleShare <= 0) {
+            return -1;
+        }
+        double[] sample = new double[4096];
+        for (int i = 0; i < sample.length; i++) {
+            long h = hash(seed, i, -1);
+            sample[i] = noise((int) Long.remainderUnsigned(h, m), (int) Long.remainderUnsigned(h >>> 32, n));
+        }
+        Arrays.sort(sample);
+        return sample[Math.min(sample.length - 1, (int) (obstacleShare * sample.length))];
+    }
+
+    // Bilinear value noise in [0, 1), smoothed across lattice cells
+    private double noise(int x, int y) {
+        int cx = Math.floorDiv(x, obstacleScale), cy = Math.floorDiv(y, obstacleScale);
+        double fx = smooth((x - cx * obstacleScale) / (double) obstacleScale);
+        double fy = smooth((y - cy * obstacleScale) / (double) obstacleScale);
+        double top = lattice(cx, cy) * (1 - fy) + lattice(cx, cy + 1) * fy;
+        double bottom = lattice(cx + 1, cy) * (1 - fy) + lattice(cx + 1, cy + 1) * fy;
+        return top * (1 - fx) + bottom * fx;
+    }
+
+    private static double smooth(double t) {
+        return t * t * (3 - 2 * t);
+    }
+
+    private double lattice(int x, int y) {
+        return (hash(~seed, x, y) >>> 11) * 0x1.0p-53;
+    }
+
+    // SplitMix64 finalizer over the seed and coordinates
+    private static long hash(long seed, int x, int y) {
+        long z = seed + 0x9E3779B97F4A7C15L * (((long) x << 32) ^ (y & 0xFFFFFFFFL)) + 0x632BE59BD9B4E019L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -2,24 +2,82 @@ package org.project;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 public class GridGraph {
+    private static final Logger LOGGER = Logger.getLogger(GridGraph.class.getName());
+
+    // Edge directions, stored per vertex in this order: E (y + 1), S (x + 1), W (y - 1), N (x - 1)
+    public static final int EAST = 0;
+    public static final int SOUTH = 1;
+    public static final int WEST = 2;
+    public static final int NORTH = 3;
+    public static final int DIRECTIONS = 4;
+    // Stored weight of a missing edge (grid border)
+    public static final int NO_EDGE = 0;
+
     private int m, n;
-    private int[][] grid;
+    private EdgeWeights weights;
+    private int[] offsets;
+    // Lower bound on every edge weight; -1 until computed for wrapped storage
+    private int minEdgeWeight;
 
     public GridGraph(int m, int n) {
+        this(m, n, 2, false);
+        initializeGraph();
+    }
+
+    // Create a grid whose edges are all missing; weights up to maxWeight are set with setEdgeWeight
+    // or setCellWeight. offHeap keeps the weights in direct buffers instead of a heap array.
+    public GridGraph(int m, int n, int maxWeight, boolean offHeap) {
         this.m = m;
         this.n = n;
-        this.grid = new int[m][n];
-        initializeGraph();
+        this.weights = EdgeWeights.allocate((long) m * n * DIRECTIONS, maxWeight, offHeap);
+        this.offsets = new int[]{1, n, -1, -n};
+        this.minEdgeWeight = Integer.MAX_VALUE;
+    }
+
+    // Wrap existing weight storage holding m * n * 4 per-direction weights
+    public GridGraph(int m, int n, EdgeWeights weights) {
+        this.m = m;
+        this.n = n;
+        this.weights = weights;
+        this.offsets = new int[]{1, n, -1, -n};
+        this.minEdgeWeight = -1;
+    }
+
+    // Copy-on-write batch update: a new grid with cells[i] = {x, y} given weights[i]. Weight 0 blocks
+    // the cell as setBlocked does; any other weight opens it as openCell does. This grid is left
+    // untouched, so queries still running on it stay consistent; the new one shares its weights
+    // except for the pages the batch writes (see EdgeWeights.copyOnWrite), so this grid must not be
+    // written afterwards.
+    public GridGraph withCellWeights(int[][] cells, int[] weights) {
+        if (cells.length != weights.length) {
+            throw new IllegalArgumentException("Got " + cells.length + " cells but " + weights.length + " weights");
+        }
+        int maxWeight = 1;
+        for (int weight : weights) {
+            maxWeight = Math.max(maxWeight, weight);
+        }
+        GridGraph updated = new GridGraph(m, n, this.weights.copyOnWrite(maxWeight));
+        updated.minEdgeWeight = minEdgeWeight;
+        for (int i = 0; i < cells.length; i++) {
+            if (weights[i] == NO_EDGE) {
+                updated.setBlocked(cells[i][0], cells[i][1]);
+            } else {
+                updated.openCell(cells[i][0], cells[i][1], weights[i]);
+            }
+        }
+        return updated;
     }
 
-    // Initialize the grid with default edge weights (e.g., all weights set to 1)
+    // Initialize the grid with random cell weights; every outgoing edge of a cell shares its weight
     private void initializeGraph() {
         for (int i = 0; i < m; i++) {
             for (int j = 0; j < n; j++) {
                 // Generate random weight between 0 and 2 (exclusive) but greater than 0
-                grid[i][j] = 1+((int) (0.1 + (Math.random() * 1.9)));  // Math.random() generates a value between 0.0 and 1.0
+                setCellWeight(i, j, 1+((int) (0.1 + (Math.random() * 1.9))));  // Math.random() generates a value between 0.0 and 1.0
             }
         }
     }
@@ -34,6 +92,25 @@ public class GridGraph {
         return n;
     }
 
+    public EdgeWeights getEdgeWeights() {
+        return weights;
+    }
+
+    // Smallest weight of any edge (a lower bound once weights have been raised again)
+    public int getMinEdgeWeight() {
+        if (minEdgeWeight < 0) {
+            int min = Integer.MAX_VALUE;
+            for (long i = 0; i < weights.size(); i++) {
+                int weight = weights.get(i);
+                if (weight != NO_EDGE && weight < min) {
+                    min = weight;
+                }
+            }
+            minEdgeWeight = min;
+        }
+        return minEdgeWeight;
+    }
+
     // Simulating edges in a grid for testing purposes
     public List<int[]> getNeighbors(int x, int y) {
         List<int[]> neighbors = new ArrayList<>();
@@ -44,24 +121,175 @@ public class GridGraph {
         return neighbors;
     }
 
+    // Bulk neighbor iteration for search loops: writes the ids (x * n + y) and weights of the
+    // outgoing edges of vertex into the given arrays (length >= 4) and returns how many there are
+    public int neighbors(int vertex, int[] targets, int[] edgeWeights) {
+        long base = (long) vertex * DIRECTIONS;
+        int count = 0;
+        for (int direction = 0; direction < DIRECTIONS; direction++) {
+            int weight = weights.get(base + direction);
+            if (weight != NO_EDGE) {
+                targets[count] = vertex + offsets[direction];
+                edgeWeights[count] = weight;
+                count++;
+            }
+        }
+        return count;
+    }
+
     // Method to get the weight of the edge between two vertices
     public int getEdgeWeight(int x1, int y1, int x2, int y2) {
-        if (Math.abs(x1 - x2) + Math.abs(y1 - y2) == 1) {
-            return (int) grid[x1][y1];  // Cast to int if grid stores decimal weights
-        } else {
-            // If the vertices are not adjacent, return a very high number to indicate no direct edge
-            return Integer.MAX_VALUE;  // Alternatively, you can throw an exception if needed
+        int direction = direction(x1, y1, x2, y2);
+        if (direction >= 0) {
+            int weight = weights.get(((long) x1 * n + y1) * DIRECTIONS + direction);
+            if (weight != NO_EDGE) {
+                return weight;
+            }
         }
+        // If the vertices are not adjacent, return a very high number to indicate no direct edge
+        return Integer.MAX_VALUE;
+    }
+
+    // Raw stored weight of the edge leaving vertex in the given direction, NO_EDGE if absent
+    public int getEdgeWeight(int vertex, int direction) {
+        return weights.get((long) vertex * DIRECTIONS + direction);
     }
 
+    public void setEdgeWeight(int x, int y, int direction, int weight) {
+        int nx = x + (direction == SOUTH ? 1 : direction == NORTH ? -1 : 0);
+        int ny = y + (direction == EAST ? 1 : direction == WEST ? -1 : 0);
+        if (nx < 0 || nx >= m || ny < 0 || ny >= n) {
+            throw new IllegalArgumentException("No edge leaves (" + x + ", " + y + ") in direction " + direction);
+        }
+        weights.set(((long) x * n + y) * DIRECTIONS + direction, weight);
+        lowerMinEdgeWeight(weight);
+    }
 
-    // Printing the grid (optional for debugging)
+    // Give every outgoing edge of the cell the same weight (the original cell-weight model)
+    public void setCellWeight(int x, int y, int weight) {
+        long base = ((long) x * n + y) * DIRECTIONS;
+        weights.set(base + EAST, y < n - 1 ? weight : NO_EDGE);
+        weights.set(base + SOUTH, x < m - 1 ? weight : NO_EDGE);
+        weights.set(base + WEST, y > 0 ? weight : NO_EDGE);
+        weights.set(base + NORTH, x > 0 ? weight : NO_EDGE);
+        lowerMinEdgeWeight(weight);
+    }
+
+    // Bulk form of setCellWeight for row x, given the cell weights of rows x - 1 and x + 1 as well (null
+    // outside the grid). A cell of weight 0 is impassable: no edge leaves it and none enters it. Each
+    // call writes only row x, so stripes of rows can be set from several threads; the smallest weight
+    // is not tracked and must be passed to lowerMinEdgeWeight afterwards.
+    void setRowWeights(int x, int[] above, int[] row, int[] below) {
+        long base = (long) x * n * DIRECTIONS;
+        for (int y = 0; y < n; y++, base += DIRECTIONS) {
+            int weight = row[y];
+            boolean open = weight != NO_EDGE;
+            weights.set(base + EAST, open && y < n - 1 && row[y + 1] != NO_EDGE ? weight : NO_EDGE);
+            weights.set(base + SOUTH, open && below != null && below[y] != NO_EDGE ? weight : NO_EDGE);
+            weights.set(base + WEST, open && y > 0 && row[y - 1] != NO_EDGE ? weight : NO_EDGE);
+            weights.set(base + NORTH, open && above != null && above[y] != NO_EDGE ? weight : NO_EDGE);
+        }
+    }
+
+    // Make the cell impassable: its own edges and its neighbors' edges into it are removed
+    public void setBlocked(int x, int y) {
+        setCellWeight(x, y, NO_EDGE);
+        int vertex = x * n + y;
+        for (int direction = 0; direction < DIRECTIONS; direction++) {
+            if (hasNeighbor(x, y, direction)) {
+                weights.set((long) (vertex + offsets[direction]) * DIRECTIONS + (direction + 2) % DIRECTIONS, NO_EDGE);
+            }
+        }
+    }
+
+    // Give the cell a positive weight the way setRowWeights does: no edge enters a blocked neighbour
+    // (one no edge leaves). The edges of the other neighbours into the cell, removed if it was
+    // blocked, come back with the neighbour's cell weight.
+    void openCell(int x, int y, int weight) {
+        int vertex = x * n + y;
+        long base = (long) vertex * DIRECTIONS;
+        for (int direction = 0; direction < DIRECTIONS; direction++) {
+            if (!hasNeighbor(x, y, direction)) {
+                weights.set(base + direction, NO_EDGE);
+                continue;
+            }
+            int neighbor = vertex + offsets[direction];
+            int neighborWeight = getCellWeight(neighbor / n, neighbor % n);
+            weights.set(base + direction, neighborWeight != NO_EDGE ? weight : NO_EDGE);
+            long into = (long) neighbor * DIRECTIONS + (direction + 2) % DIRECTIONS;
+            if (neighborWeight != NO_EDGE && weights.get(into) == NO_EDGE) {
+                weights.set(into, neighborWeight);
+            }
+        }
+        lowerMinEdgeWeight(weight);
+    }
+
+    // True if no edge leaves or enters the vertex, so no path passes through it
+    public boolean isBlocked(int vertex) {
+        int x = vertex / n, y = vertex % n;
+        for (int direction = 0; direction < DIRECTIONS; direction++) {
+            if (hasNeighbor(x, y, direction) && (weights.get((long) vertex * DIRECTIONS + direction) != NO_EDGE
+                    || weights.get((long) (vertex + offsets[direction]) * DIRECTIONS + (direction + 2) % DIRECTIONS) != NO_EDGE)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean hasNeighbor(int x, int y, int direction) {
+        switch (direction) {
+            case EAST:
+                return y < n - 1;
+            case SOUTH:
+                return x < m - 1;
+            case WEST:
+                return y > 0;
+            default:
+                return x > 0;
+        }
+    }
+
+    void lowerMinEdgeWeight(int weight) {
+        if (weight != NO_EDGE && minEdgeWeight >= 0 && weight < minEdgeWeight) {
+            minEdgeWeight = weight;
+        }
+    }
+
+    // Largest outgoing edge weight of the cell
+    public int getCellWeight(int x, int y) {
+        long base = ((long) x * n + y) * DIRECTIONS;
+        int weight = NO_EDGE;
+        for (int direction = 0; direction < DIRECTIONS; direction++) {
+            weight = Math.max(weight, weights.get(base + direction));
+        }
+        return weight;
+    }
+
+    // Direction of the edge from (x1, y1) to (x2, y2), or -1 if the cells are not adjacent
+    private int direction(int x1, int y1, int x2, int y2) {
+        if (x1 == x2) {
+            if (y2 == y1 + 1) return EAST;
+            if (y2 == y1 - 1) return WEST;
+        } else if (y1 == y2) {
+            if (x2 == x1 + 1) return SOUTH;
+            if (x2 == x1 - 1) return NORTH;
+        }
+        return -1;
+    }
+
+
+    // Log the cell weights row by row at FINE (for debugging); nothing is built below that level
     public void printGrid() {
+        if (!LOGGER.isLoggable(Level.FINE)) {
+            return;
+        }
+        StringBuilder grid = new StringBuilder("Cell weights of the " + m + "x" + n + " grid:");
         for (int i = 0; i < m; i++) {
+            grid.append(System.lineSeparator());
             for (int j = 0; j < n; j++) {
-                System.out.print(grid[i][j] + " ");
+                grid.append(getCellWeight(i, j)).append(' ');
             }
-            System.out.println();
         }
+        LOGGER.fine(grid.toString());
     }
 }
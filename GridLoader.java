@@ -0,0 +1,195 @@
+package org.project;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.IntStream;
+import javax.imageio.ImageIO;
+
+// Bulk loaders for cost maps: raw little-endian rasters, PGM files and any image ImageIO reads (PNG,
+// ...). Every pixel is one cell, row x of the raster being row x of the grid, and toWeight turns its
+// value into the cell weight shared by the cell's outgoing edges; weight 0 makes the cell impassable.
+// Rows are decoded in stripes on the common pool, each stripe reading its rows (plus one on either side,
+// for the edges into impassable cells) with positional reads on one shared channel and writing them
+// with GridGraph.setRowWeights, so a load costs a few passes over the file rather than one setter
+// call per edge.
+public class GridLoader {
+    private static final int STRIPE_ROWS = 64;
+
+    // Reads the raw values of row x; called from several threads at once, for different rows
+    interface RowReader {
+        void read(int x, int[] values) throws IOException;
+    }
+
+    // m rows of n cells of bytesPerCell (1, 2 or 4) unsigned little-endian bytes each, starting
+    // headerBytes into the file. 4-byte values above Integer.MAX_VALUE are rejected.
+    public static GridGraph readRaw(Path path, int m, int n, int bytesPerCell, long headerBytes,
+                                    IntUnaryOperator toWeight, int maxWeight, boolean offHeap) throws IOException {
+        if (bytesPerCell != 1 && bytesPerCell != 2 && bytesPerCell != 4) {
+            throw new IllegalArgumentException("bytesPerCell must be 1, 2 or 4: " + bytesPerCell);
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long expected = headerBytes + (long) m * n * bytesPerCell;
+            if (channel.size() < expected) {
+                throw new IOException(path + " holds " + channel.size() + " bytes, expected " + expected);
+            }
+            return build(m, n, maxWeight, offHeap, toWeight,
+                    channelRows(channel, headerBytes, n, bytesPerCell, ByteOrder.LITTLE_ENDIAN));
+        }
+    }
+
+    // Raw raster holding the weights themselves
+    public static GridGraph readRaw(Path path, int m, int n, int bytesPerCell, int maxWeight, boolean offHeap) throws IOException {
+        return readRaw(path, m, n, bytesPerCell, 0, IntUnaryOperator.identity(), maxWeight, offHeap);
+    }
+
+    // Binary PGM (P5): one byte per pixel up to a maxval of 255, else two bytes big-endian.
+    // maxWeight bounds toWeight over 0..maxval.
+    public static GridGraph readPgm(Path path, IntUnaryOperator toWeight, int maxWeight, boolean offHeap) throws IOException {
+        return loadPgm(path, toWeight, maxWeight, offHeap);
+    }
+
+    // PGM whose gray levels are the weights, black cells impassable
+    public static GridGraph readPgm(Path path, boolean offHeap) throws IOException {
+        return loadPgm(path, null, 0, offHeap);
+    }
+
+    // Without toWeight the gray levels are the weights, bounded by the file's maxval
+    private static GridGraph loadPgm(Path path, IntUnaryOperator toWeight, int maxWeight, boolean offHeap) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate((int) Math.min(channel.size(), 1024));
+            channel.read(header, 0);
+            header.flip();
+            if (!"P5".equals(pgmToken(header, path))) {
+                throw new IOException("Not a binary PGM (P5) file: " + path);
+            }
+            int n = Integer.parseInt(pgmToken(header, path));
+            int m = Integer.parseInt(pgmToken(header, path));
+            int maxValue = Integer.parseInt(pgmToken(header, path));
+            // A single whitespace byte separates the header from the pixels
+            long offset = header.position() + 1;
+            int bytesPerCell = maxValue < 256 ? 1 : 2;
+            long expected = offset + (long) m * n * bytesPerCell;
+            if (channel.size() < expected) {
+                throw new IOException(path + " holds " + channel.size() + " bytes, expected " + expected);
+            }
+            return build(m, n, toWeight == null ? maxValue : maxWeight, offHeap,
+                    toWeight == null ? IntUnaryOperator.identity() : toWeight,
+                    channelRows(channel, offset, n, bytesPerCell, ByteOrder.BIG_ENDIAN));
+        }
+    }
+
+    // Any image ImageIO can decode; the value of a pixel is its first band (the gray level of
+    // grayscale images, red otherwise). Decoding itself is sequential, only the rows are set in parallel.
+    public static GridGraph readImage(Path path, IntUnaryOperator toWeight, int maxWeight, boolean offHeap) throws IOException {
+        BufferedImage image = ImageIO.read(path.toFile());
+        if (image == null) {
+            throw new IOException("No image reader for " + path);
+        }
+        Raster raster = image.getRaster();
+        int width = image.getWidth();
+        return build(image.getHeight(), width, maxWeight, offHeap, toWeight, (x, values) -> raster.getSamples(0, x, width, 1, 0, values));
+    }
+
+    // Grid of m x n cells whose raw values come from rows, in parallel stripes
+    static GridGraph build(int m, int n, int maxWeight, boolean offHeap, IntUnaryOperator toWeight, RowReader rows) throws IOException {
+        GridGraph gridGraph = new GridGraph(m, n, maxWeight, offHeap);
+        int stripes = (m + STRIPE_ROWS - 1) / STRIPE_ROWS;
+        int[] minimums = new int[stripes];
+        try {
+            IntStream.range(0, stripes).parallel().forEach(stripe -> {
+                int first = stripe * STRIPE_ROWS, last = Math.min(m, first + STRIPE_ROWS) - 1;
+                int[] above = first > 0 ? readWeights(rows, first - 1, n, toWeight) : null;
+                int[] row = readWeights(rows, first, n, toWeight);
+                int minimum = Integer.MAX_VALUE;
+                for (int x = first; x <= last; x++) {
+                    int[] below = x < m - 1 ? readWeights(rows, x + 1, n, toWeight) : null;
+                    gridGraph.setRowWeights(x, above, row, below);
+                    for (int weight : row) {
+                        if (weight != GridGraph.NO_EDGE && weight < minimum) {
+                            minimum = weight;
+                        }
+                    }
+                    above = row;
+                    row = below;
+                }
+                minimums[stripe] = minimum;
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        for (int minimum : minimums) {
+            if (minimum != Integer.MAX_VALUE) {
+                gridGraph.lowerMinEdgeWeight(minimum);
+            }
+        }
+        return gridGraph;
+    }
+
+    private static int[] readWeights(RowReader rows, int x, int n, IntUnaryOperator toWeight) {
+        int[] values = new int[n];
+        try {
+            rows.read(x, values);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        for (int y = 0; y < n; y++) {
+            values[y] = toWeight.applyAsInt(values[y]);
+        }
+        return values;
+    }
+
+    // Rows of unsigned cells read with positional reads, so one channel serves every stripe
+    private static RowReader channelRows(FileChannel channel, long offset, int n, int bytesPerCell, ByteOrder order) {
+        ThreadLocal<ByteBuffer> buffers = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(n * bytesPerCell).order(order));
+        return (x, values) -> {
+            ByteBuffer buffer = buffers.get();
+            buffer.clear();
+            long position = offset + (long) x * n * bytesPerCell;
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new IOException("Unexpected end of file in row " + x);
+                }
+            }
+            buffer.flip();
+            for (int y = 0; y < n; y++) {
+                values[y] = bytesPerCell == 1 ? buffer.get() & 0xFF
+                        : bytesPerCell == 2 ? buffer.getShort() & 0xFFFF : buffer.getInt();
+                // An unsigned 4-byte value above Integer.MAX_VALUE reads as negative
+                if (values[y] < 0) {
+                    throw new IOException("Cell (" + x + ", " + y + ") holds " + Integer.toUnsignedString(values[y])
+                            + ", above the largest weight " + Integer.MAX_VALUE);
+                }
+            }
+        };
+    }
+
+    // Next whitespace-separated header token, skipping '#' comments to the end of their line
+    private static String pgmToken(ByteBuffer header, Path path) throws IOException {
+        StringBuilder token = new StringBuilder();
+        while (header.hasRemaining()) {
+            char c = (char) (header.get() & 0xFF);
+            if (c == '#' && token.length() == 0) {
+                while (header.hasRemaining() && header.get() != '\n') {
+                    // skip the comment
+                }
+            } else if (Character.isWhitespace(c)) {
+                if (token.length() > 0) {
+                    // Leave the whitespace after the last token for the caller to skip
+                    header.position(header.position() - 1);
+                    return token.toString();
+                }
+            } else {
+                token.append(c);
+            }
+        }
+        throw new IOException("Truncated PGM header in " + path);
+    }
+}
@@ -0,0 +1,109 @@
+package org.project;
+
+import java.util.Arrays;
+
+// Binary min-heap over vertex ids 0..capacity-1 with decrease-key. Positions are tracked in
+// a primitive array so the heap never boxes or allocates once it has been created.
+public class IndexedMinHeap {
+    private final int[] heap;
+    private final int[] keys;
+    private final int[] position;
+    private int size;
+
+    public IndexedMinHeap(int capacity) {
+        this.heap = new int[capacity];
+        this.keys = new int[capacity];
+        this.position = new int[capacity];
+        Arrays.fill(position, -1);
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(int vertex) {
+        return position[vertex] >= 0;
+    }
+
+    public int peekKey() {
+        return keys[heap[0]];
+    }
+
+    // Insert the vertex, or lower its key if it is already queued with a larger one
+    public void insertOrDecrease(int vertex, int key) {
+        int pos = position[vertex];
+        if (pos < 0) {
+            pos = size++;
+            heap[pos] = vertex;
+            position[vertex] = pos;
+            keys[vertex] = key;
+            siftUp(pos);
+        } else if (key < keys[vertex]) {
+            keys[vertex] = key;
+            siftUp(pos);
+        }
+    }
+
+    public int poll() {
+        int top = heap[0];
+        position[top] = -1;
+        size--;
+        if (size > 0) {
+            int last = heap[size];
+            heap[0] = last;
+            position[last] = 0;
+            siftDown(0);
+        }
+        return top;
+    }
+
+    // Only the queued entries are reset, so clearing after a short search stays cheap
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            position[heap[i]] = -1;
+        }
+        size = 0;
+    }
+
+    private void siftUp(int pos) {
+        int vertex = heap[pos];
+        int key = keys[vertex];
+        while (pos > 0) {
+            int parentPos = (pos - 1) >>> 1;
+            int parent = heap[parentPos];
+            if (keys[parent] <= key) {
+                break;
+            }
+            heap[pos] = parent;
+            position[parent] = pos;
+            pos = parentPos;
+        }
+        heap[pos] = vertex;
+        position[vertex] = pos;
+    }
+
+    private void siftDown(int pos) {
+        int vertex = heap[pos];
+        int key = keys[vertex];
+        int half = size >>> 1;
+        while (pos < half) {
+            int child = 2 * pos + 1;
+            int right = child + 1;
+            if (right < size && keys[heap[right]] < keys[heap[child]]) {
+                child = right;
+            }
+            if (key <= keys[heap[child]]) {
+                break;
+            }
+            heap[pos] = heap[child];
+            position[heap[pos]] = pos;
+            pos = child;
+        }
+        heap[pos] = vertex;
+        position[vertex] = pos;
+    }
+}
@@ -0,0 +1,59 @@
+package org.project;
+
+// Landmark distances for ALT searches: for every landmark L, d(L, v) and d(v, L) for all vertices v.
+// By the triangle inequality d(v, t) >= d(L, t) - d(L, v) and d(v, t) >= d(v, L) - d(t, L), which
+// gives a consistent lower bound that stays valid inside any region, since restricting a search can
+// only make distances longer.
+public class Landmarks {
+    private final int[] vertices;
+    private final int[][] from;
+    private final int[][] to;
+
+    private Landmarks(int[] vertices, int[][] from, int[][] to) {
+        this.vertices = vertices;
+        this.from = from;
+        this.to = to;
+    }
+
+    // One forward and one reverse search over the whole grid per landmark
+    public static Landmarks compute(GridGraph gridGraph, int[] vertices, DijkstraEngine dijkstraEngine) {
+        int m = gridGraph.getM(), n = gridGraph.getN();
+        int[][] from = new int[vertices.length][m * n];
+        int[][] to = new int[vertices.length][m * n];
+        for (int i = 0; i < vertices.length; i++) {
+            dijkstraEngine.searchWithin(vertices[i], null, 0, 0, m - 1, n - 1, false, null);
+            for (int v = 0; v < m * n; v++) {
+                from[i][v] = dijkstraEngine.distance(v);
+            }
+            dijkstraEngine.searchWithin(vertices[i], null, 0, 0, m - 1, n - 1, true, null);
+            for (int v = 0; v < m * n; v++) {
+                to[i][v] = dijkstraEngine.distance(v);
+            }
+        }
+        return new Landmarks(vertices, from, to);
+    }
+
+    public int size() {
+        return vertices.length;
+    }
+
+    public int getVertex(int index) {
+        return vertices[index];
+    }
+
+    // Lower bound on d(v, target); landmarks that cannot reach or be reached from a vertex are skipped
+    public int lowerBound(int v, int target) {
+        int bound = 0;
+        for (int i = 0; i < vertices.length; i++) {
+            int[] fromLandmark = from[i];
+            if (fromLandmark[v] != DijkstraEngine.INFINITY && fromLandmark[target] != DijkstraEngine.INFINITY) {
+                bound = Math.max(bound, fromLandmark[target] - fromLandmark[v]);
+            }
+            int[] toLandmark = to[i];
+            if (toLandmark[v] != DijkstraEngine.INFINITY && toLandmark[target] != DijkstraEngine.INFINITY) {
+                bound = Math.max(bound, toLandmark[v] - toLandmark[target]);
+            }
+        }
+        return bound;
+    }
+}
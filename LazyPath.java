@@ -0,0 +1,77 @@
+package org.project;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+// Result of a hierarchical path query kept in compact form: the distance and the waypoints the
+// route passes (source, separator vertices, target). Every hop between consecutive waypoints is a
+// shortest path of its own, so cells are only produced while iterating, by one search per hop on the
+// finder's engine. Iterate on the thread that owns the ShortestPathFinder.
+public class LazyPath implements Iterable<int[]> {
+    private final int distance;
+    private final int[] waypoints;
+    private final DijkstraEngine dijkstraEngine;
+
+    LazyPath(int distance, int[] waypoints, DijkstraEngine dijkstraEngine) {
+        this.distance = distance;
+        this.waypoints = waypoints;
+        this.dijkstraEngine = dijkstraEngine;
+    }
+
+    public int getDistance() {
+        return distance;
+    }
+
+    public int getWaypointCount() {
+        return waypoints.length;
+    }
+
+    // {x, y} of the index-th waypoint
+    public int[] getWaypoint(int index) {
+        return new int[]{dijkstraEngine.x(waypoints[index]), dijkstraEngine.y(waypoints[index])};
+    }
+
+    // Cells of the path as {x, y}, unpacked one hop at a time
+    @Override
+    public Iterator<int[]> iterator() {
+        return new Iterator<int[]>() {
+            private int hop;
+            private int[] cells = new int[0];
+            private int index;
+
+            @Override
+            public boolean hasNext() {
+                while (index == cells.length) {
+                    if (hop == 0 && waypoints.length == 1) {
+                        cells = waypoints;
+                        index = 0;
+                        hop = 1;
+                        break;
+                    }
+                    if (hop + 1 >= waypoints.length) {
+                        return false;
+                    }
+                    dijkstraEngine.search(waypoints[hop], waypoints[hop + 1]);
+                    cells = dijkstraEngine.pathIds(waypoints[hop + 1]);
+                    if (cells.length == 0) {
+                        hop = waypoints.length;  // Unreachable hop, the path ends here
+                        return false;
+                    }
+                    // Every hop after the first starts at the previous hop's last cell
+                    index = hop == 0 ? 0 : 1;
+                    hop++;
+                }
+                return true;
+            }
+
+            @Override
+            public int[] next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                int vertex = cells[index++];
+                return new int[]{dijkstraEngine.x(vertex), dijkstraEngine.y(vertex)};
+            }
+        };
+    }
+}
@@ -0,0 +1,222 @@
+package org.project;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+// Process-wide counters for the build and query phases. Hot paths count into locals and add them
+// here once per search, query or region, into striped LongAdders, so recording costs a few
+// uncontended adds even with many query threads. Read through JMX (registerMBean) or pushed to a
+// MetricsExporter.
+public final class Metrics implements MetricsMXBean {
+    private static final Logger LOGGER = Logger.getLogger(Metrics.class.getName());
+    private static final Metrics GLOBAL = new Metrics();
+    // DistanceTable keys hold 6 bits of level
+    private static final int MAX_LEVELS = 64;
+
+    private final LongAdder queries = new LongAdder();
+    private final LatencyHistogram queryLatency = new LatencyHistogram();
+    private final LongAdder precomputedHits = new LongAdder();
+    private final LongAdder precomputedMisses = new LongAdder();
+    private final LongAdder settledVertices = new LongAdder();
+    private final LongAdder databaseRoundTrips = new LongAdder();
+    private final LongAdder[] levelNanos = new LongAdder[MAX_LEVELS];
+    private final LongAdder[] levelRegions = new LongAdder[MAX_LEVELS];
+    private volatile boolean registered;
+    private ScheduledExecutorService scheduler;
+
+    private Metrics() {
+        for (int level = 0; level < MAX_LEVELS; level++) {
+            levelNanos[level] = new LongAdder();
+            levelRegions[level] = new LongAdder();
+        }
+    }
+
+    public static Metrics global() {
+        return GLOBAL;
+    }
+
+    // One answered query with the precomputed rows it found and missed
+    public void recordQuery(long nanos, long hits, long misses) {
+        queries.increment();
+        queryLatency.record(nanos);
+        if (hits != 0) {
+            precomputedHits.add(hits);
+        }
+        if (misses != 0) {
+            precomputedMisses.add(misses);
+        }
+    }
+
+    // Precomputed lookups made outside single-pair queries (batches)
+    public void recordLookups(long hits, long misses) {
+        precomputedHits.add(hits);
+        precomputedMisses.add(misses);
+    }
+
+    public void addSettled(long vertices) {
+        settledVertices.add(vertices);
+    }
+
+    public void addDatabaseRoundTrip() {
+        databaseRoundTrips.increment();
+    }
+
+    // Time spent on one region of the decomposition, excluding its children
+    public void recordRegion(int level, long nanos) {
+        int slot = Math.min(level, MAX_LEVELS - 1);
+        levelNanos[slot].add(nanos);
+        levelRegions[slot].increment();
+    }
+
+    public LatencyHistogram getQueryLatency() {
+        return queryLatency;
+    }
+
+    @Override
+    public long getQueryCount() {
+        return queries.sum();
+    }
+
+    @Override
+    public double getQueryLatencyMeanNanos() {
+        return queryLatency.getMean();
+    }
+
+    @Override
+    public long getQueryLatencyP50Nanos() {
+        return queryLatency.getValueAtPercentile(50);
+    }
+
+    @Override
+    public long getQueryLatencyP99Nanos() {
+        return queryLatency.getValueAtPercentile(99);
+    }
+
+    @Override
+    public long getQueryLatencyMaxNanos() {
+        return queryLatency.getMax();
+    }
+
+    @Override
+    public long getPrecomputedHits() {
+        return precomputedHits.sum();
+    }
+
+    @Override
+    public long getPrecomputedMisses() {
+        return precomputedMisses.sum();
+    }
+
+    @Override
+    public long getSettledVertices() {
+        return settledVertices.sum();
+    }
+
+    @Override
+    public long getDatabaseRoundTrips() {
+        return databaseRoundTrips.sum();
+    }
+
+    @Override
+    public long[] getDecompositionNanosPerLevel() {
+        return sums(levelNanos);
+    }
+
+    @Override
+    public long[] getRegionsPerLevel() {
+        return sums(levelRegions);
+    }
+
+    @Override
+    public void reset() {
+        queries.reset();
+        queryLatency.reset();
+        precomputedHits.reset();
+        precomputedMisses.reset();
+        settledVertices.reset();
+        databaseRoundTrips.reset();
+        for (int level = 0; level < MAX_LEVELS; level++) {
+            levelNanos[level].reset();
+            levelRegions[level].reset();
+        }
+    }
+
+    // Every metric by name; levels without regions are left out
+    public Map<String, Long> values() {
+        Map<String, Long> values = new TreeMap<>();
+        values.put("query.count", getQueryCount());
+        values.put("query.latency.mean_ns", (long) getQueryLatencyMeanNanos());
+        values.put("query.latency.p50_ns", getQueryLatencyP50Nanos());
+        values.put("query.latency.p90_ns", queryLatency.getValueAtPercentile(90));
+        values.put("query.latency.p99_ns", getQueryLatencyP99Nanos());
+        values.put("query.latency.max_ns", getQueryLatencyMaxNanos());
+        values.put("precomputed.hits", getPrecomputedHits());
+        values.put("precomputed.misses", getPrecomputedMisses());
+        values.put("search.settled", getSettledVertices());
+        values.put("database.round_trips", getDatabaseRoundTrips());
+        long[] nanos = getDecompositionNanosPerLevel();
+        long[] regions = getRegionsPerLevel();
+        for (int level = 0; level < MAX_LEVELS; level++) {
+            if (regions[level] != 0) {
+                values.put("decomposition.level." + level + ".regions", regions[level]);
+                values.put("decomposition.level." + level + ".nanos", nanos[level]);
+            }
+        }
+        return values;
+    }
+
+    public void export(MetricsExporter exporter) {
+        exporter.export(values());
+    }
+
+    // Export every period on a shared daemon thread until the returned future is cancelled
+    public synchronized ScheduledFuture<?> scheduleExport(MetricsExporter exporter, long period, TimeUnit unit) {
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "metrics-exporter");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return scheduler.scheduleAtFixedRate(() -> {
+            try {
+                export(exporter);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Metrics export failed", e);
+            }
+        }, period, period, unit);
+    }
+
+    // Register with the platform MBean server; later calls do nothing
+    public synchronized void registerMBean() {
+        if (registered) {
+            return;
+        }
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(this, new ObjectName("org.project:type=Metrics"));
+            registered = true;
+        } catch (JMException e) {
+            LOGGER.log(Level.WARNING, "Could not register metrics MBean", e);
+        }
+    }
+
+    private static long[] sums(LongAdder[] adders) {
+        long[] sums = new long[adders.length];
+        for (int i = 0; i < adders.length; i++) {
+            sums[i] = adders[i].sum();
+        }
+        return sums;
+    }
+}
@@ -0,0 +1,10 @@
+package org.project;
+
+import java.util.Map;
+
+// Receives a point-in-time copy of all metrics, keyed by dotted names such as "query.latency.p99_ns"
+// and sorted by name. Implementations push them wherever they are scraped from (a log, a file, a
+// monitoring agent); see Metrics.export and Metrics.scheduleExport.
+public interface MetricsExporter {
+    void export(Map<String, Long> values);
+}
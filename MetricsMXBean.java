@@ -0,0 +1,29 @@
+package org.project;
+
+// JMX view of Metrics, registered as org.project:type=Metrics by Metrics.registerMBean()
+public interface MetricsMXBean {
+    long getQueryCount();
+
+    double getQueryLatencyMeanNanos();
+
+    long getQueryLatencyP50Nanos();
+
+    long getQueryLatencyP99Nanos();
+
+    long getQueryLatencyMaxNanos();
+
+    long getPrecomputedHits();
+
+    long getPrecomputedMisses();
+
+    long getSettledVertices();
+
+    long getDatabaseRoundTrips();
+
+    // Indexed by decomposition level
+    long[] getDecompositionNanosPerLevel();
+
+    long[] getRegionsPerLevel();
+
+    void reset();
+}
@@ -0,0 +1,286 @@
+package org.project;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Versioned binary form of a built distance oracle: grid weights, decomposition tree, the
+// precomputed distance table and, from version 2, compressed boundary tables. Everything is
+// little-endian and stored as primitive arrays so a process can map the file and answer lookups
+// straight from the page cache.
+//
+// Layout:
+//   header (72 bytes): magic, version, m, n, weight width, max level, distance count,
+//                      offsets of the weights, regions, keys, values and boundary sections
+//   weights: m * n * 4 per-direction edge weights of the given width
+//   regions: 8 ints per tree slot: level (-1 if unused), x1, y1, x2, y2, separator axis, coordinate, 0
+//   keys:    distance count packed DistanceTable keys, ascending
+//   values:  distance count ints, matching keys
+//   boundary (offset 0 if absent): piece size, table count, then per table the region id followed by
+//            its from-separator and to-separator CompressedDistanceMatrix
+// Version 1 files (64-byte header, no boundary section) are still read.
+public class OracleFile {
+    public static final int MAGIC = 0x524F4747; // "GGOR"
+    public static final int VERSION = 2;
+
+    private static final int HEADER_BYTES = 72;
+    private static final int REGION_INTS = 8;
+
+    private final GridGraph gridGraph;
+    private final DecompositionTree decompositionTree;
+    private final LongBuffer keys;
+    private final IntBuffer values;
+    private final int distanceCount;
+    private BoundaryTables boundaryTables;
+
+    private OracleFile(GridGraph gridGraph, DecompositionTree decompositionTree, LongBuffer keys, IntBuffer values) {
+        this.gridGraph = gridGraph;
+        this.decompositionTree = decompositionTree;
+        this.keys = keys;
+        this.values = values;
+        this.distanceCount = keys.limit();
+    }
+
+    public static void write(Path path, GridGraph gridGraph, DecompositionTree tree, DistanceTable table) throws IOException {
+        write(path, gridGraph, tree, table, null);
+    }
+
+    // boundaryTables may be null; tables held uncompressed are compressed for the file
+    public static void write(Path path, GridGraph gridGraph, DecompositionTree tree, DistanceTable table,
+                             BoundaryTables boundaryTables) throws IOException {
+        EdgeWeights weights = gridGraph.getEdgeWeights();
+        long[] sortedKeys = table.sortedKeys();
+        int slots = tree.getSlots();
+
+        long weightsOffset = HEADER_BYTES;
+        long regionsOffset = align(weightsOffset + weights.size() * weights.width());
+        long keysOffset = align(regionsOffset + (long) slots * REGION_INTS * 4);
+        long valuesOffset = keysOffset + (long) sortedKeys.length * 8;
+        long boundaryOffset = boundaryTables == null ? 0 : align(valuesOffset + (long) sortedKeys.length * 4);
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC).putInt(VERSION)
+                    .putInt(gridGraph.getM()).putInt(gridGraph.getN())
+                    .putInt(weights.width()).putInt(tree.getMaxLevel())
+                    .putLong(sortedKeys.length)
+                    .putLong(weightsOffset).putLong(regionsOffset).putLong(keysOffset).putLong(valuesOffset)
+                    .putLong(boundaryOffset);
+
+            for (long i = 0; i < weights.size(); i++) {
+                if (buffer.remaining() < 4) {
+                    drain(channel, buffer);
+                }
+                int weight = weights.get(i);
+                switch (weights.width()) {
+                    case 1:
+                        buffer.put((byte) weight);
+                        break;
+                    case 2:
+                        buffer.putChar((char) weight);
+                        break;
+                    default:
+                        buffer.putInt(weight);
+                }
+            }
+            pad(channel, buffer, regionsOffset);
+
+            for (int region = 0; region < slots; region++) {
+                if (buffer.remaining() < REGION_INTS * 4) {
+                    drain(channel, buffer);
+                }
+                if (tree.exists(region)) {
+                    buffer.putInt(tree.getLevel(region))
+                            .putInt(tree.getX1(region)).putInt(tree.getY1(region))
+                            .putInt(tree.getX2(region)).putInt(tree.getY2(region))
+                            .putInt(tree.getSeparatorAxis(region)).putInt(tree.getSeparatorCoordinate(region))
+                            .putInt(0);
+                } else {
+                    buffer.putInt(-1).putInt(0).putInt(0).putInt(0).putInt(0).putInt(0).putInt(0).putInt(0);
+                }
+            }
+            pad(channel, buffer, keysOffset);
+
+            for (long key : sortedKeys) {
+                if (buffer.remaining() < 8) {
+                    drain(channel, buffer);
+                }
+                buffer.putLong(key);
+            }
+            for (long key : sortedKeys) {
+                if (buffer.remaining() < 4) {
+                    drain(channel, buffer);
+                }
+                buffer.putInt(table.get(key));
+            }
+            if (boundaryTables != null) {
+                pad(channel, buffer, boundaryOffset);
+                writeBoundaryTables(channel, buffer, boundaryTables);
+            }
+            drain(channel, buffer);
+        }
+    }
+
+    private static void writeBoundaryTables(FileChannel channel, ByteBuffer buffer, BoundaryTables boundaryTables) throws IOException {
+        int slots = boundaryTables.getDecompositionTree().getSlots();
+        int tables = 0;
+        for (int region = DecompositionTree.ROOT; region < slots; region++) {
+            if (boundaryTables.hasTable(region)) {
+                tables++;
+            }
+        }
+        buffer.putInt(boundaryTables.getPieceSize()).putInt(tables);
+        for (int region = DecompositionTree.ROOT; region < slots; region++) {
+            if (!boundaryTables.hasTable(region)) {
+                continue;
+            }
+            if (buffer.remaining() < 4) {
+                drain(channel, buffer);
+            }
+            buffer.putInt(region);
+            drain(channel, buffer);
+            // Matrices are written straight from their own buffers, they may exceed the staging buffer
+            for (CompressedDistanceMatrix matrix : boundaryTables.compressedTables(region)) {
+                ByteBuffer bytes = matrix.toBytes();
+                while (bytes.hasRemaining()) {
+                    channel.write(bytes);
+                }
+            }
+        }
+    }
+
+    public static OracleFile open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt(0) != MAGIC) {
+                throw new IOException("Not a distance oracle file: " + path);
+            }
+            int version = header.getInt(4);
+            if (version != 1 && version != VERSION) {
+                throw new IOException("Unsupported oracle file version " + version + " in " + path);
+            }
+            int m = header.getInt(8);
+            int n = header.getInt(12);
+            int width = header.getInt(16);
+            int maxLevel = header.getInt(20);
+            long distanceCount = header.getLong(24);
+            long weightsOffset = header.getLong(32);
+            long regionsOffset = header.getLong(40);
+            long keysOffset = header.getLong(48);
+            long valuesOffset = header.getLong(56);
+            long boundaryOffset = version >= 2 ? header.getLong(64) : 0;
+            if (distanceCount * 8 > Integer.MAX_VALUE) {
+                throw new IOException("Distance table too large to map in one section: " + distanceCount);
+            }
+
+            GridGraph gridGraph = new GridGraph(m, n, GridFile.mapWeights(channel, FileChannel.MapMode.READ_ONLY, weightsOffset, m, n, width));
+
+            DecompositionTree tree = new DecompositionTree(maxLevel);
+            IntBuffer regions = channel.map(FileChannel.MapMode.READ_ONLY, regionsOffset, (long) tree.getSlots() * REGION_INTS * 4)
+                    .order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+            for (int region = 0; region < tree.getSlots(); region++) {
+                int base = region * REGION_INTS;
+                if (regions.get(base) >= 0) {
+                    tree.addRegion(region, regions.get(base), regions.get(base + 1), regions.get(base + 2),
+                            regions.get(base + 3), regions.get(base + 4), regions.get(base + 5), regions.get(base + 6));
+                }
+            }
+
+            LongBuffer keys = channel.map(FileChannel.MapMode.READ_ONLY, keysOffset, distanceCount * 8)
+                    .order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+            IntBuffer values = channel.map(FileChannel.MapMode.READ_ONLY, valuesOffset, distanceCount * 4)
+                    .order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+            OracleFile oracleFile = new OracleFile(gridGraph, tree, keys, values);
+            if (boundaryOffset != 0) {
+                long boundaryBytes = channel.size() - boundaryOffset;
+                if (boundaryBytes > Integer.MAX_VALUE) {
+                    throw new IOException("Boundary tables too large to map in one section: " + boundaryBytes);
+                }
+                oracleFile.boundaryTables = readBoundaryTables(channel.map(FileChannel.MapMode.READ_ONLY, boundaryOffset, boundaryBytes)
+                        .order(ByteOrder.LITTLE_ENDIAN), gridGraph, tree);
+            }
+            return oracleFile;
+        }
+    }
+
+    // Tables are decoded onto the heap; they are compressed, so this costs a fraction of the raw size
+    private static BoundaryTables readBoundaryTables(ByteBuffer section, GridGraph gridGraph, DecompositionTree tree) {
+        BoundaryTables boundaryTables = new BoundaryTables(gridGraph, tree, section.getInt());
+        boundaryTables.setCompressed(true);
+        int tables = section.getInt();
+        for (int i = 0; i < tables; i++) {
+            int region = section.getInt();
+            CompressedDistanceMatrix from = CompressedDistanceMatrix.fromBytes(section);
+            CompressedDistanceMatrix to = CompressedDistanceMatrix.fromBytes(section);
+            boundaryTables.putCompressed(region, from, to);
+        }
+        return boundaryTables;
+    }
+
+    public GridGraph getGridGraph() {
+        return gridGraph;
+    }
+
+    public DecompositionTree getDecompositionTree() {
+        return decompositionTree;
+    }
+
+    public int getMaxLevel() {
+        return decompositionTree.getMaxLevel();
+    }
+
+    public int getDistanceCount() {
+        return distanceCount;
+    }
+
+    // Compressed boundary tables stored in the file, null if there are none
+    public BoundaryTables getBoundaryTables() {
+        return boundaryTables;
+    }
+
+    // Binary search over the mapped keys; DistanceTable.MISSING if the key is not stored
+    public int getDistance(long key) {
+        int low = 0, high = distanceCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midKey = keys.get(mid);
+            if (midKey < key) {
+                low = mid + 1;
+            } else if (midKey > key) {
+                high = mid - 1;
+            } else {
+                return values.get(mid);
+            }
+        }
+        return DistanceTable.MISSING;
+    }
+
+    private static long align(long offset) {
+        return (offset + 7) & ~7L;
+    }
+
+    private static void pad(FileChannel channel, ByteBuffer buffer, long offset) throws IOException {
+        drain(channel, buffer);
+        while (channel.position() < offset) {
+            buffer.put((byte) 0);
+            if (channel.position() + buffer.position() == offset) {
+                break;
+            }
+        }
+        drain(channel, buffer);
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,71 @@
+package org.project;
+
+// Immutable view of one version of the oracle: grid weights, decomposition tree, precomputed
+// distances and landmarks. Nothing in it is written after construction, so any number of threads
+// can read it without locking once it has been published (e.g. through DistanceOracle).
+public final class OracleSnapshot implements PrecomputedDistances {
+    private final GridGraph gridGraph;
+    private final DecompositionTree decompositionTree;
+    private final DistanceTable distanceTable;
+    private final OracleFile oracleFile;
+    private final Landmarks landmarks;
+    private final ReadOnlyDistanceStore distanceStore;
+    private final BoundaryTables boundaryTables;
+    private final int maxLevel;
+    private final int version;
+
+    // The tables and tree must no longer be written; oracleFile, landmarks, distanceStore and
+    // boundaryTables may be null
+    public OracleSnapshot(GridGraph gridGraph, DecompositionTree decompositionTree, DistanceTable distanceTable,
+                          OracleFile oracleFile, Landmarks landmarks, ReadOnlyDistanceStore distanceStore,
+                          BoundaryTables boundaryTables, int maxLevel, int version) {
+        this.gridGraph = gridGraph;
+        this.decompositionTree = decompositionTree;
+        this.distanceTable = distanceTable;
+        this.oracleFile = oracleFile;
+        this.landmarks = landmarks;
+        this.distanceStore = distanceStore;
+        this.boundaryTables = boundaryTables;
+        this.maxLevel = maxLevel;
+        this.version = version;
+    }
+
+    public GridGraph getGridGraph() {
+        return gridGraph;
+    }
+
+    public DecompositionTree getDecompositionTree() {
+        return decompositionTree;
+    }
+
+    public Landmarks getLandmarks() {
+        return landmarks;
+    }
+
+    public int getMaxLevel() {
+        return maxLevel;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    @Override
+    public BoundaryTables getBoundaryTables() {
+        return boundaryTables;
+    }
+
+    // In-memory table, then the mapped oracle file, then the read-only database store if there is one
+    @Override
+    public int getPrecomputedDistance(int vertex1, int vertex2, int level) {
+        long key = DistanceTable.key(vertex1, vertex2, level);
+        int distance = distanceTable.get(key);
+        if (distance == DistanceTable.MISSING && oracleFile != null) {
+            distance = oracleFile.getDistance(key);
+        }
+        if (distance == DistanceTable.MISSING && distanceStore != null) {
+            distance = distanceStore.getDistance(key, gridGraph.getN());
+        }
+        return distance;
+    }
+}
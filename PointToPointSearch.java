@@ -0,0 +1,237 @@
+package org.project;
+
+import java.util.Arrays;
+
+// Single-pair searches confined to a rectangle, used when the hierarchy falls back to searching the
+// grid. Besides plain Dijkstra it can meet in the middle (bidirectional) or steer towards the target
+// with a consistent potential: Manhattan distance times the minimum edge weight (A*), or that combined
+// with landmark bounds (ALT). Counts the vertices it settles. Not thread-safe.
+public class PointToPointSearch {
+    private static final Metrics METRICS = Metrics.global();
+
+    public enum Strategy {
+        DIJKSTRA,
+        BIDIRECTIONAL,
+        ASTAR,
+        // Falls back to ASTAR while no landmarks are set
+        ALT
+    }
+
+    private GridGraph gridGraph;
+    private final int n;
+    private final int[] forwardDist;
+    private final int[] forwardStamp;
+    private final int[] backwardDist;
+    private final int[] backwardStamp;
+    private final IndexedMinHeap forwardHeap;
+    private final IndexedMinHeap backwardHeap;
+    private int currentStamp;
+    private Strategy strategy = Strategy.DIJKSTRA;
+    private Landmarks landmarks;
+    private long settled;
+
+    // Bounds of the current search, and the target the potential points to
+    private int x1, y1, x2, y2;
+    private int target, targetX, targetY;
+    private int minEdgeWeight;
+
+    public PointToPointSearch(GridGraph gridGraph) {
+        this.gridGraph = gridGraph;
+        this.n = gridGraph.getN();
+        int size = gridGraph.getM() * n;
+        this.forwardDist = new int[size];
+        this.forwardStamp = new int[size];
+        this.backwardDist = new int[size];
+        this.backwardStamp = new int[size];
+        this.forwardHeap = new IndexedMinHeap(size);
+        this.backwardHeap = new IndexedMinHeap(size);
+    }
+
+    // Search another grid of the same dimensions from now on, keeping the arrays; landmarks are set
+    // separately
+    public void setGridGraph(GridGraph gridGraph) {
+        if (gridGraph.getN() != n || (long) gridGraph.getM() * n != forwardDist.length) {
+            throw new IllegalArgumentException("Search sized for " + forwardDist.length / n + "x" + n + " cannot search a "
+                    + gridGraph.getM() + "x" + gridGraph.getN() + " grid");
+        }
+        this.gridGraph = gridGraph;
+    }
+
+    public void setStrategy(Strategy strategy) {
+        this.strategy = strategy;
+    }
+
+    public Strategy getStrategy() {
+        return strategy;
+    }
+
+    public void setLandmarks(Landmarks landmarks) {
+        this.landmarks = landmarks;
+    }
+
+    // Vertices settled by all searches so far
+    public long getSettledCount() {
+        return settled;
+    }
+
+    public void resetSettledCount() {
+        settled = 0;
+    }
+
+    // Distance from source to target using only vertices in [x1, x2] x [y1, y2], DijkstraEngine.INFINITY
+    // if target cannot be reached inside the rectangle
+    public int search(int source, int target, int x1, int y1, int x2, int y2) {
+        return search(source, target, x1, y1, x2, y2, DijkstraEngine.INFINITY);
+    }
+
+    // Same, but gives up with DijkstraEngine.INFINITY as soon as no path of length <= limit is left
+    public int search(int source, int target, int x1, int y1, int x2, int y2, int limit) {
+        if (source == target) {
+            return 0;
+        }
+        if (++currentStamp == 0) {
+            Arrays.fill(forwardStamp, 0);
+            Arrays.fill(backwardStamp, 0);
+            currentStamp = 1;
+        }
+        this.x1 = x1;
+        this.y1 = y1;
+        this.x2 = x2;
+        this.y2 = y2;
+        this.target = target;
+        this.targetX = target / n;
+        this.targetY = target % n;
+        this.minEdgeWeight = gridGraph.getMinEdgeWeight();
+        forwardHeap.clear();
+        backwardHeap.clear();
+        long before = settled;
+        int distance = strategy == Strategy.BIDIRECTIONAL ? bidirectional(source, target, limit) : guided(source, target, limit);
+        METRICS.addSettled(settled - before);
+        return distance;
+    }
+
+    // Dijkstra on keys distance + potential; with a consistent potential a polled vertex is final
+    private int guided(int source, int target, int limit) {
+        forwardStamp[source] = currentStamp;
+        forwardDist[source] = 0;
+        forwardHeap.insertOrDecrease(source, potential(source));
+        while (!forwardHeap.isEmpty()) {
+            // Keys are lower bounds on the length of any path through the frontier
+            if (forwardHeap.peekKey() > limit) {
+                break;
+            }
+            int u = forwardHeap.poll();
+            settled++;
+            if (u == target) {
+                forwardHeap.clear();
+                return forwardDist[u];
+            }
+            int ux = u / n, uy = u - ux * n;
+            int du = forwardDist[u];
+            if (uy < y2) relaxGuided(u + 1, gridGraph.getEdgeWeight(u, GridGraph.EAST), du);
+            if (ux < x2) relaxGuided(u + n, gridGraph.getEdgeWeight(u, GridGraph.SOUTH), du);
+            if (uy > y1) relaxGuided(u - 1, gridGraph.getEdgeWeight(u, GridGraph.WEST), du);
+            if (ux > x1) relaxGuided(u - n, gridGraph.getEdgeWeight(u, GridGraph.NORTH), du);
+        }
+        return DijkstraEngine.INFINITY;
+    }
+
+    private void relaxGuided(int v, int weight, int du) {
+        if (weight == GridGraph.NO_EDGE) {
+            return;
+        }
+        int distance = du + weight;
+        if (forwardStamp[v] != currentStamp) {
+            forwardStamp[v] = currentStamp;
+            forwardDist[v] = distance;
+            forwardHeap.insertOrDecrease(v, distance + potential(v));
+        } else if (distance < forwardDist[v]) {
+            forwardDist[v] = distance;
+            forwardHeap.insertOrDecrease(v, distance + potential(v));
+        }
+    }
+
+    private int potential(int v) {
+        if (strategy == Strategy.DIJKSTRA) {
+            return 0;
+        }
+        int vx = v / n, vy = v - vx * n;
+        int manhattan = (Math.abs(vx - targetX) + Math.abs(vy - targetY)) * minEdgeWeight;
+        if (strategy == Strategy.ALT && landmarks != null) {
+            return Math.max(manhattan, landmarks.lowerBound(v, target));
+        }
+        return manhattan;
+    }
+
+    // Forward search from source and backward search from target, always expanding the smaller
+    // frontier. Every relaxed edge reaching a vertex labeled by the other side closes a path; once
+    // the two smallest keys add up to the best such path, nothing shorter is left.
+    private int bidirectional(int source, int target, int limit) {
+        forwardStamp[source] = currentStamp;
+        forwardDist[source] = 0;
+        forwardHeap.insertOrDecrease(source, 0);
+        backwardStamp[target] = currentStamp;
+        backwardDist[target] = 0;
+        backwardHeap.insertOrDecrease(target, 0);
+        int best = DijkstraEngine.INFINITY;
+        while (!forwardHeap.isEmpty() && !backwardHeap.isEmpty()) {
+            long bound = (long) forwardHeap.peekKey() + backwardHeap.peekKey();
+            if (bound >= best || bound > limit) {
+                break;
+            }
+            boolean forward = forwardHeap.size() <= backwardHeap.size();
+            int u = forward ? forwardHeap.poll() : backwardHeap.poll();
+            settled++;
+            int ux = u / n, uy = u - ux * n;
+            if (forward) {
+                int du = forwardDist[u];
+                if (uy < y2) best = relaxForward(u + 1, gridGraph.getEdgeWeight(u, GridGraph.EAST), du, best);
+                if (ux < x2) best = relaxForward(u + n, gridGraph.getEdgeWeight(u, GridGraph.SOUTH), du, best);
+                if (uy > y1) best = relaxForward(u - 1, gridGraph.getEdgeWeight(u, GridGraph.WEST), du, best);
+                if (ux > x1) best = relaxForward(u - n, gridGraph.getEdgeWeight(u, GridGraph.NORTH), du, best);
+            } else {
+                // Edges into u: the neighbor's edge in the opposite direction
+                int du = backwardDist[u];
+                if (uy < y2) best = relaxBackward(u + 1, gridGraph.getEdgeWeight(u + 1, GridGraph.WEST), du, best);
+                if (ux < x2) best = relaxBackward(u + n, gridGraph.getEdgeWeight(u + n, GridGraph.NORTH), du, best);
+                if (uy > y1) best = relaxBackward(u - 1, gridGraph.getEdgeWeight(u - 1, GridGraph.EAST), du, best);
+                if (ux > x1) best = relaxBackward(u - n, gridGraph.getEdgeWeight(u - n, GridGraph.SOUTH), du, best);
+            }
+        }
+        forwardHeap.clear();
+        backwardHeap.clear();
+        return best <= limit ? best : DijkstraEngine.INFINITY;
+    }
+
+    private int relaxForward(int v, int weight, int du, int best) {
+        if (weight == GridGraph.NO_EDGE) {
+            return best;
+        }
+        int distance = du + weight;
+        if (forwardStamp[v] != currentStamp || distance < forwardDist[v]) {
+            forwardStamp[v] = currentStamp;
+            forwardDist[v] = distance;
+            forwardHeap.insertOrDecrease(v, distance);
+        }
+        if (backwardStamp[v] == currentStamp && (long) distance + backwardDist[v] < best) {
+            best = distance + backwardDist[v];
+        }
+        return best;
+    }
+
+    private int relaxBackward(int v, int weight, int du, int best) {
+        if (weight == GridGraph.NO_EDGE) {
+            return best;
+        }
+        int distance = du + weight;
+        if (backwardStamp[v] != currentStamp || distance < backwardDist[v]) {
+            backwardStamp[v] = currentStamp;
+            backwardDist[v] = distance;
+            backwardHeap.insertOrDecrease(v, distance);
+        }
+        if (forwardStamp[v] == currentStamp && (long) distance + forwardDist[v] < best) {
+            best = distance + forwardDist[v];
+        }
+        return best;
+    }
+}
@@ -0,0 +1,271 @@
+package org.project;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Picks which regions get BoundaryTables under a memory budget, from a sample of the queries the
+// oracle will serve (e.g. replayed from a log). A query climbs from its pieces' lowest common region
+// until its distance beats any path leaving the region (see BoundaryQuery). In every region it passes,
+// a table costs |S(R)| * (|B(P_s)| + |B(P_t)|) lookups, a missing one an A* search confined to R.
+// Search sizes are measured by running those searches on the sample, and the time per settled vertex
+// and per lookup on this machine. A region's benefit is the time its table saves over the sample;
+// regions are taken by benefit per byte while they fit the budget. Benefits of different regions add
+// up, so this is the usual greedy knapsack.
+public class PrecomputationPlanner {
+    private static final Logger LOGGER = Logger.getLogger(PrecomputationPlanner.class.getName());
+
+    // Regions chosen for one budget and sample, with the predicted mean query latency
+    public static final class Plan {
+        private final boolean[] selected;
+        private final int regions;
+        private final long bytes;
+        private final long budgetBytes;
+        private final int queries;
+        private final double predictedNanos;
+        private final double noTablesNanos;
+        private final double allTablesNanos;
+
+        private Plan(boolean[] selected, int regions, long bytes, long budgetBytes, int queries,
+                     double predictedNanos, double noTablesNanos, double allTablesNanos) {
+            this.selected = selected;
+            this.regions = regions;
+            this.bytes = bytes;
+            this.budgetBytes = budgetBytes;
+            this.queries = queries;
+            this.predictedNanos = predictedNanos;
+            this.noTablesNanos = noTablesNanos;
+            this.allTablesNanos = allTablesNanos;
+        }
+
+        public boolean isSelected(int region) {
+            return region < selected.length && selected[region];
+        }
+
+        public int getRegionCount() {
+            return regions;
+        }
+
+        // Uncompressed bytes of the chosen tables; compressed tables take less
+        public long getBytes() {
+            return bytes;
+        }
+
+        public long getBudgetBytes() {
+            return budgetBytes;
+        }
+
+        // Mean latency per sampled query, with the chosen tables, without any and with all of them
+        public double getPredictedNanos() {
+            return predictedNanos;
+        }
+
+        public double getNoTablesNanos() {
+            return noTablesNanos;
+        }
+
+        public double getAllTablesNanos() {
+            return allTablesNanos;
+        }
+
+        public String report(double measuredNanos) {
+            return String.format("%d regions, %.1f of %.1f MB, %d sampled queries: predicted %.1f us, measured %.1f us"
+                            + " (no tables %.1f us, all tables %.1f us)", regions, bytes / 1e6, budgetBytes / 1e6, queries,
+                    predictedNanos / 1e3, measuredNanos / 1e3, noTablesNanos / 1e3, allTablesNanos / 1e3);
+        }
+    }
+
+    private final BoundaryTables boundaryTables;
+    private final DecompositionTree decompositionTree;
+    private final GridGraph gridGraph;
+    private final DijkstraEngine dijkstraEngine;
+    private final PointToPointSearch regionSearch;
+    // Keeps the calibration loops from being optimized away
+    private int sink;
+
+    // boundaryTables only needs its pieces laid out; no table is read
+    public PrecomputationPlanner(BoundaryTables boundaryTables) {
+        this.boundaryTables = boundaryTables;
+        this.decompositionTree = boundaryTables.getDecompositionTree();
+        this.gridGraph = boundaryTables.getGridGraph();
+        this.dijkstraEngine = new DijkstraEngine(gridGraph);
+        this.regionSearch = new PointToPointSearch(gridGraph);
+        regionSearch.setStrategy(PointToPointSearch.Strategy.ASTAR);
+    }
+
+    // sources[i] -> targets[i] on linear vertex ids (x * n + y)
+    public Plan plan(int[] sources, int[] targets, long budgetBytes) {
+        int slots = decompositionTree.getSlots();
+        long[] settled = new long[slots];
+        long[] lookups = new long[slots];
+        long pieceNanos = 0, searchNanos = 0, searchSettled = 0;
+        int n = gridGraph.getN();
+        // A first pass over (a prefix of) the sample only warms the searches up; timings taken while
+        // they are still being compiled come out several times too slow
+        int warmup = Math.min(sources.length, 1000);
+        for (int q = -warmup; q < sources.length; q++) {
+            if (q == 0) {
+                Arrays.fill(settled, 0);
+                Arrays.fill(lookups, 0);
+                pieceNanos = searchNanos = searchSettled = 0;
+            }
+            int index = q < 0 ? q + warmup : q;
+            int source = sources[index], target = targets[index];
+            if (source == target) {
+                continue;
+            }
+            int distance = dijkstraEngine.search(source, target);
+            int sourcePiece = boundaryTables.getPiece(source), targetPiece = boundaryTables.getPiece(target);
+            long start = System.nanoTime();
+            searchPiece(source, sourcePiece, false);
+            searchPiece(target, targetPiece, true);
+            pieceNanos += System.nanoTime() - start;
+            int boundaryCount = boundaryTables.getRangeEnd(sourcePiece) - boundaryTables.getRangeBegin(sourcePiece)
+                    + boundaryTables.getRangeEnd(targetPiece) - boundaryTables.getRangeBegin(targetPiece);
+            int sx = source / n, sy = source % n, tx = target / n, ty = target % n;
+            for (int region = DecompositionTree.lca(sourcePiece, targetPiece); region >= DecompositionTree.ROOT;
+                 region = DecompositionTree.parent(region)) {
+                if (boundaryTables.isAbovePieces(region)) {
+                    lookups[region] += (long) boundaryTables.getSeparator(region).length * boundaryCount;
+                    long before = regionSearch.getSettledCount();
+                    start = System.nanoTime();
+                    regionSearch.search(source, target, decompositionTree.getX1(region), decompositionTree.getY1(region),
+                            decompositionTree.getX2(region), decompositionTree.getY2(region), distance);
+                    searchNanos += System.nanoTime() - start;
+                    settled[region] += regionSearch.getSettledCount() - before;
+                    searchSettled += regionSearch.getSettledCount() - before;
+                }
+                // Same stop as BoundaryQuery, taken as soon as the exact distance is known
+                if (region == DecompositionTree.ROOT || distance <= decompositionTree.exitLowerBound(region, sx, sy, tx, ty, gridGraph.getMinEdgeWeight())) {
+                    break;
+                }
+            }
+        }
+
+        double nanosPerSettled = searchSettled == 0 ? 0 : searchNanos / (double) searchSettled;
+        double nanosPerLookup = nanosPerLookup(boundaryTables.isCompressed());
+        List<Integer> candidates = new ArrayList<>();
+        double[] benefit = new double[slots];
+        double noTables = pieceNanos, allTables = pieceNanos;
+        for (int region = DecompositionTree.ROOT; region < slots; region++) {
+            if (!boundaryTables.isAbovePieces(region)) {
+                continue;
+            }
+            double withoutTable = settled[region] * nanosPerSettled, withTable = lookups[region] * nanosPerLookup;
+            noTables += withoutTable;
+            allTables += withTable;
+            benefit[region] = withoutTable - withTable;
+            if (benefit[region] > 0) {
+                candidates.add(region);
+            }
+        }
+        candidates.sort((a, b) -> Double.compare(benefit[b] / boundaryTables.getTableBytes(b),
+                benefit[a] / boundaryTables.getTableBytes(a)));
+
+        boolean[] selected = new boolean[slots];
+        long bytes = 0;
+        int regions = 0;
+        double predicted = noTables;
+        for (int region : candidates) {
+            long tableBytes = boundaryTables.getTableBytes(region);
+            if (bytes + tableBytes <= budgetBytes) {
+                selected[region] = true;
+                bytes += tableBytes;
+                regions++;
+                predicted -= benefit[region];
+            }
+        }
+        int queries = Math.max(1, sources.length);
+        Plan plan = new Plan(selected, regions, bytes, budgetBytes, sources.length,
+                predicted / queries, noTables / queries, allTables / queries);
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("Planned " + regions + " of " + candidates.size() + " beneficial tables: " + String.format(
+                    "%.1f us of piece searches, %.1f ns per settled vertex, %.2f ns per lookup, predicted %.1f us per query",
+                    pieceNanos / 1e3 / queries, nanosPerSettled, nanosPerLookup, plan.getPredictedNanos() / 1e3));
+        }
+        return plan;
+    }
+
+    private void searchPiece(int vertex, int piece, boolean reverse) {
+        dijkstraEngine.searchWithin(vertex, null, decompositionTree.getX1(piece), decompositionTree.getY1(piece),
+                decompositionTree.getX2(piece), decompositionTree.getY2(piece), reverse, null);
+    }
+
+    // Time per table entry of the separator loop in BoundaryQuery, on a table of distance-like rows
+    private double nanosPerLookup(boolean compressed) {
+        int rows = 64, cols = 512, count = 128, repeats = 64;
+        int[] table = new int[rows * cols];
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                table[i * cols + j] = Math.abs(4 * i - j) + (i * 7 + j * 13) % 5;
+            }
+        }
+        CompressedDistanceMatrix matrix = compressed ? CompressedDistanceMatrix.encode(table, rows, cols) : null;
+        int[] distances = new int[count];
+        int[] row = new int[count];
+        long nanos = Long.MAX_VALUE;
+        // Fastest of several rounds, so compilation and other threads are not counted
+        for (int round = 0; round < 8; round++) {
+            long start = System.nanoTime();
+            for (int r = 0; r < repeats; r++) {
+                int offset = (r * count) % (cols - count);
+                for (int i = 0; i < rows; i++) {
+                    int best = BoundaryTables.UNREACHABLE;
+                    if (matrix != null) {
+                        matrix.readRow(i, offset, count, row, i - 1);
+                        for (int j = 0; j < count; j++) {
+                            best = Math.min(best, distances[j] + row[j]);
+                        }
+                    } else {
+                        for (int j = 0, k = i * cols + offset; j < count; j++, k++) {
+                            best = Math.min(best, distances[j] + table[k]);
+                        }
+                    }
+                    sink += best;
+                }
+            }
+            nanos = Math.min(nanos, System.nanoTime() - start);
+        }
+        return nanos / ((double) repeats * rows * count);
+    }
+
+    // Mean latency of finder over the sample, after one unmeasured pass over it
+    public static double measure(ShortestPathFinder finder, int[] sources, int[] targets) {
+        long nanos = 0;
+        for (int round = 0; round < 2; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < sources.length; i++) {
+                finder.findDistance(sources[i], targets[i]);
+            }
+            nanos = System.nanoTime() - start;
+        }
+        return nanos / (double) Math.max(1, sources.length);
+    }
+
+    // Query log with one "x1 y1 x2 y2" line per query on an n-column grid; returns {sources, targets}.
+    // Blank lines and lines starting with '#' are skipped.
+    public static int[][] readQueries(Path path, int n) throws IOException {
+        List<String> lines = Files.readAllLines(path);
+        int[] sources = new int[lines.size()];
+        int[] targets = new int[lines.size()];
+        int count = 0;
+        for (String line : lines) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split("\\s+");
+            if (fields.length != 4) {
+                throw new IOException("Expected \"x1 y1 x2 y2\" in " + path + ": " + line);
+            }
+            sources[count] = Integer.parseInt(fields[0]) * n + Integer.parseInt(fields[1]);
+            targets[count++] = Integer.parseInt(fields[2]) * n + Integer.parseInt(fields[3]);
+        }
+        return new int[][]{Arrays.copyOf(sources, count), Arrays.copyOf(targets, count)};
+    }
+}
@@ -0,0 +1,10 @@
+package org.project;
+
+// Source of precomputed separator distances for ShortestPathFinder
+public interface PrecomputedDistances {
+    // Distance from vertex1 to vertex2 (linear ids) stored for the given level, DistanceTable.MISSING if none
+    int getPrecomputedDistance(int vertex1, int vertex2, int level);
+
+    // Dense tables of DistancePrecomputation.Mode.BOUNDARY_TABLES, null if they were not built
+    BoundaryTables getBoundaryTables();
+}
@@ -0,0 +1,112 @@
+package org.project;
+
+import java.sql.*;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Read-only access to persisted distances for concurrent queries: a fixed pool of read-only
+// connections, each used by one thread at a time, behind a DistanceCache. Snapshots share the pool
+// but not the cache (see withOwnCache).
+public class ReadOnlyDistanceStore implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(ReadOnlyDistanceStore.class.getName());
+    private static final String QUERY = "SELECT distance FROM precomputed_distances " +
+            "WHERE separator_vertex = ? AND subgraph_vertex = ? AND level = ?";
+
+    private final BlockingQueue<Connection> connections;
+    private final long cacheBudgetBytes;
+    // Checked before every database round trip; false once the table may hold rows of another version
+    private final BooleanSupplier readable;
+    private volatile DistanceCache distanceCache;
+
+    public ReadOnlyDistanceStore(String url, String user, String password, int poolSize, long cacheBudgetBytes) throws SQLException {
+        this.connections = new ArrayBlockingQueue<>(poolSize);
+        for (int i = 0; i < poolSize; i++) {
+            Connection connection = DriverManager.getConnection(url, user, password);
+            connection.setReadOnly(true);
+            connections.add(connection);
+        }
+        this.cacheBudgetBytes = cacheBudgetBytes;
+        this.readable = () -> true;
+    }
+
+    private ReadOnlyDistanceStore(ReadOnlyDistanceStore pool, BooleanSupplier readable) {
+        this.connections = pool.connections;
+        this.cacheBudgetBytes = pool.cacheBudgetBytes;
+        this.readable = readable;
+    }
+
+    // The same connection pool behind an empty cache of its own, reading the database only while
+    // readable holds. Cache keys carry no version, so each snapshot gets one (GraphDecomposition.snapshot)
+    // and never answers from another version's cached distances. Closing any of them closes the shared pool.
+    public ReadOnlyDistanceStore withOwnCache(BooleanSupplier readable) {
+        return new ReadOnlyDistanceStore(this, readable);
+    }
+
+    // Created on first use, so snapshots that never miss in memory do not allocate the budget
+    public DistanceCache getDistanceCache() {
+        DistanceCache cache = distanceCache;
+        if (cache == null) {
+            synchronized (this) {
+                cache = distanceCache;
+                if (cache == null) {
+                    cache = new DistanceCache(cacheBudgetBytes);
+                    distanceCache = cache;
+                }
+            }
+        }
+        return cache;
+    }
+
+    // Stored distance for a packed DistanceTable key on a grid with n columns, DistanceTable.MISSING if none
+    public int getDistance(long key, int n) {
+        DistanceCache distanceCache = getDistanceCache();
+        int cached = distanceCache.get(key);
+        if (cached == DistanceCache.ABSENT) {
+            return DistanceTable.MISSING;
+        } else if (cached != DistanceCache.NOT_CACHED) {
+            return cached;
+        }
+        if (!readable.getAsBoolean()) {
+            return DistanceTable.MISSING;
+        }
+
+        int from = DistanceTable.from(key), to = DistanceTable.to(key);
+        Connection connection;
+        try {
+            connection = connections.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return DistanceTable.MISSING;
+        }
+        try (PreparedStatement pstmt = connection.prepareStatement(QUERY)) {
+            pstmt.setString(1, Arrays.toString(new int[]{from / n, from % n}));
+            pstmt.setString(2, Arrays.toString(new int[]{to / n, to % n}));
+            pstmt.setInt(3, DistanceTable.level(key));
+            Metrics.global().addDatabaseRoundTrip();
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    int distance = rs.getInt("distance");
+                    distanceCache.put(key, distance);
+                    return distance;
+                }
+                distanceCache.putAbsent(key);
+            }
+        } catch (SQLException e) {
+            LOGGER.log(Level.WARNING, "Looking up a stored distance failed", e);
+        } finally {
+            connections.add(connection);
+        }
+        return DistanceTable.MISSING;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        for (Connection connection : connections) {
+            connection.close();
+        }
+    }
+}
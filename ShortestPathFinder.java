@@ -1,146 +1,517 @@
 package org.project;
 
 import java.util.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
 
 public class ShortestPathFinder {
+    private static final Logger LOGGER = Logger.getLogger(ShortestPathFinder.class.getName());
+    private static final Metrics METRICS = Metrics.global();
+
+    // How far results of sub-queries (u, v, level) are reused
+    public enum MemoScope {
+        // Every occurrence of a sub-query is solved again; results are only kept to rebuild the path
+        NONE,
+        // Reused within one query
+        QUERY,
+        // Reused across queries until the memo holds more than the shared entry limit
+        SHARED
+    }
+
+    // Returned by the evaluator while a sub-query frame is still open
+    private static final int PENDING = Integer.MIN_VALUE;
+    // What an open frame is waiting for
+    private static final int FIRST_HALF = 0;   // source -> separator vertex
+    private static final int SECOND_HALF = 1;  // separator vertex -> target
+    private static final int LOWER_LEVEL = 2;  // the same query one level down
+    // Flags of path reconstruction entries
+    private static final int SKIP_FIRST = 1;   // the first cell is already on the path
+    private static final int SEGMENT = 2;      // a separator half: precomputed row, else one level down
+
     private int maxLevel;
-    private Map<Integer, Set<int[]>> levelSeparators;
-    private DistancePrecomputation distancePrecomputation;
+    private DecompositionTree decompositionTree;
+    private PrecomputedDistances precomputedDistances;
     private GridGraph gridGraph;
+    private DijkstraEngine dijkstraEngine;
+    private PointToPointSearch fallbackSearch;
+    // Set when the precomputation has BoundaryTables; queries then skip the hierarchical evaluator
+    private BoundaryQuery boundaryQuery;
+    private MemoScope memoScope = MemoScope.QUERY;
+    private SubQueryMemo memo = new SubQueryMemo();
+    private int maxSharedEntries = 1 << 20;
+
+    // Explicit evaluation stack, one frame per open sub-query; levels strictly decrease towards the
+    // top, so maxLevel + 2 frames always suffice
+    private int top = -1;
+    private int[] frameSource, frameTarget, frameLevel, frameRegion, frameStep, frameSeparator;
+    private int[] frameFirst, frameBest, frameBestVertex;
+    // Path reconstruction stack: (from, to, level, flags) per entry
+    private int[] pathStack = new int[64];
+    private int[] waypoints = new int[64];
+
+    private long subQueries;
+    private long memoHits;
+    private long precomputedHits;
+    private long precomputedMisses;
+    private long dijkstraSearches;
 
     public ShortestPathFinder(DistancePrecomputation distancePrecomputation, int maxLevel, GridGraph gridGraph) {
-        this.distancePrecomputation = distancePrecomputation;
+        this(distancePrecomputation, distancePrecomputation.getDecompositionTree(), distancePrecomputation.getLandmarks(), maxLevel, gridGraph);
+    }
+
+    // Finder reading a published snapshot; one finder per thread, see DistanceOracle for pooling
+    public ShortestPathFinder(OracleSnapshot snapshot) {
+        this(snapshot, snapshot.getDecompositionTree(), snapshot.getLandmarks(), snapshot.getMaxLevel(), snapshot.getGridGraph());
+    }
+
+    private ShortestPathFinder(PrecomputedDistances precomputedDistances, DecompositionTree decompositionTree, Landmarks landmarks,
+                               int maxLevel, GridGraph gridGraph) {
+        this.precomputedDistances = precomputedDistances;
         this.maxLevel = maxLevel;
-        this.levelSeparators = distancePrecomputation.getLevelSeparators();
+        this.decompositionTree = decompositionTree;
         this.gridGraph = gridGraph;
+        this.dijkstraEngine = new DijkstraEngine(gridGraph);
+        this.fallbackSearch = new PointToPointSearch(gridGraph);
+        if (precomputedDistances.getBoundaryTables() != null) {
+            this.boundaryQuery = new BoundaryQuery(precomputedDistances.getBoundaryTables());
+        }
+        fallbackSearch.setLandmarks(landmarks);
+        allocateFrames(maxLevel + 2);
+    }
+
+    private void allocateFrames(int frames) {
+        frameSource = new int[frames];
+        frameTarget = new int[frames];
+        frameLevel = new int[frames];
+        frameRegion = new int[frames];
+        frameStep = new int[frames];
+        frameSeparator = new int[frames];
+        frameFirst = new int[frames];
+        frameBest = new int[frames];
+        frameBestVertex = new int[frames];
+    }
+
+    // Answer from snapshot from now on, keeping the search arrays (see DistanceOracle). Its grid must
+    // have the dimensions of the current one; the memo is cleared.
+    void setSnapshot(OracleSnapshot snapshot) {
+        if (precomputedDistances == snapshot) {
+            return;
+        }
+        GridGraph snapshotGrid = snapshot.getGridGraph();
+        dijkstraEngine.setGridGraph(snapshotGrid);
+        fallbackSearch.setGridGraph(snapshotGrid);
+        fallbackSearch.setLandmarks(snapshot.getLandmarks());
+        BoundaryTables boundaryTables = snapshot.getBoundaryTables();
+        if (boundaryTables == null) {
+            boundaryQuery = null;
+        } else if (boundaryQuery == null) {
+            boundaryQuery = new BoundaryQuery(boundaryTables);
+        } else {
+            boundaryQuery.setBoundaryTables(boundaryTables);
+        }
+        this.precomputedDistances = snapshot;
+        this.decompositionTree = snapshot.getDecompositionTree();
+        this.gridGraph = snapshotGrid;
+        this.maxLevel = snapshot.getMaxLevel();
+        if (maxLevel + 2 > frameSource.length) {
+            allocateFrames(maxLevel + 2);
+        }
+        memo.clear();
+    }
+
+    public GridGraph getGridGraph() {
+        return gridGraph;
+    }
+
+    // Search used when the hierarchy falls back to the grid; ALT uses the precomputation's landmarks
+    public void setFallbackStrategy(PointToPointSearch.Strategy strategy) {
+        fallbackSearch.setStrategy(strategy);
+        memo.clear();
+    }
+
+    public void setMemoScope(MemoScope memoScope) {
+        this.memoScope = memoScope;
+        memo.clear();
+    }
+
+    // With MemoScope.SHARED the memo is emptied before a query once it holds more entries than this
+    public void setMaxSharedEntries(int maxSharedEntries) {
+        this.maxSharedEntries = maxSharedEntries;
+    }
+
+    // Sub-queries entered by the evaluator since the last reset, and how they were answered
+    public long getSubQueryCount() {
+        return subQueries;
+    }
+
+    public long getMemoHits() {
+        return memoHits;
+    }
+
+    public long getPrecomputedHits() {
+        return precomputedHits;
+    }
+
+    // Separator halves without a precomputed row, solved one level down instead
+    public long getPrecomputedMisses() {
+        return precomputedMisses;
+    }
+
+    public long getDijkstraSearches() {
+        return dijkstraSearches;
+    }
+
+    // Vertices settled by fallback searches
+    public long getSettledCount() {
+        return fallbackSearch.getSettledCount();
+    }
+
+    public void resetCounters() {
+        subQueries = 0;
+        memoHits = 0;
+        precomputedHits = 0;
+        precomputedMisses = 0;
+        dijkstraSearches = 0;
+        fallbackSearch.resetSettledCount();
     }
 
     public int findShortestPath(int[] source, int[] target) {
-        System.out.println("Finding shortest path from " + Arrays.toString(source) + " to " + Arrays.toString(target));
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("Finding shortest path from " + Arrays.toString(source) + " to " + Arrays.toString(target));
+        }
 
         int hierarchicalDistance = findShortestPathHierarchical(source, target);
-        System.out.println("Hierarchical approach distance: " + hierarchicalDistance);
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("Hierarchical approach distance: " + hierarchicalDistance);
+        }
 
         return hierarchicalDistance;
     }
 
     private int findShortestPathHierarchical(int[] source, int[] target) {
-        List<int[]> path = new ArrayList<>();
-        int distance = findShortestPathRecursive(source, target, maxLevel, path);
-        System.out.println("Hierarchical approach path: " + pathToString(path));
-        return distance;
-    }
-
-    private int findShortestPathRecursive(int[] source, int[] target, int level, List<int[]> path) {
-        if (level == 0) {
-            return dijkstra(source, target, path);  // Dijkstra can still be used at level 0 if needed
+        LazyPath path = findPath(source, target);
+        // Unpacking the path for the message costs more than the query, so only when it is shown
+        if (LOGGER.isLoggable(Level.FINER)) {
+            LOGGER.finer("Hierarchical approach path: " + pathToString(path));
         }
+        return path.getDistance();
+    }
 
-        Set<int[]> separators = levelSeparators.get(level);
-        if (separators == null || separators.isEmpty()) {
-            return findShortestPathRecursive(source, target, level - 1, path);
-        }
+    // Distance only: no path is recorded and, once the memo has grown, nothing is allocated
+    public int findDistance(int[] source, int[] target) {
+        return findDistance(dijkstraEngine.id(source), dijkstraEngine.id(target));
+    }
 
-        int minDistance = Integer.MAX_VALUE;
-        List<int[]> bestPath = new ArrayList<>();  // Store best path found
+    // Same on linear vertex ids (x * n + y)
+    public int findDistance(int source, int target) {
+        return query(source, target);
+    }
 
-        for (int[] separator : separators) {
-            List<int[]> tempPath1 = new ArrayList<>();
-            List<int[]> tempPath2 = new ArrayList<>();
+    // Distance and the route's waypoints; cells are unpacked only when the path is iterated
+    public LazyPath findPath(int[] source, int[] target) {
+        int sourceId = dijkstraEngine.id(source), targetId = dijkstraEngine.id(target);
+        int distance = query(sourceId, targetId);
+        int count = boundaryQuery != null ? boundaryWaypoints(sourceId, targetId) : collectWaypoints(sourceId, targetId, maxLevel);
+        return new LazyPath(distance, Arrays.copyOf(waypoints, count), dijkstraEngine);
+    }
 
-            int distanceViaSeparator = getPrecomputedOrCalculateDistance(source, separator, level, tempPath1)
-                    + getPrecomputedOrCalculateDistance(separator, target, level, tempPath2);
+    // Evaluate one top-level query and report its latency and precomputed lookups to Metrics
+    private int query(int source, int target) {
+        long start = System.nanoTime();
+        long hits = precomputedHits, misses = precomputedMisses;
+        int distance = boundaryQuery != null ? boundaryQuery.distance(source, target) : evaluate(source, target, maxLevel);
+        METRICS.recordQuery(System.nanoTime() - start, precomputedHits - hits, precomputedMisses - misses);
+        return distance;
+    }
 
-            if (distanceViaSeparator < minDistance) {
-                minDistance = distanceViaSeparator;
-                bestPath.clear();  // Clear bestPath and add the new best path
-                bestPath.addAll(tempPath1);
-                bestPath.addAll(tempPath2.subList(1, tempPath2.size()));  // Avoid adding separator twice
+    // Iterative form of the hierarchical recursion. A sub-query (u, v, level) is answered in its
+    // lowest common region R (at level L <= level) as the best route through R's separator, each half
+    // taken from a precomputed row or solved at L - 1. If the separator splits u from v and the best
+    // route beats any path leaving R, that is the answer; otherwise (u, v, L - 1) is solved too and
+    // the shorter one wins.
+    private int evaluate(int source, int target, int level) {
+        if (memoScope != MemoScope.SHARED || memo.size() > maxSharedEntries) {
+            memo.clear();
+        }
+        top = -1;
+        int value = enter(source, target, level);
+        while (top >= 0) {
+            int f = top;
+            if (value != PENDING) {
+                // value answers what frame f asked for last
+                if (frameStep[f] == LOWER_LEVEL) {
+                    value = value < frameBest[f]
+                            ? finish(f, value, SubQueryMemo.HANDLE_LOWER_LEVEL)
+                            : finish(f, frameBest[f], frameBestVertex[f]);
+                    continue;
+                }
+                if (frameStep[f] == FIRST_HALF && value < frameBest[f]) {
+                    frameFirst[f] = value;
+                    frameStep[f] = SECOND_HALF;
+                } else {
+                    // A first half that is already no shorter than the best route cannot improve it
+                    if (frameStep[f] == SECOND_HALF) {
+                        int distance = add(frameFirst[f], value);
+                        if (distance < frameBest[f]) {
+                            frameBest[f] = distance;
+                            frameBestVertex[f] = separatorVertex(frameRegion[f], frameSeparator[f]);
+                        }
+                    }
+                    frameSeparator[f]++;
+                    frameStep[f] = FIRST_HALF;
+                }
             }
+            value = advance(f);
         }
+        return value;
+    }
 
-        // Check if the lower level path is shorter
-        List<int[]> lowerLevelPath = new ArrayList<>();
-        int lowerLevelDistance = findShortestPathRecursive(source, target, level - 1, lowerLevelPath);
+    // Ask for the next value frame f needs, or close it
+    private int advance(int f) {
+        int region = frameRegion[f];
+        // Impassable cells lie on no path; their rows are not precomputed either
+        while (frameStep[f] == FIRST_HALF && frameSeparator[f] < separatorSize(region)
+                && gridGraph.isBlocked(separatorVertex(region, frameSeparator[f]))) {
+            frameSeparator[f]++;
+        }
+        if (frameSeparator[f] < separatorSize(region)) {
+            int vertex = separatorVertex(region, frameSeparator[f]);
+            return frameStep[f] == FIRST_HALF
+                    ? segment(frameSource[f], vertex, frameLevel[f])
+                    : segment(vertex, frameTarget[f], frameLevel[f]);
+        }
 
-        if (lowerLevelDistance < minDistance) {
-            path.addAll(lowerLevelPath);  // Add lower level path if shorter
-            return lowerLevelDistance;
-        } else {
-            path.addAll(bestPath);  // Otherwise, add the best hierarchical path
-            return minDistance;
+        // If the separator splits source from target, every path inside the region crosses it. Ancestor
+        // regions are then only needed when a path leaving this region could still be shorter.
+        int source = frameSource[f], target = frameTarget[f];
+        if (separates(region, source, target) && frameBest[f] <= decompositionTree.exitLowerBound(region,
+                dijkstraEngine.x(source), dijkstraEngine.y(source), dijkstraEngine.x(target), dijkstraEngine.y(target),
+                gridGraph.getMinEdgeWeight())) {
+            return finish(f, frameBest[f], frameBestVertex[f]);
         }
+        frameStep[f] = LOWER_LEVEL;
+        return enter(source, target, frameLevel[f] - 1);
     }
 
+    // One half of a route through a separator: the precomputed row if there is one, else solved a level down
+    private int segment(int from, int to, int level) {
+        int distance = precomputedDistances.getPrecomputedDistance(from, to, level);
+        if (distance != DistanceTable.MISSING) {
+            precomputedHits++;
+            return distance;
+        }
+        precomputedMisses++;
+        return enter(from, to, level - 1);
+    }
 
+    // Start sub-query (source, target, level): its distance if known right away, else PENDING with a
+    // new frame on the stack
+    private int enter(int source, int target, int level) {
+        subQueries++;
+        if (source == target) {
+            return 0;
+        }
+        int region = baseRegion(source, target, level);
+        if (region < 0) {
+            return dijkstra(source, target);
+        }
+        int regionLevel = decompositionTree.getLevel(region);
+        long key = DistanceTable.key(source, target, regionLevel);
+        if (memoScope != MemoScope.NONE) {
+            int distance = memo.getDistance(key);
+            if (distance != DistanceTable.MISSING) {
+                memoHits++;
+                return distance;
+            }
+        }
+        int f = ++top;
+        frameSource[f] = source;
+        frameTarget[f] = target;
+        frameLevel[f] = regionLevel;
+        frameRegion[f] = region;
+        frameStep[f] = FIRST_HALF;
+        frameSeparator[f] = 0;
+        frameBest[f] = Integer.MAX_VALUE;
+        frameBestVertex[f] = SubQueryMemo.HANDLE_NONE;
+        return PENDING;
+    }
 
-    private int dijkstra(int[] source, int[] target, List<int[]> path) {
-        // Minimal Dijkstra's implementation used only if level is 0
-        PriorityQueue<Node> pq = new PriorityQueue<>(Comparator.comparingInt(n -> n.distance));
-        Map<String, Integer> distances = new HashMap<>();
-        Map<String, int[]> previousNodes = new HashMap<>();
-
-        pq.offer(new Node(source, 0));
-        distances.put(Arrays.toString(source), 0);
+    private int finish(int f, int distance, int handle) {
+        memo.put(DistanceTable.key(frameSource[f], frameTarget[f], frameLevel[f]), distance, handle);
+        top--;
+        return distance;
+    }
 
-        while (!pq.isEmpty()) {
-            Node current = pq.poll();
-            int[] currentPoint = current.point;
+    // Region in which the sub-query is answered, or -1 if it falls back to Dijkstra (level 0)
+    private int baseRegion(int source, int target, int level) {
+        if (level == 0 || decompositionTree == null) {
+            return -1;
+        }
+        // Only the region containing both endpoints at this level can separate them: jump straight to
+        // their lowest common region instead of scanning every separator of every level
+        int region = commonRegion(source, target, level);
+        if (decompositionTree.getLevel(region) == 0 || decompositionTree.getSeparatorAxis(region) == DecompositionTree.NO_SEPARATOR) {
+            return -1;
+        }
+        return region;
+    }
 
-            if (Arrays.equals(currentPoint, target)) {
-                reconstructPath(source, target, previousNodes, path);
-                return current.distance;
+    private int dijkstra(int source, int target) {
+        long key = DistanceTable.key(source, target, 0);
+        if (memoScope != MemoScope.NONE) {
+            int distance = memo.getDistance(key);
+            if (distance != DistanceTable.MISSING) {
+                memoHits++;
+                return distance;
             }
+        }
+        dijkstraSearches++;
+        int distance = fallback(source, target);
+        memo.put(key, distance, SubQueryMemo.HANDLE_DIJKSTRA);
+        return distance;
+    }
 
-            for (int[] neighbor : gridGraph.getNeighbors(currentPoint[0], currentPoint[1])) {
-                String neighborKey = Arrays.toString(neighbor);
-                int edgeWeight = gridGraph.getEdgeWeight(currentPoint[0], currentPoint[1], neighbor[0], neighbor[1]);
-                int newDistance = current.distance + edgeWeight;
+    // Search first confined to the lowest region holding both vertices. An in-region distance is exact
+    // when no path leaving the region can beat it, so that search is cut off at the region's exit
+    // lower bound; if it finds nothing within it, one search over the whole grid settles the query.
+    private int fallback(int source, int target) {
+        if (decompositionTree != null) {
+            int region = DecompositionTree.lca(locate(source), locate(target));
+            if (region != DecompositionTree.ROOT) {
+                long limit = decompositionTree.exitLowerBound(region, dijkstraEngine.x(source), dijkstraEngine.y(source),
+                        dijkstraEngine.x(target), dijkstraEngine.y(target), gridGraph.getMinEdgeWeight());
+                int distance = fallbackSearch.search(source, target, decompositionTree.getX1(region), decompositionTree.getY1(region),
+                        decompositionTree.getX2(region), decompositionTree.getY2(region), (int) Math.min(limit, DijkstraEngine.INFINITY));
+                if (distance != DijkstraEngine.INFINITY) {
+                    return distance;
+                }
+            }
+        }
+        return fallbackSearch.search(source, target, 0, 0, gridGraph.getM() - 1, gridGraph.getN() - 1);
+    }
 
-                if (newDistance < distances.getOrDefault(neighborKey, Integer.MAX_VALUE)) {
-                    distances.put(neighborKey, newDistance);
-                    previousNodes.put(neighborKey, currentPoint);
-                    pq.offer(new Node(neighbor, newDistance));
+    // Walk the memo's handles of an evaluated query and write the waypoints of its route, from source
+    // to target, into the waypoints buffer; returns how many there are. Precomputed halves and
+    // Dijkstra fallbacks each become one hop between their endpoints.
+    private int collectWaypoints(int source, int target, int level) {
+        int count = 0;
+        int size = 0;
+        size = push(size, source, target, level, 0);
+        while (size > 0) {
+            size -= 4;
+            int from = pathStack[size], to = pathStack[size + 1], lvl = pathStack[size + 2], flags = pathStack[size + 3];
+            if ((flags & SEGMENT) != 0) {
+                if (precomputedDistances.getPrecomputedDistance(from, to, lvl) != DistanceTable.MISSING) {
+                    count = addHop(count, from, to, flags);
+                    continue;
+                }
+                lvl--;
+            }
+            boolean skipFirst = (flags & SKIP_FIRST) != 0;
+            if (from == to) {
+                if (!skipFirst) {
+                    count = addWaypoint(count, from);
                 }
+                continue;
+            }
+            int region = baseRegion(from, to, lvl);
+            if (region < 0) {
+                count = addHop(count, from, to, flags);
+                continue;
+            }
+            int regionLevel = decompositionTree.getLevel(region);
+            int handle = memo.getHandle(DistanceTable.key(from, to, regionLevel));
+            if (handle == SubQueryMemo.HANDLE_LOWER_LEVEL) {
+                size = push(size, from, to, regionLevel - 1, flags & SKIP_FIRST);
+            } else if (handle >= 0) {
+                // Stack order: the second half is expanded after the first
+                size = push(size, handle, to, regionLevel, SEGMENT | SKIP_FIRST);
+                size = push(size, from, handle, regionLevel, SEGMENT | (flags & SKIP_FIRST));
             }
         }
+        return count;
+    }
 
-        return Integer.MAX_VALUE;
+    // Source, the separator vertex the boundary query went through (if any), target
+    private int boundaryWaypoints(int source, int target) {
+        int count = addWaypoint(0, source);
+        if (source == target) {
+            return count;
+        }
+        int via = boundaryQuery.getVia();
+        if (via >= 0 && via != source && via != target) {
+            count = addWaypoint(count, via);
+        }
+        return addWaypoint(count, target);
     }
 
-    private void reconstructPath(int[] source, int[] target, Map<String, int[]> previousNodes, List<int[]> path) {
-        int[] current = target;
-        while (current != null) {
-            path.add(current);
-            current = previousNodes.get(Arrays.toString(current));
+    private int addHop(int count, int from, int to, int flags) {
+        if ((flags & SKIP_FIRST) == 0) {
+            count = addWaypoint(count, from);
         }
-        Collections.reverse(path);
+        return addWaypoint(count, to);
     }
 
-    private int getPrecomputedOrCalculateDistance(int[] vertex1, int[] vertex2, int level, List<int[]> path) {
-        Integer precomputedDistance = distancePrecomputation.getPrecomputedDistance(vertex1, vertex2, level);
-        if (precomputedDistance != null) {
-            path.add(vertex1);
-            path.add(vertex2);
-            return precomputedDistance;
+    private int addWaypoint(int count, int vertex) {
+        if (count == waypoints.length) {
+            waypoints = Arrays.copyOf(waypoints, count * 2);
         }
-        return findShortestPathRecursive(vertex1, vertex2, level - 1, path);
+        waypoints[count] = vertex;
+        return count + 1;
     }
 
-    private String pathToString(List<int[]> path) {
-        return path.stream()
-                .map(Arrays::toString)
-                .collect(Collectors.joining(" -> "));
+    private int push(int size, int from, int to, int level, int flags) {
+        if (size + 4 > pathStack.length) {
+            pathStack = Arrays.copyOf(pathStack, pathStack.length * 2);
+        }
+        pathStack[size] = from;
+        pathStack[size + 1] = to;
+        pathStack[size + 2] = level;
+        pathStack[size + 3] = flags;
+        return size + 4;
+    }
+
+    private int separatorSize(int region) {
+        return decompositionTree.getSeparatorAxis(region) == DecompositionTree.SEPARATOR_X
+                ? decompositionTree.getY2(region) - decompositionTree.getY1(region) + 1
+                : decompositionTree.getX2(region) - decompositionTree.getX1(region) + 1;
     }
 
-    private static class Node {
-        int[] point;
-        int distance;
+    // Id of the index-th vertex of the region's separator, in DecompositionTree.getSeparator order
+    private int separatorVertex(int region, int index) {
+        int coordinate = decompositionTree.getSeparatorCoordinate(region);
+        return decompositionTree.getSeparatorAxis(region) == DecompositionTree.SEPARATOR_X
+                ? dijkstraEngine.id(coordinate, decompositionTree.getY1(region) + index)
+                : dijkstraEngine.id(decompositionTree.getX1(region) + index, coordinate);
+    }
 
-        Node(int[] point, int distance) {
-            this.point = point;
-            this.distance = distance;
-        }
+    // Region holding both vertices at the given level, or their lowest common region if that is deeper
+    private int commonRegion(int source, int target, int level) {
+        int lca = DecompositionTree.lca(locate(source), locate(target));
+        return DecompositionTree.ancestorAtLevel(lca, Math.min(level, decompositionTree.getLevel(lca)));
+    }
+
+    private int locate(int vertex) {
+        return decompositionTree.locate(dijkstraEngine.x(vertex), dijkstraEngine.y(vertex));
+    }
+
+    // True if source and target lie on different sides of the region's separator, or on it
+    private boolean separates(int region, int source, int target) {
+        int side1 = decompositionTree.side(region, dijkstraEngine.x(source), dijkstraEngine.y(source));
+        int side2 = decompositionTree.side(region, dijkstraEngine.x(target), dijkstraEngine.y(target));
+        return side1 != side2 || side1 == 0;
+    }
+
+    private static int add(int distance1, int distance2) {
+        long sum = (long) distance1 + distance2;
+        return sum >= Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) sum;
+    }
+
+    private String pathToString(Iterable<int[]> path) {
+        return StreamSupport.stream(path.spliterator(), false)
+                .map(Arrays::toString)
+                .collect(Collectors.joining(" -> "));
     }
 }
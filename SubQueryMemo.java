@@ -0,0 +1,98 @@
+package org.project;
+
+import java.util.Arrays;
+
+// Results of hierarchical sub-queries keyed by packed (from, to, level) DistanceTable keys. Each entry
+// keeps the distance and a path handle: the separator vertex the best path goes through, or one of
+// the negative handles below. Open addressing over primitive arrays; clear() only resets the slots
+// that were used, so clearing after a small query is cheap.
+public class SubQueryMemo {
+    // The path comes from the same query one level down
+    public static final int HANDLE_LOWER_LEVEL = -1;
+    // The path comes from a Dijkstra search
+    public static final int HANDLE_DIJKSTRA = -2;
+    // No separator vertex connects the endpoints
+    public static final int HANDLE_NONE = -3;
+
+    private long[] keys;
+    private int[] distances;
+    private int[] handles;
+    private int[] usedSlots;
+    private int size;
+
+    public SubQueryMemo() {
+        this(1024);
+    }
+
+    public SubQueryMemo(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, expectedSize * 2 - 1)) << 1;
+        keys = new long[capacity];
+        distances = new int[capacity];
+        handles = new int[capacity];
+        usedSlots = new int[capacity / 2];
+        Arrays.fill(distances, DistanceTable.MISSING);
+    }
+
+    public void put(long key, int distance, int handle) {
+        if (2 * (size + 1) > keys.length) {
+            resize(keys.length << 1);
+        }
+        int slot = slot(key);
+        if (distances[slot] == DistanceTable.MISSING) {
+            usedSlots[size++] = slot;
+        }
+        keys[slot] = key;
+        distances[slot] = distance;
+        handles[slot] = handle;
+    }
+
+    // Memoized distance, or DistanceTable.MISSING
+    public int getDistance(long key) {
+        return distances[slot(key)];
+    }
+
+    // Path handle of a memoized key, HANDLE_NONE if it is not memoized
+    public int getHandle(long key) {
+        int slot = slot(key);
+        return distances[slot] == DistanceTable.MISSING ? HANDLE_NONE : handles[slot];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            distances[usedSlots[i]] = DistanceTable.MISSING;
+        }
+        size = 0;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldDistances = distances;
+        int[] oldHandles = handles;
+        int[] oldUsedSlots = usedSlots;
+        int oldSize = size;
+        keys = new long[capacity];
+        distances = new int[capacity];
+        handles = new int[capacity];
+        usedSlots = new int[capacity / 2];
+        Arrays.fill(distances, DistanceTable.MISSING);
+        size = 0;
+        for (int i = 0; i < oldSize; i++) {
+            int oldSlot = oldUsedSlots[i];
+            put(oldKeys[oldSlot], oldDistances[oldSlot], oldHandles[oldSlot]);
+        }
+    }
+
+    // Slot holding key, or the empty slot where it would go (linear probing)
+    private int slot(long key) {
+        int mask = keys.length - 1;
+        int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+        while (distances[slot] != DistanceTable.MISSING && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+}
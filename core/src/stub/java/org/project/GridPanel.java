@@ -0,0 +1,6 @@
+package org.project;
+
+// Build stand-in for the UI panel GraphDecomposition is handed; the UI itself is not part of this
+// tree, and every caller here passes null
+public class GridPanel {
+}
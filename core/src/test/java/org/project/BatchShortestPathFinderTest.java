@@ -0,0 +1,49 @@
+package org.project;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// Batches mixing shared sources, shared targets and unrelated pairs answer like one query at a time
+class BatchShortestPathFinderTest {
+    private final ExecutorService executor = Executors.newFixedThreadPool(3);
+
+    @AfterEach
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void batchesMatchDijkstra() {
+        GridGraph gridGraph = TestGrids.grid(51, 0.2);
+        GraphDecomposition decomposition = TestGrids.decompose(gridGraph, DistancePrecomputation.Mode.MULTI_SOURCE);
+        BatchShortestPathFinder finder = new BatchShortestPathFinder(decomposition.getDistancePrecomputation(), gridGraph, executor);
+        int[][] queries = ShortestPathFinderTest.queries(gridGraph, 52, 90);
+        // A third of the pairs share a source, a third share a target
+        for (int q = 0; q < 30; q++) {
+            queries[0][q] = queries[0][0];
+            queries[1][30 + q] = queries[1][30];
+        }
+        List<List<int[]>> paths = new ArrayList<>();
+        int[] distances = finder.findDistances(queries[0], queries[1], paths);
+
+        int n = gridGraph.getN();
+        for (int q = 0; q < distances.length; q++) {
+            int source = queries[0][q], target = queries[1][q];
+            int expected = TestGrids.dijkstra(gridGraph, source, target);
+            assertEquals(expected, distances[q], source + " -> " + target);
+            if (expected != DijkstraEngine.INFINITY) {
+                TestGrids.assertPath(gridGraph, new int[]{source / n, source % n}, new int[]{target / n, target % n}, paths.get(q), expected);
+            }
+        }
+        // Without paths, pairs are answered from precomputed rows where possible
+        assertArrayEquals(distances, finder.findDistances(queries[0], queries[1], null));
+    }
+}
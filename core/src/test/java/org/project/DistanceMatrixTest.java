@@ -0,0 +1,35 @@
+package org.project;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// Every entry of a distance matrix is the Dijkstra distance, with boundary tables and without
+class DistanceMatrixTest {
+    @ParameterizedTest
+    @ValueSource(strings = {"BOUNDARY_TABLES", "MULTI_SOURCE"})
+    void entriesMatchDijkstra(String mode) {
+        GridGraph gridGraph = TestGrids.grid(61, 0.2);
+        GraphDecomposition decomposition = TestGrids.decompose(gridGraph, distancePrecomputation -> {
+            distancePrecomputation.setMode(DistancePrecomputation.Mode.valueOf(mode));
+            distancePrecomputation.setPieceSize(4);
+        });
+        int cells = gridGraph.getM() * gridGraph.getN();
+        Random random = new Random(62);
+        int[] sources = random.ints(12, 0, cells).toArray();
+        int[] targets = random.ints(30, 0, cells).toArray();
+        targets[0] = sources[0];
+
+        int[] matrix = decomposition.getDistancePrecomputation().distanceMatrix(sources, targets);
+        assertEquals(sources.length * targets.length, matrix.length);
+        for (int i = 0; i < sources.length; i++) {
+            for (int j = 0; j < targets.length; j++) {
+                assertEquals(TestGrids.dijkstra(gridGraph, sources[i], targets[j]), matrix[i * targets.length + j],
+                        sources[i] + " -> " + targets[j]);
+            }
+        }
+    }
+}
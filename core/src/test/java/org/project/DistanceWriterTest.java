@@ -0,0 +1,213 @@
+package org.project;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// DistanceWriter against an in-memory H2 database, which takes the standard MERGE upsert
+class DistanceWriterTest {
+    private static final AtomicInteger DATABASES = new AtomicInteger();
+
+    private String url;
+    private Connection reader;
+
+    @BeforeAll
+    static void quietLogs() {
+        GridBenchmark.setProjectLogLevel(Level.WARNING);
+    }
+
+    @BeforeEach
+    void createTable() throws SQLException {
+        url = "jdbc:h2:mem:writer" + DATABASES.incrementAndGet() + ";DB_CLOSE_DELAY=-1";
+        reader = connect();
+        try (Statement statement = reader.createStatement()) {
+            statement.execute("CREATE TABLE precomputed_distances (separator_vertex VARCHAR(50), subgraph_vertex VARCHAR(50), "
+                    + "distance INT, level INT, PRIMARY KEY (separator_vertex, subgraph_vertex, level))");
+        }
+    }
+
+    @AfterEach
+    void dropDatabase() throws SQLException {
+        try (Statement statement = reader.createStatement()) {
+            statement.execute("SHUTDOWN");
+        }
+        reader.close();
+    }
+
+    @Test
+    void upsertKeepsTheLastDistance() throws SQLException {
+        assertTrue(DistanceWriter.upsertSql(reader.getMetaData()).startsWith("MERGE"));
+        try (DistanceWriter distanceWriter = new DistanceWriter(connect(), 2, 2, 4)) {
+            for (int distance = 1; distance <= 5; distance++) {
+                distanceWriter.write("[0, 0]", "[0, 1]", distance, 0);
+                distanceWriter.write("[0, 0]", "[0, 2]", 10 * distance, 0);
+            }
+        }
+        assertEquals(2, count());
+        assertEquals(5, distance("[0, 0]", "[0, 1]", 0));
+        assertEquals(50, distance("[0, 0]", "[0, 2]", 0));
+    }
+
+    // With the queue full when the writer starts, every batch holds batchSize rows and a commit
+    // follows every commitSize rows; the rest is committed once the queue runs dry
+    @Test
+    void commitsEveryCommitSizeRows() throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Integer> commits = new ArrayList<>();
+        Connection connection = countingCommits(connect(), start, commits);
+        try (DistanceWriter distanceWriter = new DistanceWriter(connection, 10, 30, 200)) {
+            for (int i = 0; i < 95; i++) {
+                distanceWriter.write("[1, 0]", "[1, " + i + "]", i, 1);
+            }
+            start.countDown();
+            distanceWriter.flush();
+        }
+        assertEquals(List.of(30, 30, 30, 5), commits);
+        assertEquals(95, count());
+    }
+
+    @Test
+    void flushMakesEveryQueuedRowVisible() throws SQLException {
+        try (DistanceWriter distanceWriter = new DistanceWriter(connect(), 10, 1000, 100)) {
+            for (int i = 0; i < 25; i++) {
+                distanceWriter.write("[2, 0]", "[2, " + i + "]", i, 2);
+            }
+            distanceWriter.flush();
+            assertEquals(25, count());
+            assertEquals(24, distance("[2, 0]", "[2, 24]", 2));
+        }
+    }
+
+    // Once the writer's connection is gone, producers get the failure instead of blocking on a full queue
+    @Test
+    void producersFailFastAfterTheWriterDies() throws SQLException {
+        Level level = GridBenchmark.setProjectLogLevel(Level.OFF);
+        try {
+            Connection connection = connect();
+            DistanceWriter distanceWriter = new DistanceWriter(connection, 4, 4, 16);
+            distanceWriter.write("[3, 0]", "[3, 1]", 1, 3);
+            distanceWriter.flush();
+            connection.close();
+            assertTimeoutPreemptively(Duration.ofSeconds(30), () -> assertThrows(SQLException.class, () -> {
+                for (int i = 0; i < 100000; i++) {
+                    distanceWriter.write("[3, 0]", "[4, " + i + "]", i, 3);
+                }
+            }));
+            assertThrows(SQLException.class, distanceWriter::flush);
+        } finally {
+            GridBenchmark.setProjectLogLevel(level);
+        }
+    }
+
+    // A decomposition persists exactly the rows of its memory table
+    @Test
+    void decompositionPersistsItsMemoryTable() throws SQLException {
+        GridGraph gridGraph = TestGrids.grid(31, 0.1);
+        DistancePrecomputation distancePrecomputation = new DistancePrecomputation(gridGraph, url, "sa", "");
+        distancePrecomputation.setMode(DistancePrecomputation.Mode.MULTI_SOURCE);
+        GraphDecomposition decomposition = new GraphDecomposition(gridGraph, null, 1, distancePrecomputation);
+        decomposition.decompose();
+        decomposition.shutdown();
+
+        DistanceTable distanceTable = distancePrecomputation.getDistanceTable();
+        assertTrue(distanceTable.size() > 0);
+        assertEquals(distanceTable.size(), count());
+        try (Statement statement = reader.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT separator_vertex, subgraph_vertex, distance, level FROM precomputed_distances")) {
+            while (rs.next()) {
+                long key = DistanceTable.key(id(rs.getString(1), gridGraph), id(rs.getString(2), gridGraph), rs.getInt(4));
+                assertEquals(distanceTable.get(key), rs.getInt(3), rs.getString(1) + " -> " + rs.getString(2));
+            }
+        }
+    }
+
+    private Connection connect() throws SQLException {
+        return DriverManager.getConnection(url, "sa", "");
+    }
+
+    private int count() throws SQLException {
+        try (Statement statement = reader.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM precomputed_distances")) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    private int distance(String separatorVertex, String subgraphVertex, int level) throws SQLException {
+        try (PreparedStatement pstmt = reader.prepareStatement("SELECT distance FROM precomputed_distances "
+                + "WHERE separator_vertex = ? AND subgraph_vertex = ? AND level = ?")) {
+            pstmt.setString(1, separatorVertex);
+            pstmt.setString(2, subgraphVertex);
+            pstmt.setInt(3, level);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                assertTrue(rs.next(), "no row " + separatorVertex + " -> " + subgraphVertex);
+                return rs.getInt(1);
+            }
+        }
+    }
+
+    // Vertex id of a "[x, y]" key
+    private static int id(String vertex, GridGraph gridGraph) {
+        String[] parts = vertex.substring(1, vertex.length() - 1).split(", ");
+        return Integer.parseInt(parts[0]) * gridGraph.getN() + Integer.parseInt(parts[1]);
+    }
+
+    // connection, recording the rows added since the last commit at every commit. The writer's
+    // statement is only prepared once start opens, so rows queue up until then.
+    private static Connection countingCommits(Connection connection, CountDownLatch start, List<Integer> commits) {
+        AtomicInteger pending = new AtomicInteger();
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "prepareStatement":
+                            assertTrue(start.await(30, TimeUnit.SECONDS));
+                            PreparedStatement statement = (PreparedStatement) invoke(method, connection, args);
+                            return Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(), new Class<?>[]{PreparedStatement.class},
+                                    (statementProxy, statementMethod, statementArgs) -> {
+                                        if ("addBatch".equals(statementMethod.getName()) && statementArgs == null) {
+                                            pending.incrementAndGet();
+                                        }
+                                        return invoke(statementMethod, statement, statementArgs);
+                                    });
+                        case "commit":
+                            synchronized (commits) {
+                                commits.add(pending.getAndSet(0));
+                            }
+                            return invoke(method, connection, args);
+                        default:
+                            return invoke(method, connection, args);
+                    }
+                });
+    }
+
+    private static Object invoke(Method method, Object target, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
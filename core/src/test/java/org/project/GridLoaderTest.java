@@ -0,0 +1,75 @@
+package org.project;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Raw rasters become cell weights, with 0 as an impassable cell
+class GridLoaderTest {
+    private static final int M = 70;
+    private static final int N = 9;
+
+    @Test
+    void rawValuesBecomeCellWeights(@TempDir Path directory) throws IOException {
+        for (int bytesPerCell : new int[]{1, 2, 4}) {
+            ByteBuffer raster = ByteBuffer.allocate(M * N * bytesPerCell).order(ByteOrder.LITTLE_ENDIAN);
+            for (int cell = 0; cell < M * N; cell++) {
+                put(raster, bytesPerCell, value(cell, bytesPerCell));
+            }
+            Path path = directory.resolve("grid" + bytesPerCell + ".raw");
+            Files.write(path, raster.array());
+
+            for (boolean offHeap : new boolean[]{false, true}) {
+                GridGraph gridGraph = GridLoader.readRaw(path, M, N, bytesPerCell, 1 << 20, offHeap);
+                for (int x = 0; x < M; x++) {
+                    for (int y = 0; y < N; y++) {
+                        int cell = x * N + y;
+                        int value = value(cell, bytesPerCell);
+                        if (value == 0) {
+                            assertTrue(gridGraph.isBlocked(cell), "cell " + x + "," + y);
+                        } else if (y + 1 < N && value(cell + 1, bytesPerCell) != 0) {
+                            assertEquals(value, gridGraph.getEdgeWeight(x, y, x, y + 1), "cell " + x + "," + y);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void rejectsFourByteValuesAboveIntegerRange(@TempDir Path directory) throws IOException {
+        ByteBuffer raster = ByteBuffer.allocate(4 * 4).order(ByteOrder.LITTLE_ENDIAN);
+        raster.putInt(1).putInt(1).putInt(-1).putInt(1);
+        Path path = directory.resolve("overflow.raw");
+        Files.write(path, raster.array());
+        assertThrows(IOException.class, () -> GridLoader.readRaw(path, 2, 2, 4, Integer.MAX_VALUE, false));
+    }
+
+    // Every 7th cell is impassable; the rest use the width's range
+    private static int value(int cell, int bytesPerCell) {
+        if (cell % 7 == 3) {
+            return 0;
+        }
+        int range = bytesPerCell == 1 ? 255 : 60000;
+        return 1 + cell * 37 % range;
+    }
+
+    private static void put(ByteBuffer raster, int bytesPerCell, int value) {
+        if (bytesPerCell == 1) {
+            raster.put((byte) value);
+        } else if (bytesPerCell == 2) {
+            raster.putShort((short) value);
+        } else {
+            raster.putInt(value);
+        }
+    }
+}
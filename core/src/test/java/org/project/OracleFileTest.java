@@ -0,0 +1,52 @@
+package org.project;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// A decomposition written to an oracle file answers the same after opening it again
+class OracleFileTest {
+    @Test
+    void rowsSurviveTheRoundTrip(@TempDir Path directory) throws IOException {
+        GridGraph gridGraph = TestGrids.grid(71, 0.1);
+        GraphDecomposition decomposition = TestGrids.decompose(gridGraph, DistancePrecomputation.Mode.MULTI_SOURCE);
+        Path path = directory.resolve("multi-source.oracle");
+        decomposition.writeOracle(path);
+
+        OracleFile oracleFile = OracleFile.open(path);
+        DistanceTable distanceTable = decomposition.getDistancePrecomputation().getDistanceTable();
+        assertEquals(distanceTable.size(), oracleFile.getDistanceCount());
+        assertEquals(decomposition.getMaxLevel(), oracleFile.getMaxLevel());
+        assertAnswersMatch(gridGraph, new DistancePrecomputation(oracleFile), oracleFile.getMaxLevel());
+    }
+
+    @Test
+    void boundaryTablesSurviveTheRoundTrip(@TempDir Path directory) throws IOException {
+        GridGraph gridGraph = TestGrids.grid(72, 0.1);
+        GraphDecomposition decomposition = TestGrids.decompose(gridGraph, distancePrecomputation -> {
+            distancePrecomputation.setMode(DistancePrecomputation.Mode.BOUNDARY_TABLES);
+            distancePrecomputation.setPieceSize(4);
+        });
+        Path path = directory.resolve("boundary-tables.oracle");
+        decomposition.writeOracle(path);
+
+        OracleFile oracleFile = OracleFile.open(path);
+        assertAnswersMatch(gridGraph, new DistancePrecomputation(oracleFile), oracleFile.getMaxLevel());
+    }
+
+    private static void assertAnswersMatch(GridGraph gridGraph, DistancePrecomputation opened, int maxLevel) {
+        ShortestPathFinder finder = new ShortestPathFinder(opened, maxLevel, opened.getGridGraph());
+        int cells = gridGraph.getM() * gridGraph.getN();
+        Random random = new Random(73);
+        for (int q = 0; q < 60; q++) {
+            int source = random.nextInt(cells), target = random.nextInt(cells);
+            assertEquals(TestGrids.dijkstra(gridGraph, source, target), finder.findDistance(source, target),
+                    source + " -> " + target);
+        }
+    }
+}
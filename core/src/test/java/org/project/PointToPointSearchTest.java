@@ -0,0 +1,61 @@
+package org.project;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// Every strategy finds the Dijkstra distance, on the whole grid and confined to a rectangle
+class PointToPointSearchTest {
+    private static final int QUERIES = 100;
+
+    @ParameterizedTest
+    @EnumSource(PointToPointSearch.Strategy.class)
+    void strategiesMatchDijkstra(PointToPointSearch.Strategy strategy) {
+        GridGraph gridGraph = TestGrids.grid(41, 0.2);
+        int m = gridGraph.getM(), n = gridGraph.getN();
+        PointToPointSearch search = new PointToPointSearch(gridGraph);
+        search.setStrategy(strategy);
+        search.setLandmarks(Landmarks.compute(gridGraph, new int[]{0, n - 1, m * n - 1, (m - 1) * n}, new DijkstraEngine(gridGraph)));
+        Random random = new Random(strategy.ordinal());
+        for (int q = 0; q < QUERIES; q++) {
+            int source = random.nextInt(m * n), target = random.nextInt(m * n);
+            assertEquals(TestGrids.dijkstra(gridGraph, source, target), search.search(source, target, 0, 0, m - 1, n - 1),
+                    strategy + ": " + source + " -> " + target);
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(PointToPointSearch.Strategy.class)
+    void confinedSearchesStayInTheirRectangle(PointToPointSearch.Strategy strategy) {
+        GridGraph gridGraph = TestGrids.grid(42, 0.2);
+        int n = gridGraph.getN();
+        int x1 = 3, y1 = 4, x2 = 14, y2 = 12;
+        // The rectangle as a grid of its own: no edge leads out of it
+        GridGraph rectangle = GridBenchmark.seededGrid(x2 - x1 + 1, y2 - y1 + 1, 0);
+        for (int x = x1; x <= x2; x++) {
+            for (int y = y1; y <= y2; y++) {
+                for (int direction = 0; direction < GridGraph.DIRECTIONS; direction++) {
+                    int nx = x + (direction == GridGraph.SOUTH ? 1 : direction == GridGraph.NORTH ? -1 : 0);
+                    int ny = y + (direction == GridGraph.EAST ? 1 : direction == GridGraph.WEST ? -1 : 0);
+                    if (nx >= x1 && nx <= x2 && ny >= y1 && ny <= y2) {
+                        rectangle.setEdgeWeight(x - x1, y - y1, direction, gridGraph.getEdgeWeight(x * n + y, direction));
+                    }
+                }
+            }
+        }
+        PointToPointSearch search = new PointToPointSearch(gridGraph);
+        search.setStrategy(strategy);
+        Random random = new Random(strategy.ordinal());
+        for (int q = 0; q < QUERIES; q++) {
+            int sx = x1 + random.nextInt(x2 - x1 + 1), sy = y1 + random.nextInt(y2 - y1 + 1);
+            int tx = x1 + random.nextInt(x2 - x1 + 1), ty = y1 + random.nextInt(y2 - y1 + 1);
+            int rectangleN = rectangle.getN();
+            int expected = TestGrids.dijkstra(rectangle, (sx - x1) * rectangleN + sy - y1, (tx - x1) * rectangleN + ty - y1);
+            assertEquals(expected, search.search(sx * n + sy, tx * n + ty, x1, y1, x2, y2),
+                    strategy + ": " + sx + "," + sy + " -> " + tx + "," + ty);
+        }
+    }
+}
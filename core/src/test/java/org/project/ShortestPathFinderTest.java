@@ -0,0 +1,121 @@
+package org.project;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Exact modes answer every query with the Dijkstra distance and a path of that length; the
+// approximate mode stays within its stretch bound
+class ShortestPathFinderTest {
+    private static final int QUERIES = 60;
+
+    static Stream<Arguments> exactModes() {
+        List<Arguments> arguments = new ArrayList<>();
+        for (double obstacleShare : new double[]{0, 0.2}) {
+            arguments.add(Arguments.of("PAIRWISE", obstacleShare, setup(DistancePrecomputation.Mode.PAIRWISE)));
+            arguments.add(Arguments.of("SINGLE_SOURCE", obstacleShare, setup(DistancePrecomputation.Mode.SINGLE_SOURCE)));
+            arguments.add(Arguments.of("MULTI_SOURCE", obstacleShare, setup(DistancePrecomputation.Mode.MULTI_SOURCE)));
+            arguments.add(Arguments.of("BOUNDARY_TABLES", obstacleShare, setup(DistancePrecomputation.Mode.BOUNDARY_TABLES)));
+            arguments.add(Arguments.of("BOUNDARY_TABLES compressed", obstacleShare, (TestGrids.Setup) distancePrecomputation -> {
+                distancePrecomputation.setMode(DistancePrecomputation.Mode.BOUNDARY_TABLES);
+                distancePrecomputation.setPieceSize(4);
+                distancePrecomputation.setCompressTables(true);
+            }));
+            // A budget far below the full tables leaves most regions to confined searches
+            arguments.add(Arguments.of("BOUNDARY_TABLES budgeted", obstacleShare, (TestGrids.Setup) distancePrecomputation -> {
+                distancePrecomputation.setMode(DistancePrecomputation.Mode.BOUNDARY_TABLES);
+                distancePrecomputation.setPieceSize(4);
+                int[][] workload = queries(distancePrecomputation.getGridGraph(), 99, 40);
+                distancePrecomputation.setWorkload(workload[0], workload[1], 4096);
+            }));
+        }
+        return arguments.stream();
+    }
+
+    private static TestGrids.Setup setup(DistancePrecomputation.Mode mode) {
+        return distancePrecomputation -> distancePrecomputation.setMode(mode);
+    }
+
+    @ParameterizedTest(name = "{0}, obstacles {1}")
+    @MethodSource("exactModes")
+    void distancesMatchDijkstra(String name, double obstacleShare, TestGrids.Setup setup) {
+        GridGraph gridGraph = TestGrids.grid(11, obstacleShare);
+        GraphDecomposition decomposition = TestGrids.decompose(gridGraph, setup);
+        ShortestPathFinder finder = new ShortestPathFinder(decomposition.getDistancePrecomputation(), decomposition.getMaxLevel(), gridGraph);
+        int[][] queries = queries(gridGraph, 5, QUERIES);
+        for (int q = 0; q < QUERIES; q++) {
+            int source = queries[0][q], target = queries[1][q];
+            assertEquals(TestGrids.dijkstra(gridGraph, source, target), finder.findDistance(source, target),
+                    "distance " + source + " -> " + target);
+        }
+    }
+
+    @ParameterizedTest(name = "{0}, obstacles {1}")
+    @MethodSource("exactModes")
+    void pathsHaveTheirDistance(String name, double obstacleShare, TestGrids.Setup setup) {
+        GridGraph gridGraph = TestGrids.grid(12, obstacleShare);
+        GraphDecomposition decomposition = TestGrids.decompose(gridGraph, setup);
+        ShortestPathFinder finder = new ShortestPathFinder(decomposition.getDistancePrecomputation(), decomposition.getMaxLevel(), gridGraph);
+        int[][] queries = queries(gridGraph, 6, QUERIES);
+        int n = gridGraph.getN();
+        for (int q = 0; q < QUERIES; q++) {
+            int source = queries[0][q], target = queries[1][q];
+            int expected = TestGrids.dijkstra(gridGraph, source, target);
+            if (expected == DijkstraEngine.INFINITY) {
+                continue;
+            }
+            int[] from = {source / n, source % n}, to = {target / n, target % n};
+            LazyPath path = finder.findPath(from, to);
+            assertEquals(expected, path.getDistance(), "distance " + source + " -> " + target);
+            TestGrids.assertPath(gridGraph, from, to, path, expected);
+        }
+    }
+
+    @ParameterizedTest(name = "epsilon {0}, obstacles {1}")
+    @MethodSource("approximateCases")
+    void approximateDistancesStayWithinTheStretch(double epsilon, double obstacleShare) {
+        GridGraph gridGraph = TestGrids.grid(13, obstacleShare);
+        GraphDecomposition decomposition = TestGrids.decompose(gridGraph, distancePrecomputation -> {
+            distancePrecomputation.setMode(DistancePrecomputation.Mode.APPROXIMATE);
+            distancePrecomputation.setEpsilon(epsilon);
+            distancePrecomputation.setPieceSize(4);
+        });
+        ApproximateDistanceOracle oracle = decomposition.getDistancePrecomputation().getApproximateOracle();
+        int[][] queries = queries(gridGraph, 7, QUERIES);
+        for (int q = 0; q < QUERIES; q++) {
+            int source = queries[0][q], target = queries[1][q];
+            int exact = TestGrids.dijkstra(gridGraph, source, target);
+            int approximate = oracle.distance(source, target);
+            if (exact == DijkstraEngine.INFINITY) {
+                assertEquals(DijkstraEngine.INFINITY, approximate, "unreachable " + source + " -> " + target);
+            } else {
+                assertTrue(approximate >= exact && approximate <= (1 + epsilon) * exact,
+                        source + " -> " + target + ": " + approximate + " for exact " + exact);
+            }
+        }
+    }
+
+    static Stream<Arguments> approximateCases() {
+        return Stream.of(Arguments.of(0.1, 0.0), Arguments.of(0.25, 0.0), Arguments.of(0.1, 0.2));
+    }
+
+    // {sources, targets} of count random pairs, a few of them with source == target
+    static int[][] queries(GridGraph gridGraph, long seed, int count) {
+        Random random = new Random(seed);
+        int cells = gridGraph.getM() * gridGraph.getN();
+        int[][] queries = new int[2][count];
+        for (int q = 0; q < count; q++) {
+            queries[0][q] = random.nextInt(cells);
+            queries[1][q] = q % 10 == 0 ? queries[0][q] : random.nextInt(cells);
+        }
+        return queries;
+    }
+}
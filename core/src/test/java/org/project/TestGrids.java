@@ -0,0 +1,68 @@
+package org.project;
+
+import java.sql.Connection;
+import java.util.List;
+import java.util.logging.Level;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Grids, decompositions and Dijkstra checks shared by the tests. Grids are deliberately not square
+// and not powers of two, so separators fall on uneven rows and columns.
+final class TestGrids {
+    static final int M = 24;
+    static final int N = 21;
+
+    static {
+        GridBenchmark.setProjectLogLevel(Level.WARNING);
+    }
+
+    private TestGrids() {
+    }
+
+    static GridGraph grid(long seed, double obstacleShare) {
+        return GridBenchmark.seededGrid(M, N, seed, obstacleShare);
+    }
+
+    // Memory-only decomposition of gridGraph, in the mode and with the options setup chooses
+    static GraphDecomposition decompose(GridGraph gridGraph, Setup setup) {
+        DistancePrecomputation distancePrecomputation = new DistancePrecomputation(gridGraph, (Connection) null);
+        setup.apply(distancePrecomputation);
+        GraphDecomposition decomposition = new GraphDecomposition(gridGraph, null, 1, distancePrecomputation);
+        decomposition.decompose();
+        return decomposition;
+    }
+
+    static GraphDecomposition decompose(GridGraph gridGraph, DistancePrecomputation.Mode mode) {
+        return decompose(gridGraph, distancePrecomputation -> distancePrecomputation.setMode(mode));
+    }
+
+    interface Setup {
+        void apply(DistancePrecomputation distancePrecomputation);
+    }
+
+    // Exact distance by plain Dijkstra on the whole grid, DijkstraEngine.INFINITY if unreachable
+    static int dijkstra(GridGraph gridGraph, int source, int target) {
+        return new DijkstraEngine(gridGraph).search(source, target);
+    }
+
+    // path runs from source to target over grid edges and its edges weigh distance in total
+    static void assertPath(GridGraph gridGraph, int[] source, int[] target, Iterable<int[]> path, int distance) {
+        int[] previous = null;
+        long total = 0;
+        for (int[] cell : path) {
+            if (previous == null) {
+                assertEquals(List.of(source[0], source[1]), List.of(cell[0], cell[1]), "path start");
+            } else {
+                assertEquals(1, Math.abs(cell[0] - previous[0]) + Math.abs(cell[1] - previous[1]), "cells not adjacent");
+                int weight = gridGraph.getEdgeWeight(previous[0], previous[1], cell[0], cell[1]);
+                assertTrue(weight != Integer.MAX_VALUE, "path uses a missing edge");
+                total += weight;
+            }
+            previous = cell;
+        }
+        assertTrue(previous != null, "empty path");
+        assertEquals(List.of(target[0], target[1]), List.of(previous[0], previous[1]), "path end");
+        assertEquals(distance, total, "summed edge weights");
+    }
+}
@@ -0,0 +1,109 @@
+package org.project;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// After every batch of weight changes, including cells made impassable and opened again, the new
+// version matches Dijkstra on the new grid while snapshots of the old one still match the old grid
+class UpdateCellWeightsTest {
+    private static final int ROUNDS = 4;
+    private static final int QUERIES = 40;
+
+    @ParameterizedTest
+    @EnumSource(value = DistancePrecomputation.Mode.class, names = {"PAIRWISE", "SINGLE_SOURCE", "MULTI_SOURCE", "BOUNDARY_TABLES"})
+    void exactModesFollowEveryUpdate(DistancePrecomputation.Mode mode) {
+        GridGraph gridGraph = TestGrids.grid(21, 0.1);
+        GraphDecomposition decomposition = TestGrids.decompose(gridGraph, mode);
+        DistanceOracle oracle = new DistanceOracle(decomposition.snapshot(), 2);
+        Random random = new Random(mode.ordinal());
+        for (int round = 0; round < ROUNDS; round++) {
+            OracleSnapshot previous = oracle.getSnapshot();
+            decomposition.updateCellWeights(cells(random, 3), new int[]{1 + random.nextInt(9), 0, 1 + random.nextInt(9)});
+            oracle.publish(decomposition.snapshot());
+            assertEquals(round + 1, oracle.getSnapshot().getVersion());
+
+            assertMatchesDijkstra(oracle.getSnapshot(), random);
+            assertMatchesDijkstra(previous, random);
+        }
+    }
+
+    @Test
+    void approximateLabelsFollowEveryUpdate() {
+        double epsilon = 0.1;
+        GridGraph gridGraph = TestGrids.grid(22, 0.1);
+        GraphDecomposition decomposition = TestGrids.decompose(gridGraph, distancePrecomputation -> {
+            distancePrecomputation.setMode(DistancePrecomputation.Mode.APPROXIMATE);
+            distancePrecomputation.setEpsilon(epsilon);
+            distancePrecomputation.setPieceSize(4);
+        });
+        Random random = new Random(5);
+        for (int round = 0; round < ROUNDS; round++) {
+            ApproximateDistanceOracle previous = decomposition.getDistancePrecomputation().getApproximateOracle();
+            decomposition.updateCellWeights(cells(random, 3), new int[]{0, 1 + random.nextInt(9), 1 + random.nextInt(9)});
+            ApproximateDistanceOracle updated = decomposition.getDistancePrecomputation().getApproximateOracle();
+
+            for (ApproximateDistanceOracle oracle : new ApproximateDistanceOracle[]{updated, previous}) {
+                GridGraph grid = oracle.getGridGraph();
+                for (int q = 0; q < QUERIES; q++) {
+                    int source = random.nextInt(TestGrids.M * TestGrids.N), target = random.nextInt(TestGrids.M * TestGrids.N);
+                    int exact = TestGrids.dijkstra(grid, source, target);
+                    int approximate = oracle.distance(source, target);
+                    if (exact == DijkstraEngine.INFINITY) {
+                        assertEquals(DijkstraEngine.INFINITY, approximate, "unreachable " + source + " -> " + target);
+                    } else {
+                        assertTrue(approximate >= exact && approximate <= (1 + epsilon) * exact,
+                                source + " -> " + target + ": " + approximate + " for exact " + exact);
+                    }
+                }
+            }
+        }
+    }
+
+    // Weight 0 makes a cell impassable in both directions; a positive weight opens it again and
+    // becomes the weight of the edges leaving it
+    @Test
+    void zeroWeightBlocksACellUntilItIsReopened() {
+        GridGraph gridGraph = TestGrids.grid(23, 0);
+        int n = gridGraph.getN();
+        int[][] cell = {{5, 6}};
+        int vertex = 5 * n + 6;
+
+        GridGraph blocked = gridGraph.withCellWeights(cell, new int[]{0});
+        assertTrue(blocked.isBlocked(vertex));
+        // getEdgeWeight reports a missing edge as Integer.MAX_VALUE
+        assertEquals(Integer.MAX_VALUE, blocked.getEdgeWeight(5, 5, 5, 6));
+        assertEquals(Integer.MAX_VALUE, blocked.getEdgeWeight(5, 6, 5, 7));
+        assertEquals(DijkstraEngine.INFINITY, TestGrids.dijkstra(blocked, 0, vertex));
+        assertFalse(gridGraph.isBlocked(vertex), "the original grid is not written");
+
+        GridGraph reopened = blocked.withCellWeights(cell, new int[]{3});
+        assertFalse(reopened.isBlocked(vertex));
+        assertEquals(3, reopened.getEdgeWeight(5, 6, 5, 7));
+        assertTrue(reopened.getEdgeWeight(5, 5, 5, 6) < Integer.MAX_VALUE);
+    }
+
+    private static void assertMatchesDijkstra(OracleSnapshot snapshot, Random random) {
+        ShortestPathFinder finder = new ShortestPathFinder(snapshot);
+        GridGraph gridGraph = snapshot.getGridGraph();
+        for (int q = 0; q < QUERIES; q++) {
+            int source = random.nextInt(TestGrids.M * TestGrids.N), target = random.nextInt(TestGrids.M * TestGrids.N);
+            assertEquals(TestGrids.dijkstra(gridGraph, source, target), finder.findDistance(source, target),
+                    "version " + snapshot.getVersion() + ": " + source + " -> " + target);
+        }
+    }
+
+    private static int[][] cells(Random random, int count) {
+        int[][] cells = new int[count][];
+        for (int i = 0; i < count; i++) {
+            cells[i] = new int[]{random.nextInt(TestGrids.M), random.nextInt(TestGrids.N)};
+        }
+        return cells;
+    }
+}
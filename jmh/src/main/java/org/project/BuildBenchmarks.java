@@ -0,0 +1,94 @@
+package org.project;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// JMH counterpart of the build phases of GridBenchmark: seeded grid construction, the whole
+// decomposition, and the precomputation of the root separator. Decomposition and precomputation
+// start from a fresh DistancePrecomputation on every invocation, so they run as single shots.
+//
+// Usage: java -jar jmh/target/benchmarks.jar BuildBenchmarks -p size=64,256 [-p mode=PAIRWISE]
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BuildBenchmarks {
+    @State(Scope.Benchmark)
+    public static class Grid {
+        @Param({"64", "256", "1024", "4096"})
+        int size;
+        @Param("0")
+        double obstacles;
+        @Param("42")
+        long seed;
+
+        GridGraph gridGraph;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            GridBenchmark.setProjectLogLevel(java.util.logging.Level.WARNING);
+            gridGraph = GridBenchmark.seededGrid(size, size, seed, obstacles);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Build {
+        @Param("MULTI_SOURCE")
+        DistancePrecomputation.Mode mode;
+
+        GraphDecomposition decomposition;
+        DistancePrecomputation rootPrecomputation;
+        List<int[]> rootSeparator;
+        int[] bounds;
+
+        @Setup(Level.Invocation)
+        public void setUp(Grid grid) {
+            GridGraph gridGraph = grid.gridGraph;
+            int m = gridGraph.getM(), n = gridGraph.getN();
+            DistancePrecomputation distancePrecomputation = new DistancePrecomputation(gridGraph, (Connection) null);
+            distancePrecomputation.setMode(mode);
+            decomposition = new GraphDecomposition(gridGraph, null, 1, distancePrecomputation);
+            rootPrecomputation = new DistancePrecomputation(gridGraph, (Connection) null);
+            rootPrecomputation.setMode(mode);
+            rootSeparator = new ArrayList<>();
+            for (int x = 0; x < m; x++) {
+                rootSeparator.add(new int[]{x, (n - 1) / 2});
+            }
+            bounds = new int[]{0, 0, m - 1, n - 1};
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    public GridGraph construction(Grid grid) {
+        return GridBenchmark.seededGrid(grid.size, grid.size, grid.seed, grid.obstacles);
+    }
+
+    @Benchmark
+    public GraphDecomposition decomposition(Build build) {
+        build.decomposition.decompose();
+        return build.decomposition;
+    }
+
+    @Benchmark
+    public DistanceTable precomputation(Build build) {
+        build.rootPrecomputation.precomputeDistances(0, build.rootSeparator, build.bounds);
+        return build.rootPrecomputation.getDistanceTable();
+    }
+}
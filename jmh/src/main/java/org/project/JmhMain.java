@@ -0,0 +1,22 @@
+package org.project;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Entry point of benchmarks.jar: the JMH command line with the GC profiler added unless it was
+// asked for already, so every run reports the allocation rate next to throughput and latency
+public class JmhMain {
+    public static void main(String[] args) throws Exception {
+        List<String> options = new ArrayList<>(Arrays.asList(args));
+        boolean gcProfiler = false;
+        for (int i = 0; i + 1 < options.size(); i++) {
+            gcProfiler |= "-prof".equals(options.get(i)) && options.get(i + 1).startsWith("gc");
+        }
+        if (!gcProfiler) {
+            options.add("-prof");
+            options.add("gc");
+        }
+        org.openjdk.jmh.Main.main(options.toArray(new String[0]));
+    }
+}
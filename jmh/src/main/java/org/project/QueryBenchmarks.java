@@ -0,0 +1,110 @@
+package org.project;
+
+import java.sql.Connection;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// JMH counterpart of the query phase of GridBenchmark: hierarchical path and distance queries
+// against plain Dijkstra, over the same seeded grids and random, near and far query mixes. The grid
+// is decomposed once per trial; every thread cycles through the same pairs with finders of its own.
+//
+// Usage: java -jar jmh/target/benchmarks.jar QueryBenchmarks -p size=256 -p mix=far [-t 4]
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueryBenchmarks {
+    private static final int PAIRS = 1024;
+
+    @Param({"64", "256", "1024", "4096"})
+    int size;
+    @Param({"random", "near", "far"})
+    String mix;
+    @Param("MULTI_SOURCE")
+    DistancePrecomputation.Mode mode;
+    @Param("0")
+    double obstacles;
+    @Param("42")
+    long seed;
+
+    GridGraph gridGraph;
+    GraphDecomposition decomposition;
+    int[][] sources;
+    int[][] targets;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        GridBenchmark.setProjectLogLevel(java.util.logging.Level.WARNING);
+        gridGraph = GridBenchmark.seededGrid(size, size, seed, obstacles);
+        DistancePrecomputation distancePrecomputation = new DistancePrecomputation(gridGraph, (Connection) null);
+        distancePrecomputation.setMode(mode);
+        decomposition = new GraphDecomposition(gridGraph, null, 1, distancePrecomputation);
+        decomposition.decompose();
+        int[][] pairs = GridBenchmark.queryMix(mix, size, PAIRS, new Random(seed + mix.hashCode()));
+        sources = new int[PAIRS][];
+        targets = new int[PAIRS][];
+        for (int i = 0; i < PAIRS; i++) {
+            sources[i] = new int[]{pairs[i][0], pairs[i][1]};
+            targets[i] = new int[]{pairs[i][2], pairs[i][3]};
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        decomposition.shutdown();
+    }
+
+    @State(Scope.Thread)
+    public static class Finders {
+        ShortestPathFinder finder;
+        DijkstraEngine dijkstraEngine;
+        int next;
+
+        @Setup(Level.Trial)
+        public void setUp(QueryBenchmarks queries) {
+            finder = new ShortestPathFinder(queries.decomposition.getDistancePrecomputation(),
+                    queries.decomposition.getMaxLevel(), queries.gridGraph);
+            dijkstraEngine = new DijkstraEngine(queries.gridGraph);
+        }
+
+        int nextPair() {
+            next = (next + 1) & (PAIRS - 1);
+            return next;
+        }
+    }
+
+    @Benchmark
+    public int hierarchicalPath(Finders finders) {
+        int i = finders.nextPair();
+        return finders.finder.findShortestPath(sources[i], targets[i]);
+    }
+
+    @Benchmark
+    public int hierarchicalDistance(Finders finders) {
+        int i = finders.nextPair();
+        return finders.finder.findDistance(sources[i], targets[i]);
+    }
+
+    @Benchmark
+    public int dijkstra(Finders finders) {
+        int i = finders.nextPair();
+        DijkstraEngine dijkstraEngine = finders.dijkstraEngine;
+        return dijkstraEngine.search(dijkstraEngine.id(sources[i]), dijkstraEngine.id(targets[i]));
+    }
+}